@@ -3,9 +3,11 @@ package com.may.app.rest;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaRepositories(basePackages = "com.may.app.rest.repository")
+@EnableScheduling
 public class RestApiApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,82 @@
+package com.may.app.rest.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of {@code POST /batch}. A sub-request's path may reference a field of an earlier
+ * sub-request's response as {@code {id.field}}, e.g. {@code /posts/user/{me.id}}; that puts both
+ * in the same group. Groups run concurrently, the requests within a group in order.
+ */
+public class BatchRequest {
+
+    private List<Part> requests;
+
+    public List<Part> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<Part> requests) {
+        this.requests = requests;
+    }
+
+    public static class Part {
+
+        private String id;
+        private String method = "GET";
+        private String path;
+        private String group;
+        private Map<String, String> headers;
+        private JsonNode body;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public void setGroup(String group) {
+            this.group = group;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public void setHeaders(Map<String, String> headers) {
+            this.headers = headers;
+        }
+
+        public JsonNode getBody() {
+            return body;
+        }
+
+        public void setBody(JsonNode body) {
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.may.app.rest.batch;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Responses to a {@link BatchRequest}, in request order. JSON bodies are embedded as JSON;
+ * {@code error} carries the reason when a sub-request failed without a body.
+ */
+public class BatchResponse {
+
+    private final List<Part> responses;
+
+    public BatchResponse(List<Part> responses) {
+        this.responses = responses;
+    }
+
+    public List<Part> getResponses() {
+        return responses;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static class Part {
+
+        private final String id;
+        private final int status;
+        private final Map<String, String> headers;
+        private final Object body;
+        private final String error;
+
+        public Part(String id, int status, Map<String, String> headers, Object body, String error) {
+            this.id = id;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.error = error;
+        }
+
+        static Part error(String id, int status, String error) {
+            return new Part(id, status, null, null, error);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        public Object getBody() {
+            return body;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
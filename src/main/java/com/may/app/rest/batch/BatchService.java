@@ -0,0 +1,386 @@
+package com.may.app.rest.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.ratelimit.RateLimitFilter;
+import com.may.app.rest.ratelimit.RateLimiter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.DispatcherServlet;
+import org.springframework.web.util.UriUtils;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the sub-requests of a {@code POST /batch} through the {@link DispatcherServlet}, so they hit
+ * the same handlers, caches and interceptors as standalone calls. Groups run concurrently on a
+ * bounded pool; a group of more than one GET shares a single read-only transaction, and with it
+ * one connection and persistence context. Each sub-request is charged to the caller's rate limit.
+ * <p>
+ * Sub-requests skip the servlet filters: the batch request already passed security, its rate limit
+ * is applied here per sub-request, and its Server-Timing header and trace cover the whole batch. Nor
+ * do they see a client disconnect; the batch timeout bounds them instead, and the batch response
+ * waits for groups still running at the timeout to stop.
+ */
+@Service
+public class BatchService {
+
+    private static final Pattern REFERENCE = Pattern.compile("\\{([A-Za-z0-9_-]+)\\.([A-Za-z0-9_.]+)}");
+    private static final List<String> ROUTES = List.of("/users", "/users/**", "/posts", "/posts/**");
+    private static final Set<String> METHODS = Set.of("GET", "POST", "PUT", "PATCH", "DELETE");
+    private static final UrlPathHelper URL_PATH_HELPER = new UrlPathHelper();
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    private DispatcherServlet dispatcherServlet;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${batch.max-requests:20}")
+    private int maxRequests;
+
+    @Value("${batch.timeout-ms:10000}")
+    private long timeoutMillis;
+
+    public BatchService(@Value("${batch.threads:8}") int threads, @Value("${batch.queue-capacity:64}") int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), task -> {
+            Thread thread = new Thread(task, "batch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public List<BatchResponse.Part> execute(List<BatchRequest.Part> parts, HttpServletRequest request, HttpServletResponse response) {
+        List<List<BatchRequest.Part>> groups = group(parts);
+        String client = RateLimitFilter.clientKey(request);
+        Map<String, BatchResponse.Part> results = new ConcurrentHashMap<>();
+
+        List<GroupRun> running = new ArrayList<>();
+        for (List<BatchRequest.Part> group : groups) {
+            GroupRun run = new GroupRun(() -> run(group, client, request, response, results));
+            try {
+                run.future = executor.submit(new DelegatingSecurityContextRunnable(run));
+                running.add(run);
+            } catch (RejectedExecutionException e) {
+                running.add(null);
+                fail(group, results, HttpStatus.SERVICE_UNAVAILABLE, "Batch capacity exhausted");
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int i = 0; i < groups.size(); i++) {
+            GroupRun run = running.get(i);
+            if (run == null) {
+                continue;
+            }
+            try {
+                run.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                abandon(run, groups.get(i), results);
+            } catch (ExecutionException e) {
+                // Sub-request failures are recorded by dispatch(); this is the group's transaction failing
+                fail(groups.get(i), results, HttpStatus.INTERNAL_SERVER_ERROR, NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon(run, groups.get(i), results);
+            }
+        }
+
+        List<BatchResponse.Part> ordered = new ArrayList<>();
+        for (BatchRequest.Part part : parts) {
+            BatchResponse.Part result = results.get(part.getId());
+            ordered.add(result != null ? result
+                    : BatchResponse.Part.error(part.getId(), HttpStatus.GATEWAY_TIMEOUT.value(), "Batch timed out"));
+        }
+        return ordered;
+    }
+
+    // Sub-requests not answered by the timeout report it, rather than the interrupt that stopped them
+    private static void abandon(GroupRun run, List<BatchRequest.Part> group, Map<String, BatchResponse.Part> results) {
+        Set<String> answered = new HashSet<>();
+        group.forEach(part -> {
+            if (results.containsKey(part.getId())) {
+                answered.add(part.getId());
+            }
+        });
+        run.abandon();
+        group.stream()
+                .filter(part -> !answered.contains(part.getId()))
+                .forEach(part -> results.put(part.getId(),
+                        BatchResponse.Part.error(part.getId(), HttpStatus.GATEWAY_TIMEOUT.value(), "Batch timed out")));
+    }
+
+    /**
+     * A group's sub-requests use the batch request, which the container recycles once the batch response
+     * is sent, so a group the batch gives up on is either kept from starting or waited for.
+     */
+    private static final class GroupRun implements Runnable {
+
+        private final Runnable body;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private Future<?> future;
+
+        GroupRun(Runnable body) {
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                body.run();
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        // Interrupted, the group's statements are cancelled as abandoned (see RequestDeadline), so the wait is short
+        void abandon() {
+            if (claimed.compareAndSet(false, true)) {
+                future.cancel(false);
+                return;
+            }
+            future.cancel(true);
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    finished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void fail(List<BatchRequest.Part> group, Map<String, BatchResponse.Part> results, HttpStatus status, String error) {
+        group.forEach(part -> results.putIfAbsent(part.getId(), BatchResponse.Part.error(part.getId(), status.value(), error)));
+    }
+
+    // Requests join the group they name or the group of a request they reference
+    List<List<BatchRequest.Part>> group(List<BatchRequest.Part> parts) {
+        if (parts == null || parts.isEmpty() || parts.size() > maxRequests) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch holds between 1 and " + maxRequests + " requests");
+        }
+        Map<String, List<BatchRequest.Part>> groupById = new HashMap<>();
+        Map<String, List<BatchRequest.Part>> groupByName = new HashMap<>();
+        List<List<BatchRequest.Part>> groups = new ArrayList<>();
+        for (BatchRequest.Part part : parts) {
+            validate(part, groupById.keySet());
+            Set<List<BatchRequest.Part>> joined = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String reference : references(part.getPath())) {
+                if (!groupById.containsKey(reference)) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                            "Request " + part.getId() + " references " + reference + ", which is not an earlier request");
+                }
+                joined.add(groupById.get(reference));
+            }
+            if (part.getGroup() != null && groupByName.containsKey(part.getGroup())) {
+                joined.add(groupByName.get(part.getGroup()));
+            }
+            if (joined.size() > 1) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request " + part.getId() + " spans more than one group");
+            }
+            List<BatchRequest.Part> group;
+            if (joined.isEmpty()) {
+                group = new ArrayList<>();
+                groups.add(group);
+            } else {
+                group = joined.iterator().next();
+            }
+            group.add(part);
+            groupById.put(part.getId(), group);
+            if (part.getGroup() != null) {
+                groupByName.putIfAbsent(part.getGroup(), group);
+            }
+        }
+        return groups;
+    }
+
+    private void validate(BatchRequest.Part part, Set<String> earlierIds) {
+        if (part.getId() == null || part.getId().isEmpty() || earlierIds.contains(part.getId())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every request needs a unique id");
+        }
+        if (part.getMethod() == null || !METHODS.contains(part.getMethod().toUpperCase())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported method in request " + part.getId());
+        }
+        if (part.getPath() == null || !part.getPath().startsWith("/")) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request " + part.getId() + " needs an absolute path");
+        }
+    }
+
+    private void run(List<BatchRequest.Part> group, String client, HttpServletRequest request, HttpServletResponse response,
+                     Map<String, BatchResponse.Part> results) {
+        Map<String, BatchResponse.Part> earlier = new HashMap<>();
+        Runnable dispatchAll = () -> {
+            for (BatchRequest.Part part : group) {
+                BatchResponse.Part result = dispatch(part, client, request, response, earlier);
+                earlier.put(part.getId(), result);
+                results.put(part.getId(), result);
+            }
+        };
+        if (group.size() > 1 && group.stream().allMatch(part -> "GET".equalsIgnoreCase(part.getMethod()))) {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> {
+                dispatchAll.run();
+                // Nothing to commit; rolling back also keeps a failed sub-request from failing the group
+                status.setRollbackOnly();
+            });
+        } else {
+            dispatchAll.run();
+        }
+    }
+
+    private BatchResponse.Part dispatch(BatchRequest.Part part, String client, HttpServletRequest request,
+                                        HttpServletResponse response, Map<String, BatchResponse.Part> earlier) {
+        String id = part.getId();
+        String method = part.getMethod().toUpperCase();
+        StringBuilder resolved = new StringBuilder();
+        Matcher matcher = REFERENCE.matcher(part.getPath());
+        while (matcher.find()) {
+            BatchResponse.Part source = earlier.get(matcher.group(1));
+            JsonNode value = source == null || source.getStatus() >= 300 || !(source.getBody() instanceof JsonNode)
+                    ? null : field((JsonNode) source.getBody(), matcher.group(2));
+            if (value == null || !value.isValueNode() || value.isNull()) {
+                return BatchResponse.Part.error(id, HttpStatus.FAILED_DEPENDENCY.value(),
+                        "Cannot resolve " + matcher.group() + " from request " + matcher.group(1));
+            }
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement(UriUtils.encode(value.asText(), StandardCharsets.UTF_8)));
+        }
+        matcher.appendTail(resolved);
+
+        // Checked, charged and dispatched on the one path the handler mapping will see
+        int query = resolved.indexOf("?");
+        String path = normalize(query < 0 ? resolved.toString() : resolved.substring(0, query));
+        String queryString = query < 0 ? null : resolved.substring(query + 1);
+        if (ROUTES.stream().noneMatch(pattern -> pathMatcher.match(pattern, path))) {
+            return BatchResponse.Part.error(id, HttpStatus.BAD_REQUEST.value(), "Only /users and /posts can be batched");
+        }
+        RateLimiter.Budget budget = rateLimiter.classify(method, path);
+        if (budget == RateLimiter.Budget.BULK) {
+            return BatchResponse.Part.error(id, HttpStatus.BAD_REQUEST.value(), "Bulk imports and exports cannot be batched");
+        }
+        long waitNanos = rateLimiter.tryAcquire(client, budget);
+        if (waitNanos > 0) {
+            return new BatchResponse.Part(id, HttpStatus.TOO_MANY_REQUESTS.value(),
+                    Map.of("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)))),
+                    null, "Rate limit exceeded");
+        }
+
+        try {
+            byte[] body = part.getBody() == null ? null : objectMapper.writeValueAsBytes(part.getBody());
+            SubRequest subRequest = new SubRequest(request, method, path, queryString, part.getHeaders(), body);
+            SubResponse subResponse = new SubResponse(response);
+            dispatcherServlet.service(subRequest, subResponse);
+            return toPart(id, subResponse);
+        } catch (Exception e) {
+            return BatchResponse.Part.error(id, HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+        }
+    }
+
+    private BatchResponse.Part toPart(String id, SubResponse response) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        response.headers().forEach((name, values) -> headers.put(name, String.join(", ", values)));
+        byte[] bytes = response.body();
+        Object body = null;
+        if (bytes.length > 0) {
+            String contentType = response.getContentType();
+            try {
+                body = contentType != null && MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.APPLICATION_JSON)
+                        ? objectMapper.readTree(bytes)
+                        : new String(bytes, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                body = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return new BatchResponse.Part(id, response.status(), headers, body, response.errorMessage());
+    }
+
+    // As UrlPathHelper does for the handler mapping: ;parameters removed before decoding, repeated slashes collapsed
+    static String normalize(String rawPath) {
+        String path = UriUtils.decode(URL_PATH_HELPER.removeSemicolonContent(rawPath), StandardCharsets.UTF_8);
+        while (path.contains("//")) {
+            path = path.replace("//", "/");
+        }
+        return path;
+    }
+
+    static Set<String> references(String path) {
+        Set<String> ids = new HashSet<>();
+        Matcher matcher = REFERENCE.matcher(path == null ? "" : path);
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+
+    private static JsonNode field(JsonNode node, String path) {
+        for (String segment : path.split("\\.")) {
+            node = node.isArray() && segment.matches("\\d+") ? node.get(Integer.parseInt(segment)) : node.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,105 @@
+package com.may.app.rest.bulk;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Field paths as they appear in the JSON API (e.g. {@code address.geo.lat}) mapped to the table
+ * columns they are stored in. Shared by the bulk import and export so both speak the same names.
+ */
+public final class ColumnMapping {
+
+    public enum Type {
+        STRING, DOUBLE, LONG,
+        /** Text stored through {@link com.may.app.rest.entity.CompressedTextConverter} */
+        COMPRESSED_TEXT
+    }
+
+    public static final class Column {
+        private final String name;
+        private final Type type;
+        private final String joinTable;
+        private final String foreignKey;
+
+        private Column(String name, Type type) {
+            this(name, type, null, null);
+        }
+
+        /** A column of {@code joinTable}, whose row is referenced by {@code foreignKey} of the main table. */
+        private Column(String name, Type type, String joinTable, String foreignKey) {
+            this.name = name;
+            this.type = type;
+            this.joinTable = joinTable;
+            this.foreignKey = foreignKey;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public boolean isJoined() {
+            return joinTable != null;
+        }
+
+        public String getJoinTable() {
+            return joinTable;
+        }
+
+        public String getForeignKey() {
+            return foreignKey;
+        }
+
+        public Object convert(Object value) {
+            if (value == null) {
+                return null;
+            }
+            String text = value.toString().trim();
+            if (type == Type.STRING || type == Type.COMPRESSED_TEXT) {
+                return value.toString();
+            }
+            if (text.isEmpty()) {
+                return null;
+            }
+            return type == Type.DOUBLE ? (Object) Double.valueOf(text) : (Object) Long.valueOf(text);
+        }
+    }
+
+    public static final Map<String, Column> USERS;
+    public static final Map<String, Column> POSTS;
+
+    static {
+        Map<String, Column> users = new LinkedHashMap<>();
+        users.put("id", new Column("id", Type.LONG));
+        users.put("name", new Column("name", Type.STRING));
+        users.put("username", new Column("username", Type.STRING));
+        users.put("email", new Column("email", Type.STRING));
+        users.put("address.street", new Column("street", Type.STRING));
+        users.put("address.suite", new Column("suite", Type.STRING));
+        users.put("address.city", new Column("city", Type.STRING));
+        users.put("address.zipcode", new Column("zipcode", Type.STRING));
+        users.put("address.geo.lat", new Column("lat", Type.DOUBLE));
+        users.put("address.geo.lng", new Column("lng", Type.DOUBLE));
+        users.put("phone", new Column("phone", Type.STRING));
+        users.put("website", new Column("website", Type.STRING));
+        users.put("company.name", new Column("company_name", Type.STRING));
+        users.put("company.catchPhrase", new Column("catch_phrase", Type.STRING));
+        users.put("company.bs", new Column("bs", Type.STRING));
+        users.put("postCount", new Column("post_count", Type.LONG));
+        USERS = Collections.unmodifiableMap(users);
+
+        Map<String, Column> posts = new LinkedHashMap<>();
+        posts.put("id", new Column("id", Type.LONG));
+        posts.put("title", new Column("title", Type.STRING));
+        posts.put("content", new Column("body", Type.COMPRESSED_TEXT, "post_content", "content_id"));
+        posts.put("user.id", new Column("user_id", Type.LONG));
+        POSTS = Collections.unmodifiableMap(posts);
+    }
+
+    private ColumnMapping() {
+    }
+}
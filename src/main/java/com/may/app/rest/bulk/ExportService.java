@@ -0,0 +1,144 @@
+package com.may.app.rest.bulk;
+
+import com.may.app.rest.entity.CompressedTextConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes table rows as CSV straight from a forward-only JDBC cursor into the response, selecting
+ * only the requested columns. Column names are the {@link ColumnMapping} field paths.
+ */
+@Service
+public class ExportService {
+
+    private final CompressedTextConverter compressedText = new CompressedTextConverter();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${export.fetch-size:1000}")
+    private int fetchSize;
+
+    public void exportCsv(Map<String, ColumnMapping.Column> mapping, String table, List<String> requested,
+                          String filename, HttpServletResponse response) throws IOException {
+        List<String> fields = resolve(mapping, requested);
+        List<ColumnMapping.Column> columns = new ArrayList<>();
+        List<String> selected = new ArrayList<>();
+        Set<String> joins = new LinkedHashSet<>();
+        for (String field : fields) {
+            ColumnMapping.Column column = mapping.get(field);
+            columns.add(column);
+            if (column.isJoined()) {
+                selected.add(column.getJoinTable() + "." + column.getName());
+                joins.add(" LEFT JOIN " + column.getJoinTable() + " ON " + column.getJoinTable() + ".id = "
+                        + table + "." + column.getForeignKey());
+            } else {
+                selected.add(table + "." + column.getName());
+            }
+        }
+        String sql = "SELECT " + String.join(", ", selected) + " FROM " + table + String.join("", joins)
+                + " ORDER BY " + table + ".id";
+
+        response.setContentType("text/csv;charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+        StringBuilder row = new StringBuilder(256);
+        for (int i = 0; i < fields.size(); i++) {
+            appendField(row, i, fields.get(i));
+        }
+        writer.append(row).append("\r\n");
+
+        int columnCount = fields.size();
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(fetchSize);
+                return statement;
+            }, rs -> {
+                row.setLength(0);
+                for (int i = 1; i <= columnCount; i++) {
+                    String value = columns.get(i - 1).getType() == ColumnMapping.Type.COMPRESSED_TEXT
+                            ? compressedText.convertToEntityAttribute(rs.getBytes(i))
+                            : rs.getString(i);
+                    appendField(row, i - 1, value);
+                }
+                try {
+                    writer.append(row).append("\r\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Client went away; the statement has been closed, nothing more to send
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private static List<String> resolve(Map<String, ColumnMapping.Column> mapping, List<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return new ArrayList<>(mapping.keySet());
+        }
+        List<String> fields = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (String name : requested) {
+            String field = mapping.containsKey(name) ? name : "address." + name;
+            if (mapping.containsKey(field)) {
+                fields.add(field);
+            } else {
+                unknown.add(name);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown columns: " + String.join(", ", unknown));
+        }
+        return fields;
+    }
+
+    private static void appendField(StringBuilder row, int index, String value) {
+        if (index > 0) {
+            row.append(',');
+        }
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            row.append(value);
+            return;
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        row.append('"');
+    }
+}
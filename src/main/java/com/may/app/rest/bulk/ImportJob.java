@@ -0,0 +1,113 @@
+package com.may.app.rest.bulk;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress and error report of one bulk import, readable while the import is still running.
+ */
+public class ImportJob {
+
+    public enum Type {
+        USERS, POSTS
+    }
+
+    public enum Status {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    public static class Error {
+        private final long line;
+        private final String message;
+
+        public Error(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final String id;
+    private final Type type;
+    private final Instant startedAt = Instant.now();
+    private final int maxErrors;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong imported = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<Error> errors = new ArrayList<>();
+    private volatile Status status = Status.RUNNING;
+    private volatile Instant finishedAt;
+
+    public ImportJob(String id, Type type, int maxErrors) {
+        this.id = id;
+        this.type = type;
+        this.maxErrors = maxErrors;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    public long getImported() {
+        return imported.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /** The first {@code import.max-errors} errors; later ones are only counted in {@code failed}. */
+    public synchronized List<Error> getErrors() {
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    void received() {
+        received.incrementAndGet();
+    }
+
+    void imported(long count) {
+        imported.addAndGet(count);
+    }
+
+    synchronized void failed(long count, long line, String message) {
+        failed.addAndGet(count);
+        if (errors.size() < maxErrors) {
+            errors.add(new Error(line, message));
+        }
+    }
+
+    void finish(Status status) {
+        this.finishedAt = Instant.now();
+        this.status = status;
+    }
+}
@@ -0,0 +1,394 @@
+package com.may.app.rest.bulk;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.CompressedTextConverter;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import com.may.app.rest.service.ChangeFeedService;
+import com.may.app.rest.service.GeoIndex;
+import com.may.app.rest.service.PostCounters;
+import com.may.app.rest.service.ResultPageCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Streams NDJSON or CSV request bodies into the users and posts tables. Records are parsed one at
+ * a time and written in JDBC batches of {@code import.batch-size}, each committed on its own, so
+ * neither the body nor the whole import is ever held in memory or in one transaction.
+ */
+@Service
+public class ImportService {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private static final String USER_POSTS_ROLE = User.class.getName() + ".posts";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PostCounters postCounters;
+
+    @Autowired
+    private GeoIndex geoIndex;
+
+    @Autowired
+    private ChangeFeedService changeFeed;
+
+    @Autowired
+    private SerializedEntityCache responseCache;
+
+    @Autowired
+    private ResultPageCache pages;
+
+    @Value("${import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${import.max-errors:100}")
+    private int maxErrors;
+
+    @Value("${import.job-retention-minutes:60}")
+    private long jobRetentionMinutes;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+    private final CompressedTextConverter compressedText = new CompressedTextConverter();
+
+    public Optional<ImportJob> getJob(ImportJob.Type type, String id) {
+        return Optional.ofNullable(jobs.get(id)).filter(job -> job.getType() == type);
+    }
+
+    /**
+     * Runs an import on the calling request. The 202 status and the job's Location are flushed
+     * before the body is read so the client can poll progress; the final report ends the response.
+     */
+    public void importFrom(ImportJob.Type type, String jobPath, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        ImportJob job = start(type);
+        response.setStatus(HttpStatus.ACCEPTED.value());
+        response.setHeader("Location", request.getContextPath() + jobPath + job.getId());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.flushBuffer();
+
+        Charset charset = request.getCharacterEncoding() == null
+                ? StandardCharsets.UTF_8 : Charset.forName(request.getCharacterEncoding());
+        run(job, request.getContentType(), request.getInputStream(), charset);
+        objectMapper.writeValue(response.getOutputStream(), job);
+    }
+
+    ImportJob start(ImportJob.Type type) {
+        Instant expired = Instant.now().minus(Duration.ofMinutes(jobRetentionMinutes));
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(expired));
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), type, maxErrors);
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    void run(ImportJob job, String contentType, InputStream body, Charset charset) {
+        Batch batch = new Batch(job.getType());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, charset))) {
+            if (contentType != null && MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(CSV))) {
+                readCsv(reader, job, batch);
+            } else {
+                readNdjson(reader, job, batch);
+            }
+            write(job, batch);
+            job.finish(ImportJob.Status.COMPLETED);
+        } catch (IOException | RuntimeException e) {
+            write(job, batch);
+            job.failed(0, 0, "Import aborted: " + e.getMessage());
+            job.finish(ImportJob.Status.FAILED);
+        }
+    }
+
+    private void readNdjson(BufferedReader reader, ImportJob job, Batch batch) throws IOException {
+        long line = 0;
+        String text;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.trim().isEmpty()) {
+                continue;
+            }
+            job.received();
+            Map<String, Object> fields = new LinkedHashMap<>();
+            try {
+                JsonNode node = objectMapper.readTree(text);
+                if (!node.isObject()) {
+                    throw new IllegalArgumentException("expected a JSON object");
+                }
+                flatten("", node, fields);
+            } catch (IOException | IllegalArgumentException e) {
+                job.failed(1, line, e.getMessage());
+                continue;
+            }
+            accept(job, batch, line, fields);
+        }
+    }
+
+    private void readCsv(Reader reader, ImportJob job, Batch batch) throws IOException {
+        MappingIterator<Map<String, String>> rows = new CsvMapper()
+                .readerFor(Map.class)
+                .with(CsvSchema.emptySchema().withHeader())
+                .readValues(reader);
+        while (rows.hasNextValue()) {
+            Map<String, String> row = rows.nextValue();
+            long line = rows.getCurrentLocation().getLineNr();
+            job.received();
+            accept(job, batch, line, new LinkedHashMap<>(row));
+        }
+    }
+
+    private static void flatten(String prefix, JsonNode node, Map<String, Object> fields) {
+        Iterator<Map.Entry<String, JsonNode>> entries = node.fields();
+        while (entries.hasNext()) {
+            Map.Entry<String, JsonNode> entry = entries.next();
+            String path = prefix + entry.getKey();
+            JsonNode value = entry.getValue();
+            if (value.isObject()) {
+                flatten(path + ".", value, fields);
+            } else if (!value.isNull() && !value.isArray()) {
+                fields.put(path, value.asText());
+            }
+        }
+    }
+
+    private void accept(ImportJob job, Batch batch, long line, Map<String, Object> fields) {
+        if (fields.containsKey("userId")) {
+            fields.putIfAbsent("user.id", fields.remove("userId"));
+        }
+        Object[] row = new Object[batch.columns.size()];
+        boolean recognised = false;
+        try {
+            for (int i = 0; i < batch.columns.size(); i++) {
+                Map.Entry<String, ColumnMapping.Column> column = batch.columns.get(i);
+                if (fields.containsKey(column.getKey())) {
+                    recognised = true;
+                    row[i] = column.getValue().convert(fields.get(column.getKey()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            job.failed(1, line, "Invalid number: " + e.getMessage());
+            return;
+        }
+        if (!recognised) {
+            job.failed(1, line, "No recognised fields");
+            return;
+        }
+        batch.add(line, row);
+        if (batch.size() >= batchSize) {
+            write(job, batch);
+        }
+    }
+
+    private void write(ImportJob job, Batch batch) {
+        if (batch.size() == 0) {
+            return;
+        }
+        String table = batch.type == ImportJob.Type.USERS ? "users" : "post";
+        try {
+            List<Long> ids = new TransactionTemplate(transactionManager).execute(status -> {
+                writeJoinedRows(batch);
+                List<Long> inserted = insertRows(batch, table);
+                changeFeed.recordAll(batch.type == ImportJob.Type.USERS ? ChangeEvent.EntityType.USER : ChangeEvent.EntityType.POST,
+                        inserted, ChangeEvent.Op.UPSERT);
+                return inserted;
+            });
+            job.imported(batch.size());
+            afterCommit(batch, ids);
+        } catch (RuntimeException e) {
+            job.failed(batch.size(), batch.firstLine, "Batch of " + batch.size() + " records failed: " + e.getMessage());
+        }
+        batch.clear();
+    }
+
+    // Compressed text lives in its own table: insert those rows first and point the main rows at them
+    private void writeJoinedRows(Batch batch) {
+        for (int i = 0; i < batch.columns.size(); i++) {
+            ColumnMapping.Column column = batch.columns.get(i).getValue();
+            if (!column.isJoined()) {
+                continue;
+            }
+            List<Object[]> joinedRows = new ArrayList<>();
+            for (Object[] row : batch.rows) {
+                if (row[i] != null) {
+                    String text = (String) row[i];
+                    PostContent content = new PostContent(text);
+                    joinedRows.add(new Object[]{content.getId(), compressedText.convertToDatabaseColumn(text), content.getHash()});
+                    row[i] = content.getId();
+                }
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO " + column.getJoinTable() + " (id, " + column.getName() + ", hash) VALUES (?, ?, ?)",
+                    joinedRows, new int[]{Types.VARCHAR, Types.VARBINARY, Types.VARBINARY});
+        }
+    }
+
+    // The rows were written behind Hibernate's back: cached query results and collections are stale
+    // Keys of this batch's rows only, whatever other transactions insert alongside it
+    private List<Long> insertRows(Batch batch, String table) {
+        int[] argTypes = batch.argTypes();
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(batch.insertSql(table), new String[]{"id"})) {
+                for (Object[] row : batch.rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        StatementCreatorUtils.setParameterValue(statement, i + 1, argTypes[i], row[i]);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Long> ids = new ArrayList<>(batch.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                if (ids.size() != batch.size()) {
+                    throw new IllegalStateException("Driver returned " + ids.size() + " generated keys for " + batch.size() + " rows");
+                }
+                return ids;
+            }
+        });
+    }
+
+    // Only once the batch has committed, so a rolled-back batch leaves counters, index and caches alone
+    private void afterCommit(Batch batch, List<Long> ids) {
+        org.hibernate.Cache cache = entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class);
+        cache.evictQueryRegions();
+        pages.markDirty();
+        if (batch.type == ImportJob.Type.USERS) {
+            int lat = batch.columnIndex("address.geo.lat");
+            int lng = batch.columnIndex("address.geo.lng");
+            for (int i = 0; i < ids.size(); i++) {
+                Object[] row = batch.rows.get(i);
+                if (row[lat] != null && row[lng] != null) {
+                    geoIndex.index(ids.get(i), (Double) row[lat], (Double) row[lng]);
+                }
+            }
+        } else {
+            Instant now = Instant.now();
+            batch.postsPerUser().forEach((userId, count) -> {
+                postCounters.record(userId, count, now);
+                cache.evictCollectionData(USER_POSTS_ROLE, userId);
+                responseCache.evict(User.class, userId);
+            });
+        }
+    }
+
+    private static final class Batch {
+        private final ImportJob.Type type;
+        private final List<Map.Entry<String, ColumnMapping.Column>> columns;
+        private final List<Object[]> rows = new ArrayList<>();
+        private long firstLine;
+
+        private Batch(ImportJob.Type type) {
+            this.type = type;
+            Map<String, ColumnMapping.Column> mapping = type == ImportJob.Type.USERS ? ColumnMapping.USERS : ColumnMapping.POSTS;
+            // Ids come from the identity column and post counts from PostCounters
+            this.columns = mapping.entrySet().stream()
+                    .filter(e -> !e.getKey().equals("id") && !e.getKey().equals("postCount"))
+                    .collect(Collectors.toList());
+        }
+
+        void add(long line, Object[] row) {
+            if (rows.isEmpty()) {
+                firstLine = line;
+            }
+            rows.add(row);
+        }
+
+        int size() {
+            return rows.size();
+        }
+
+        void clear() {
+            rows.clear();
+        }
+
+        String insertSql(String table) {
+            String names = columns.stream()
+                    .map(c -> c.getValue().isJoined() ? c.getValue().getForeignKey() : c.getValue().getName())
+                    .collect(Collectors.joining(", "));
+            String values = columns.stream().map(c -> "?").collect(Collectors.joining(", "));
+            if (type == ImportJob.Type.USERS) {
+                return "INSERT INTO " + table + " (" + names + ", post_count) VALUES (" + values + ", 0)";
+            }
+            return "INSERT INTO " + table + " (" + names + ") VALUES (" + values + ")";
+        }
+
+        int[] argTypes() {
+            return columns.stream().mapToInt(c -> {
+                switch (c.getValue().getType()) {
+                    case DOUBLE:
+                        return Types.DOUBLE;
+                    case LONG:
+                        return Types.BIGINT;
+                    default:
+                        return Types.VARCHAR;
+                }
+            }).toArray();
+        }
+
+        int columnIndex(String field) {
+            return columns.stream().map(Map.Entry::getKey).collect(Collectors.toList()).indexOf(field);
+        }
+
+        Map<Long, Long> postsPerUser() {
+            Map<Long, Long> counts = new HashMap<>();
+            int userColumn = columnIndex("user.id");
+            for (Object[] row : rows) {
+                if (row[userColumn] != null) {
+                    counts.merge((Long) row[userColumn], 1L, Long::sum);
+                }
+            }
+            return counts;
+        }
+    }
+}
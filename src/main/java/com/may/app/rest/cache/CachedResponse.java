@@ -0,0 +1,18 @@
+package com.may.app.rest.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a single-entity GET handler whose JSON body is kept in the {@link SerializedEntityCache}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedResponse {
+
+    Class<?> value();
+
+    String idVariable() default "id";
+}
@@ -0,0 +1,57 @@
+package com.may.app.rest.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Stores the JSON of a {@link CachedResponse} handler's result under the version captured by
+ * {@link CachedResponseInterceptor}, so the next read of the same entity skips the handler.
+ */
+@ControllerAdvice
+public class CachedResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    @Autowired
+    private SerializedEntityCache cache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(CachedResponse.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body == null || !(request instanceof ServletServerHttpRequest)
+                || !MediaType.APPLICATION_JSON.isCompatibleWith(selectedContentType)) {
+            return body;
+        }
+        HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+        Long id = (Long) servletRequest.getAttribute(CachedResponseInterceptor.ID_ATTRIBUTE);
+        Long version = (Long) servletRequest.getAttribute(CachedResponseInterceptor.VERSION_ATTRIBUTE);
+        if (id == null || version == null) {
+            return body;
+        }
+        CachedResponse cached = returnType.getMethodAnnotation(CachedResponse.class);
+        try {
+            cache.put(cached.value(), id, version, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            // Leave it uncached; the converter reports the same failure to the client
+        }
+        return body;
+    }
+}
@@ -0,0 +1,74 @@
+package com.may.app.rest.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+/**
+ * Answers {@link CachedResponse} handlers straight from the cached bytes. On a miss it records the
+ * entity version seen before the handler runs, which {@link CachedResponseAdvice} stores the body under.
+ */
+@Component
+public class CachedResponseInterceptor implements HandlerInterceptor {
+
+    static final String ID_ATTRIBUTE = CachedResponseInterceptor.class.getName() + ".id";
+    static final String VERSION_ATTRIBUTE = CachedResponseInterceptor.class.getName() + ".version";
+
+    @Autowired
+    private SerializedEntityCache cache;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!(handler instanceof HandlerMethod) || !"GET".equals(request.getMethod())) {
+            return true;
+        }
+        CachedResponse cached = ((HandlerMethod) handler).getMethodAnnotation(CachedResponse.class);
+        if (cached == null) {
+            return true;
+        }
+        Long id = pathId(request, cached.idVariable());
+        if (id == null) {
+            return true;
+        }
+
+        ByteBuffer body = cache.get(cached.value(), id);
+        if (body == null) {
+            request.setAttribute(ID_ATTRIBUTE, id);
+            request.setAttribute(VERSION_ATTRIBUTE, cache.version(cached.value(), id));
+            return true;
+        }
+
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.remaining());
+        WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+        while (body.hasRemaining()) {
+            channel.write(body);
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Long pathId(HttpServletRequest request, String variable) {
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables == null || variables.get(variable) == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(variables.get(variable));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.may.app.rest.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.ratelimit.RateLimitFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Results of requests carrying an {@value #HEADER} header, kept per client, method and path for a
+ * TTL so that a retry with the same key and body gets the first response back (marked
+ * {@value #REPLAYED_HEADER}) instead of repeating the write. A duplicate arriving while the first is
+ * still running waits for it. A failed request keeps nothing, so its retry runs again; reusing a
+ * key with a different body is refused with 422. At most {@code maxKeys} are kept, oldest dropped first.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder replays = new LongAdder();
+    private final ObjectMapper objectMapper;
+    private final long ttlNanos;
+    private final int maxKeys;
+
+    public IdempotencyStore(ObjectMapper objectMapper,
+                            @Value("${idempotency.ttl-minutes:60}") long ttlMinutes,
+                            @Value("${idempotency.max-keys:50000}") int maxKeys,
+                            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+        this.maxKeys = maxKeys;
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("idempotency.keys", entries, ConcurrentHashMap::size)
+                    .description("Idempotency keys whose response is kept")
+                    .register(registry);
+            FunctionCounter.builder("idempotency.replays", replays, LongAdder::sum)
+                    .description("Requests answered with the response already given to their idempotency key")
+                    .register(registry);
+        });
+    }
+
+    /**
+     * Runs {@code action} unless the request's key has already been answered, in which case that
+     * answer is returned. Without a key the action simply runs.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(HttpServletRequest request, String key, Object body, Supplier<T> action) {
+        if (key == null) {
+            return ResponseEntity.ok(action.get());
+        }
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String scope = RateLimitFilter.clientKey(request) + ' ' + request.getMethod() + ' ' + request.getRequestURI() + ' ' + key;
+        // Taken before the action runs, as saving assigns the body's id
+        byte[] fingerprint = fingerprint(body);
+        while (true) {
+            long now = System.nanoTime();
+            Entry existing = entries.get(scope);
+            if (existing != null && existing.expired(now)) {
+                entries.remove(scope, existing);
+                continue;
+            }
+            if (existing != null) {
+                if (!Arrays.equals(existing.fingerprint, fingerprint)) {
+                    throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used with a different request");
+                }
+                T replayed = (T) join(existing.response);
+                replays.increment();
+                return ResponseEntity.ok().header(REPLAYED_HEADER, "true").body(replayed);
+            }
+            Entry mine = new Entry(scope, fingerprint, now + ttlNanos);
+            if (entries.putIfAbsent(scope, mine) != null) {
+                continue;
+            }
+            insertionOrder.add(mine);
+            queued.incrementAndGet();
+            evict(now);
+            try {
+                T result = action.get();
+                mine.response.complete(result);
+                return ResponseEntity.ok(result);
+            } catch (RuntimeException | Error e) {
+                entries.remove(scope, mine);
+                mine.response.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int queued() {
+        return queued.get();
+    }
+
+    // The queue is in insertion order and the TTL is fixed, so expired entries are all at its head
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (oldest.expired(now) || entries.get(oldest.scope) != oldest || entries.size() > maxKeys)) {
+            if (insertionOrder.remove(oldest)) {
+                queued.decrementAndGet();
+                entries.remove(oldest.scope, oldest);
+            }
+        }
+        if (queued.get() > 2 * maxKeys) {
+            compact();
+        }
+    }
+
+    // Entries that left the map behind the head, as failed requests do, are only found by a full pass.
+    // Running it once the queue holds twice maxKeys spreads its cost over at least maxKeys inserts.
+    private synchronized void compact() {
+        if (queued.get() > 2 * maxKeys) {
+            insertionOrder.removeIf(entry -> entries.get(entry.scope) != entry);
+            queued.set(insertionOrder.size());
+        }
+    }
+
+    private byte[] fingerprint(Object body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint request body", e);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+
+        final String scope;
+        final byte[] fingerprint;
+        final long expiresNanos;
+        final CompletableFuture<Object> response = new CompletableFuture<>();
+
+        Entry(String scope, byte[] fingerprint, long expiresNanos) {
+            this.scope = scope;
+            this.fingerprint = fingerprint;
+            this.expiresNanos = expiresNanos;
+        }
+
+        boolean expired(long now) {
+            return now - expiresNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.may.app.rest.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Size-bounded cache of serialized JSON responses for single entities.
+ * The bytes live in direct buffers so a large cache does not add to the old generation.
+ * Entries are keyed by (type, id, version); evicting an entity bumps its version, so a
+ * response rendered from data loaded before the eviction is never stored or served. Entries also
+ * expire after {@code ttlSeconds}, so a response an eviction missed is not served for ever.
+ */
+@Component
+public class SerializedEntityCache {
+
+    private static final int VERSION_STRIPES = 1024;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Key> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedKeys = new AtomicInteger();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final long maxBytes;
+    private final int maxEntryBytes;
+    private final long ttlNanos;
+
+    public SerializedEntityCache(@Value("${cache.response.max-bytes:67108864}") long maxBytes,
+                                 @Value("${cache.response.max-entry-bytes:65536}") int maxEntryBytes,
+                                 @Value("${cache.response.ttl-seconds:300}") long ttlSeconds) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public long version(Class<?> type, Long id) {
+        return versions.get(stripe(new Key(type, id)));
+    }
+
+    public ByteBuffer get(Class<?> type, Long id) {
+        return get(type, id, System.nanoTime());
+    }
+
+    ByteBuffer get(Class<?> type, Long id, long nowNanos) {
+        Key key = new Key(type, id);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.version() != versions.get(stripe(key)) || nowNanos - entry.storedAtNanos() >= ttlNanos) {
+            remove(key, entry);
+            return null;
+        }
+        return entry.bytes().asReadOnlyBuffer();
+    }
+
+    public void put(Class<?> type, Long id, long version, byte[] json) {
+        if (json.length > maxEntryBytes || json.length > maxBytes) {
+            return;
+        }
+        Key key = new Key(type, id);
+        if (versions.get(stripe(key)) != version) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(json.length);
+        buffer.put(json).flip();
+        Entry previous = entries.put(key, new Entry(version, System.nanoTime(), buffer));
+        usedBytes.addAndGet(json.length - (previous == null ? 0 : previous.size()));
+        if (previous == null) {
+            insertionOrder.add(key);
+            queuedKeys.incrementAndGet();
+        }
+        trim();
+    }
+
+    /**
+     * Inside a transaction the entity is evicted again once it ends: a request reading in between
+     * still sees the old row, and would otherwise store it under the version bumped here.
+     */
+    public void evict(Class<?> type, Long id) {
+        if (id == null) {
+            return;
+        }
+        Key key = new Key(type, id);
+        invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(key);
+                }
+            });
+        }
+    }
+
+    private void invalidate(Key key) {
+        versions.incrementAndGet(stripe(key));
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            remove(key, entry);
+        }
+    }
+
+    public long usedBytes() {
+        return usedBytes.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            usedBytes.addAndGet(-entry.size());
+        }
+    }
+
+    private void trim() {
+        while (usedBytes.get() > maxBytes) {
+            Key oldest = insertionOrder.poll();
+            if (oldest == null) {
+                return;
+            }
+            queuedKeys.decrementAndGet();
+            Entry entry = entries.get(oldest);
+            if (entry != null) {
+                remove(oldest, entry);
+            }
+        }
+        // Evicted keys stay queued until trimmed; drop them once they outnumber live entries.
+        if (queuedKeys.get() > 2 * entries.size() + 1024 && compacting.compareAndSet(false, true)) {
+            try {
+                insertionOrder.removeIf(key -> !entries.containsKey(key));
+                queuedKeys.set(insertionOrder.size());
+            } finally {
+                compacting.set(false);
+            }
+        }
+    }
+
+    private static int stripe(Key key) {
+        int hash = key.type().hashCode() * 31 + Long.hashCode(key.id());
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    private record Key(Class<?> type, Long id) {
+    }
+
+    private record Entry(long version, long storedAtNanos, ByteBuffer bytes) {
+        int size() {
+            return bytes.capacity();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.may.app.rest.config;
+
+import com.may.app.rest.deadline.DeadlineDataSource;
+import com.may.app.rest.deadline.DeadlineInterceptor;
+import com.may.app.rest.deadline.DisconnectProbeValve;
+import com.may.app.rest.deadline.StatementWatchdog;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+@Configuration
+@ConditionalOnProperty(name = "deadline.enabled", matchIfMissing = true)
+public class DeadlineConfig {
+
+    @Bean(destroyMethod = "close")
+    public StatementWatchdog statementWatchdog(@Value("${deadline.check-interval-ms:200}") long checkIntervalMillis,
+                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        return new StatementWatchdog(checkIntervalMillis, meterRegistry);
+    }
+
+    @Bean
+    public DeadlineInterceptor deadlineInterceptor(StatementWatchdog statementWatchdog,
+                                                   @Value("${deadline.default-timeout-ms:10000}") long defaultTimeoutMillis,
+                                                   @Value("${deadline.routes:}") String routes) {
+        return new DeadlineInterceptor(statementWatchdog, defaultTimeoutMillis, routes);
+    }
+
+    // Static, so wrapping the data source does not create this configuration early
+    @Bean
+    public static BeanPostProcessor deadlineDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource && !(bean instanceof DeadlineDataSource)
+                        ? new DeadlineDataSource((DataSource) bean) : bean;
+            }
+        };
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> disconnectProbeCustomizer() {
+        return factory -> factory.addContextValves(new DisconnectProbeValve());
+    }
+}
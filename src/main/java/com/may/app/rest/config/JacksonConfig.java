@@ -0,0 +1,20 @@
+package com.may.app.rest.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.datatype.hibernate5.Hibernate5Module;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JacksonConfig {
+
+    // Responses are written after the session has closed. Loaded proxies are written as the entity
+    // they stand for; a lazy association the service did not prefetch is written as null (a to-one
+    // as {"id": ...}) instead of failing with a LazyInitializationException
+    @Bean
+    public Module hibernate5Module() {
+        Hibernate5Module module = new Hibernate5Module();
+        module.enable(Hibernate5Module.Feature.SERIALIZE_IDENTIFIER_FOR_LAZY_NOT_LOADED_OBJECTS);
+        return module;
+    }
+}
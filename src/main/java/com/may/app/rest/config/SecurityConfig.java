@@ -1,22 +1,57 @@
 package com.may.app.rest.config;
 
+import com.may.app.rest.security.CachedJwkSetSource;
+import com.may.app.rest.security.CachingJwtDecoder;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.oauth2.client.oidc.web.logout.OidcClientInitiatedLogoutSuccessHandler;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.web.authentication.logout.LogoutSuccessHandler;
-import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.Collection;
 
 @Configuration
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    // "login" keeps the session-based oauth2Login flow, "jwt" runs as a stateless resource server
+    @Value("${security.mode:login}")
+    private String mode;
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
+        if ("jwt".equals(mode)) {
+            http
+                    .csrf().disable()
+                    .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                    .and()
+                    .authorizeRequests()
+                    .anyRequest().authenticated()
+                    .and()
+                    .oauth2ResourceServer()
+                    .jwt();
+            return;
+        }
         http
                 .authorizeRequests()
                 .anyRequest().authenticated()
@@ -36,6 +71,38 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
         return successHandler;
     }
 
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "security.mode", havingValue = "jwt")
+    public CachedJwkSetSource jwkSetSource(
+            @Value("${security.jwt.jwk-set-uri}") String jwkSetUri,
+            @Value("${security.jwt.jwk-refresh-seconds:300}") long refreshSeconds,
+            @Value("${security.jwt.jwk-min-reload-seconds:30}") long minReloadSeconds) {
+        return new CachedJwkSetSource(jwkSetUri, Duration.ofSeconds(refreshSeconds), Duration.ofSeconds(minReloadSeconds));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "security.mode", havingValue = "jwt")
+    public JwtDecoder jwtDecoder(
+            CachedJwkSetSource jwkSetSource,
+            @Value("${security.jwt.issuer:}") String issuer,
+            @Value("${security.jwt.audience:}") String audience,
+            @Value("${security.jwt.cache-max-entries:10000}") int cacheMaxEntries,
+            @Value("${security.jwt.cache-max-ttl-seconds:300}") long cacheMaxTtlSeconds) {
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSetSource));
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+
+        OAuth2TokenValidator<Jwt> validator = StringUtils.hasText(issuer)
+                ? JwtValidators.createDefaultWithIssuer(issuer)
+                : JwtValidators.createDefault();
+        if (StringUtils.hasText(audience)) {
+            validator = new DelegatingOAuth2TokenValidator<>(validator,
+                    new JwtClaimValidator<Collection<String>>("aud", aud -> aud != null && aud.contains(audience)));
+        }
+        decoder.setJwtValidator(validator);
+        return new CachingJwtDecoder(decoder, cacheMaxEntries, Duration.ofSeconds(cacheMaxTtlSeconds));
+    }
+
     @Bean
     public ClientRegistrationRepository clientRegistrationRepository() {
         return new InMemoryClientRegistrationRepository(this.auth0ClientRegistration());
@@ -50,11 +117,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .tokenUri("https://dev-yg.us.auth0.com/oauth/token")
                 .userInfoUri("https://dev-yg.us.auth0.com/userinfo")
                 .jwkSetUri("https://dev-yg.us.auth0.com/.well-known/jwks.json")
-                .redirectUriTemplate(
-                        ServletUriComponentsBuilder.fromCurrentContextPath()
-                                .path("/login/oauth2/code/auth0")
-                                .buildAndExpand("auth0")
-                                .toUriString())
+                // Expanded per login request; there is no current request while the context starts
+                .redirectUriTemplate("{baseUrl}/login/oauth2/code/{registrationId}")
 //                .redirectUri("http://localhost:8080/login/oauth2/code/auth0")
                 .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
                 .build();
@@ -1,17 +1,27 @@
 package com.may.app.rest.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
 import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
+import springfox.documentation.spring.web.plugins.DocumentationPluginsBootstrapper;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+// With springfox.documentation.enabled=false ApiSpecController serves the checked-in swagger.yaml instead
 @Configuration
+@ConditionalOnProperty(name = "springfox.documentation.enabled", matchIfMissing = true)
 @EnableSwagger2
 public class SwaggerConfig {
 
+    @Autowired
+    private DocumentationPluginsBootstrapper documentationPluginsBootstrapper;
+
     @Bean
     public Docket api() {
         return new Docket(DocumentationType.SWAGGER_2)
@@ -20,4 +30,15 @@ public class SwaggerConfig {
                 .paths(PathSelectors.any())
                 .build();
     }
+
+    // With springfox.documentation.auto-startup=false the handler scan is skipped during startup
+    // and done here off the main thread; /v2/api-docs answers 404 until it finishes
+    @EventListener(ApplicationReadyEvent.class)
+    public void scanDeferred() {
+        if (!documentationPluginsBootstrapper.isRunning()) {
+            Thread scan = new Thread(documentationPluginsBootstrapper::start, "api-docs-scan");
+            scan.setDaemon(true);
+            scan.start();
+        }
+    }
 }
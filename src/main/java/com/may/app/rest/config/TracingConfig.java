@@ -0,0 +1,71 @@
+package com.may.app.rest.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.tracing.OtlpFileExporter;
+import com.may.app.rest.tracing.ServerTimingFilter;
+import com.may.app.rest.tracing.TracedJsonConverter;
+import com.may.app.rest.tracing.TracingAspect;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.nio.file.Paths;
+
+@Configuration
+@ConditionalOnProperty(name = "tracing.enabled", matchIfMissing = true)
+public class TracingConfig {
+
+    @Bean
+    public TracingAspect tracingAspect() {
+        return new TracingAspect();
+    }
+
+    // Replaces Spring Boot's JSON converter, keeping its ObjectMapper
+    @Bean
+    public TracedJsonConverter tracedJsonConverter(ObjectMapper objectMapper) {
+        return new TracedJsonConverter(objectMapper);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnExpression("!'${tracing.export.file:}'.isEmpty()")
+    public OtlpFileExporter otlpFileExporter(
+            @Value("${tracing.export.file}") String file,
+            @Value("${spring.application.name:rest}") String serviceName,
+            @Value("${tracing.export.queue-capacity:1000}") int queueCapacity,
+            MeterRegistry meterRegistry) {
+        OtlpFileExporter exporter = new OtlpFileExporter(Paths.get(file), serviceName, queueCapacity);
+        Gauge.builder("tracing.export.dropped", exporter, OtlpFileExporter::dropped)
+                .description("Traces not exported because the write queue was full")
+                .register(meterRegistry);
+        return exporter;
+    }
+
+    @Bean
+    public FilterRegistrationBean<ServerTimingFilter> serverTimingFilterRegistration(
+            ObjectProvider<OtlpFileExporter> exporter,
+            @Value("${tracing.server-timing:false}") boolean serverTiming,
+            @Value("${tracing.max-spans:500}") int maxSpans,
+            @Value("${tracing.export.min-duration-ms:0}") long exportMinMillis) {
+        FilterRegistrationBean<ServerTimingFilter> registration = new FilterRegistrationBean<>(
+                new ServerTimingFilter(serverTiming, maxSpans, exporter.getIfAvailable(), exportMinMillis));
+        // Just ahead of Spring Security, so its filters are timed
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+        return registration;
+    }
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> securityDoneFilterRegistration() {
+        FilterRegistrationBean<OncePerRequestFilter> registration = new FilterRegistrationBean<>(ServerTimingFilter.securityDone());
+        registration.setName("serverTimingSecurityDone");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+}
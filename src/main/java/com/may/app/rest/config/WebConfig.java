@@ -0,0 +1,45 @@
+package com.may.app.rest.config;
+
+import com.may.app.rest.cache.CachedResponseInterceptor;
+import com.may.app.rest.deadline.DeadlineInterceptor;
+import com.may.app.rest.metrics.QueryCountInterceptor;
+import com.may.app.rest.ratelimit.RateLimitFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private CachedResponseInterceptor cachedResponseInterceptor;
+
+    @Autowired
+    private QueryCountInterceptor queryCountInterceptor;
+
+    @Autowired(required = false)
+    private DeadlineInterceptor deadlineInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (deadlineInterceptor != null) {
+            registry.addInterceptor(deadlineInterceptor);
+        }
+        // Ahead of the cache, so its version lookups are counted (and bounded) too
+        registry.addInterceptor(queryCountInterceptor);
+        registry.addInterceptor(cachedResponseInterceptor);
+    }
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+        registration.addUrlPatterns("/users/*", "/posts/*");
+        // Right after Spring Security (and the end of its Server-Timing phase), so the principal is known
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 2);
+        return registration;
+    }
+}
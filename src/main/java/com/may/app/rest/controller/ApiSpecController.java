@@ -0,0 +1,77 @@
+package com.may.app.rest.controller;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the checked-in {@code swagger.yaml} in place of springfox's runtime scan. The document is
+ * read and gzipped once; both encodings share a weak ETag so clients revalidate with a 304.
+ */
+@RestController
+@ConditionalOnProperty(name = "springfox.documentation.enabled", havingValue = "false")
+public class ApiSpecController {
+
+    static final MediaType YAML = MediaType.parseMediaType("application/yaml");
+
+    private final byte[] spec;
+    private final byte[] gzipped;
+    private final String etag;
+    private final CacheControl cacheControl;
+
+    public ApiSpecController(@Value("${api-docs.max-age-seconds:86400}") long maxAgeSeconds) {
+        try (InputStream in = new ClassPathResource("swagger.yaml").getInputStream()) {
+            this.spec = StreamUtils.copyToByteArray(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read swagger.yaml", e);
+        }
+        this.gzipped = gzip(spec);
+        this.etag = "W/\"" + DigestUtils.md5DigestAsHex(spec) + "\"";
+        this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+    }
+
+    @GetMapping("/swagger.yaml")
+    public ResponseEntity<byte[]> getApiSpec(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                             WebRequest request) {
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(YAML)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(gzip ? gzipped : spec);
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
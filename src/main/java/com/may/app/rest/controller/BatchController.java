@@ -0,0 +1,24 @@
+package com.may.app.rest.controller;
+
+import com.may.app.rest.batch.BatchRequest;
+import com.may.app.rest.batch.BatchResponse;
+import com.may.app.rest.batch.BatchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@RestController
+public class BatchController {
+
+    @Autowired
+    private BatchService batchService;
+
+    @PostMapping("/batch")
+    public BatchResponse batch(@RequestBody BatchRequest batch, HttpServletRequest request, HttpServletResponse response) {
+        return new BatchResponse(batchService.execute(batch.getRequests(), request, response));
+    }
+}
@@ -1,10 +1,24 @@
 package com.may.app.rest.controller;
 
+import com.may.app.rest.bulk.ColumnMapping;
+import com.may.app.rest.bulk.ExportService;
+import com.may.app.rest.bulk.ImportJob;
+import com.may.app.rest.bulk.ImportService;
+import com.may.app.rest.cache.CachedResponse;
+import com.may.app.rest.cache.IdempotencyStore;
 import com.may.app.rest.entity.Post;
+import com.may.app.rest.service.ChangePage;
+import com.may.app.rest.service.MultiGetResult;
 import com.may.app.rest.service.PostService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -15,20 +29,53 @@ public class PostController {
     @Autowired
     private PostService postService;
 
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
     @GetMapping
     public List<Post> getAllPosts() {
         return postService.getAllPosts();
     }
 
+    @GetMapping(params = "fields")
+    public List<Map<String, Object>> getAllPostFields(@RequestParam String fields) {
+        return postService.getAllPostFields(fields);
+    }
+
+    @GetMapping(params = {"ids", "!fields"})
+    public MultiGetResult<Post> getPostsByIds(@RequestParam List<Long> ids) {
+        return postService.getPostsByIds(ids);
+    }
+
+    @GetMapping(params = {"ids", "fields"})
+    public MultiGetResult<Map<String, Object>> getPostFieldsByIds(@RequestParam List<Long> ids, @RequestParam String fields) {
+        return postService.getPostFieldsByIds(ids, fields);
+    }
+
     @GetMapping("/{id}")
+    @CachedResponse(Post.class)
     public Post getPostById(@PathVariable Long id) {
         return postService.getPostById(id)
                 .orElseThrow(() -> new RuntimeException("Post not found with id: " + id));
     }
 
+    @GetMapping(value = "/{id}", params = "fields")
+    public Map<String, Object> getPostFieldsById(@PathVariable Long id, @RequestParam String fields) {
+        return postService.getPostFieldsById(id, fields)
+                .orElseThrow(() -> new RuntimeException("Post not found with id: " + id));
+    }
+
     @PostMapping
-    public Post createPost(@RequestBody Post post) {
-        return postService.createPost(post);
+    public ResponseEntity<Post> createPost(@RequestBody Post post,
+                                           @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                           HttpServletRequest request) {
+        return idempotencyStore.execute(request, idempotencyKey, post, () -> postService.createPost(post));
     }
 
     @PutMapping("/{id}")
@@ -46,13 +93,63 @@ public class PostController {
         postService.deletePost(id);
     }
 
+    @GetMapping("/changes")
+    public ChangePage<Post> getChanges(@RequestParam(required = false) Long since,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        return postService.getChanges(since, limit);
+    }
+
+    @GetMapping(value = "/changes", params = "fields")
+    public ChangePage<Map<String, Object>> getChangeFields(@RequestParam(required = false) Long since,
+                                                           @RequestParam(defaultValue = "100") int limit,
+                                                           @RequestParam String fields) {
+        return postService.getChangeFields(since, limit, fields);
+    }
+
+    @PostMapping(value = "/import", consumes = {ImportService.NDJSON, ImportService.CSV})
+    public void importPosts(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        importService.importFrom(ImportJob.Type.POSTS, "/posts/import/", request, response);
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ImportJob getImportJob(@PathVariable String jobId) {
+        return importService.getJob(ImportJob.Type.POSTS, jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found with id: " + jobId));
+    }
+
+    @GetMapping("/export.csv")
+    public void exportPosts(@RequestParam(required = false) List<String> columns, HttpServletResponse response) throws IOException {
+        exportService.exportCsv(ColumnMapping.POSTS, "post", columns, "posts.csv", response);
+    }
+
     @GetMapping("/filter")
     public List<Post> filterPosts(@RequestParam Map<String, String> filters) {
         return postService.filterPosts(filters);
     }
 
+    @GetMapping(value = "/filter", params = "fields")
+    public List<Map<String, Object>> filterPostFields(@RequestParam Map<String, String> filters, @RequestParam String fields) {
+        return postService.filterPostFields(filters, fields);
+    }
+
+    // Without before/limit this is the full, unordered list it has always been
     @GetMapping("/user/{userId}")
-    public List<Post> getPostsByUser(@PathVariable Long userId) {
-        return postService.getPostsByUserId(userId);
+    public List<Post> getPostsByUser(@PathVariable Long userId,
+                                     @RequestParam(required = false) Long before,
+                                     @RequestParam(required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return postService.getPostsByUserId(userId);
+        }
+        return postService.getTimeline(userId, before, limit == null ? PostService.TIMELINE_DEFAULT_LIMIT : limit);
+    }
+
+    @GetMapping(value = "/user/{userId}", params = "fields")
+    public List<Map<String, Object>> getPostFieldsByUser(@PathVariable Long userId, @RequestParam String fields,
+                                                         @RequestParam(required = false) Long before,
+                                                         @RequestParam(required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return postService.getPostFieldsByUserId(userId, fields);
+        }
+        return postService.getTimelineFields(userId, before, limit == null ? PostService.TIMELINE_DEFAULT_LIMIT : limit, fields);
     }
 }
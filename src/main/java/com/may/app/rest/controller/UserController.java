@@ -1,12 +1,26 @@
 package com.may.app.rest.controller;
 
+import com.may.app.rest.bulk.ColumnMapping;
+import com.may.app.rest.bulk.ExportService;
+import com.may.app.rest.bulk.ImportJob;
+import com.may.app.rest.bulk.ImportService;
+import com.may.app.rest.cache.CachedResponse;
+import com.may.app.rest.cache.IdempotencyStore;
 import com.may.app.rest.entity.Post;
 import com.may.app.rest.entity.User;
+import com.may.app.rest.service.ChangePage;
+import com.may.app.rest.service.MultiGetResult;
 import com.may.app.rest.service.UserService;
 import com.may.app.rest.service.PostService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -20,20 +34,74 @@ public class UserController {
     @Autowired
     private PostService postService;
 
+    @Autowired
+    private ImportService importService;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
     @GetMapping
     public List<User> getAllUsers() {
         return userService.getAllUsers();
     }
 
+    @GetMapping(params = {"sort", "!fields"})
+    public List<User> getAllUsers(@RequestParam String sort) {
+        if (!"postCount".equals(sort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported sort: " + sort);
+        }
+        return userService.getUsersByPostCount();
+    }
+
+    @GetMapping(params = "fields")
+    public List<Map<String, Object>> getAllUserFields(@RequestParam String fields, @RequestParam(required = false) String sort) {
+        if (sort != null && !"postCount".equals(sort)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported sort: " + sort);
+        }
+        return userService.getAllUserFields(fields, sort != null);
+    }
+
+    @GetMapping(params = {"ids", "!fields", "!sort"})
+    public MultiGetResult<User> getUsersByIds(@RequestParam List<Long> ids) {
+        return userService.getUsersByIds(ids);
+    }
+
+    @GetMapping(params = {"ids", "fields"})
+    public MultiGetResult<Map<String, Object>> getUserFieldsByIds(@RequestParam List<Long> ids, @RequestParam String fields) {
+        return userService.getUserFieldsByIds(ids, fields);
+    }
+
+    @GetMapping("/top")
+    public List<User> getTopPosters(@RequestParam(defaultValue = "10") int n) {
+        return userService.getTopPosters(n);
+    }
+
+    @GetMapping(value = "/top", params = "fields")
+    public List<Map<String, Object>> getTopPosterFields(@RequestParam(defaultValue = "10") int n, @RequestParam String fields) {
+        return userService.getTopPosterFields(n, fields);
+    }
+
     @GetMapping("/{id}")
+    @CachedResponse(User.class)
     public User getUserById(@PathVariable Long id) {
         return userService.getUserById(id)
                 .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
     }
 
+    @GetMapping(value = "/{id}", params = "fields")
+    public Map<String, Object> getUserFieldsById(@PathVariable Long id, @RequestParam String fields) {
+        return userService.getUserFieldsById(id, fields)
+                .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
+    }
+
     @PostMapping
-    public User createUser(@RequestBody User user) {
-        return userService.createUser(user);
+    public ResponseEntity<User> createUser(@RequestBody User user,
+                                           @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+                                           HttpServletRequest request) {
+        return idempotencyStore.execute(request, idempotencyKey, user, () -> userService.createUser(user));
     }
 
     @PutMapping("/{id}")
@@ -51,13 +119,83 @@ public class UserController {
         userService.deleteUser(id);
     }
 
+    @GetMapping("/near")
+    public List<User> getUsersNear(@RequestParam double lat, @RequestParam double lng, @RequestParam double radiusKm,
+                                   @RequestParam(defaultValue = "20") int limit) {
+        checkNear(lat, lng, radiusKm, limit);
+        return userService.getUsersNear(lat, lng, radiusKm, Math.min(limit, 1000));
+    }
+
+    @GetMapping(value = "/near", params = "fields")
+    public List<Map<String, Object>> getUserFieldsNear(@RequestParam double lat, @RequestParam double lng, @RequestParam double radiusKm,
+                                                       @RequestParam(defaultValue = "20") int limit, @RequestParam String fields) {
+        checkNear(lat, lng, radiusKm, limit);
+        return userService.getUserFieldsNear(lat, lng, radiusKm, Math.min(limit, 1000), fields);
+    }
+
+    private static void checkNear(double lat, double lng, double radiusKm, int limit) {
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180 || radiusKm <= 0 || limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid lat, lng, radiusKm or limit");
+        }
+    }
+
+    @GetMapping("/changes")
+    public ChangePage<User> getChanges(@RequestParam(required = false) Long since,
+                                       @RequestParam(defaultValue = "100") int limit) {
+        return userService.getChanges(since, limit);
+    }
+
+    @GetMapping(value = "/changes", params = "fields")
+    public ChangePage<Map<String, Object>> getChangeFields(@RequestParam(required = false) Long since,
+                                                           @RequestParam(defaultValue = "100") int limit,
+                                                           @RequestParam String fields) {
+        return userService.getChangeFields(since, limit, fields);
+    }
+
+    @PostMapping(value = "/import", consumes = {ImportService.NDJSON, ImportService.CSV})
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        importService.importFrom(ImportJob.Type.USERS, "/users/import/", request, response);
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ImportJob getImportJob(@PathVariable String jobId) {
+        return importService.getJob(ImportJob.Type.USERS, jobId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job not found with id: " + jobId));
+    }
+
+    @GetMapping("/export.csv")
+    public void exportUsers(@RequestParam(required = false) List<String> columns, HttpServletResponse response) throws IOException {
+        exportService.exportCsv(ColumnMapping.USERS, "users", columns, "users.csv", response);
+    }
+
     @GetMapping("/filter")
     public List<User> filterUsers(@RequestParam Map<String, String> filters) {
         return userService.filterUsers(filters);
     }
 
+    @GetMapping(value = "/filter", params = "fields")
+    public List<Map<String, Object>> filterUserFields(@RequestParam Map<String, String> filters, @RequestParam String fields) {
+        return userService.filterUserFields(filters, fields);
+    }
+
+    // Without before/limit this is the full, unordered list it has always been
     @GetMapping("/{userId}/posts")
-    public List<Post> getUserPosts(@PathVariable Long userId) {
-        return postService.getPostsByUserId(userId);
+    public List<Post> getUserPosts(@PathVariable Long userId,
+                                   @RequestParam(required = false) Long before,
+                                   @RequestParam(required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return postService.getPostsByUserId(userId);
+        }
+        return postService.getTimeline(userId, before, limit == null ? PostService.TIMELINE_DEFAULT_LIMIT : limit);
+    }
+
+    @GetMapping(value = "/{userId}/posts", params = "fields")
+    public List<Map<String, Object>> getUserPostFields(@PathVariable Long userId, @RequestParam String fields,
+                                                       @RequestParam(required = false) Long before,
+                                                       @RequestParam(required = false) Integer limit) {
+        if (before == null && limit == null) {
+            return postService.getPostFieldsByUserId(userId, fields);
+        }
+        return postService.getTimelineFields(userId, before, limit == null ? PostService.TIMELINE_DEFAULT_LIMIT : limit, fields);
     }
 }
@@ -0,0 +1,30 @@
+package com.may.app.rest.deadline;
+
+import com.may.app.rest.jdbc.InterceptingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Statement;
+
+/**
+ * Runs each statement executed on a thread with a {@link RequestDeadline} under that deadline.
+ * Statements run outside a request, such as by imports or the scheduled flushes, are unaffected.
+ */
+public class DeadlineDataSource extends InterceptingDataSource {
+
+    private static final Listener BOUNDED = new Listener() {
+        @Override
+        public Object execute(Statement statement, String method, String sql, Execution execution) throws Throwable {
+            RequestDeadline deadline = RequestDeadline.current();
+            return deadline == null ? execution.proceed() : deadline.execute(statement, execution::proceed);
+        }
+    };
+
+    public DeadlineDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    protected Listener checkedOut() {
+        return BOUNDED;
+    }
+}
@@ -0,0 +1,24 @@
+package com.may.app.rest.deadline;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers a request whose statement ran out of time with 504 rather than a server error. Which
+ * type the timeout arrives as depends on whether it surfaced through a repository, the entity
+ * manager or a lazy load.
+ */
+@RestControllerAdvice
+public class DeadlineExceededHandler {
+
+    @ExceptionHandler({org.springframework.dao.QueryTimeoutException.class,
+            javax.persistence.QueryTimeoutException.class,
+            org.hibernate.QueryTimeoutException.class})
+    public void timedOut(HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.GATEWAY_TIMEOUT.value(), "Request deadline passed");
+    }
+}
@@ -0,0 +1,78 @@
+package com.may.app.rest.deadline;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Starts each request's {@link RequestDeadline}: its route's timeout, or the default, shortened to
+ * the {@value #TIMEOUT_HEADER} header's milliseconds when the caller will give up sooner. Routes
+ * are {@code "METHOD /pattern=millis"}, matched against the handler mapping's pattern.
+ */
+public class DeadlineInterceptor implements HandlerInterceptor {
+
+    public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+    private static final String DEADLINE_ATTRIBUTE = DeadlineInterceptor.class.getName() + ".deadline";
+
+    private final StatementWatchdog watchdog;
+    private final long defaultTimeoutMillis;
+    private final Map<String, Long> routeTimeoutMillis = new HashMap<>();
+
+    public DeadlineInterceptor(StatementWatchdog watchdog, long defaultTimeoutMillis, String routes) {
+        this.watchdog = watchdog;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        for (String route : StringUtils.commaDelimitedListToStringArray(routes)) {
+            int separator = route.lastIndexOf('=');
+            String[] parts = route.substring(0, separator).trim().split("\\s+", 2);
+            routeTimeoutMillis.put(parts[0].toUpperCase() + " " + parts[1], Long.parseLong(route.substring(separator + 1).trim()));
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (RequestDeadline.current() != null) {
+            return true;
+        }
+        long timeoutMillis = timeoutMillis(request);
+        BooleanSupplier clientGone = (BooleanSupplier) request.getAttribute(DisconnectProbeValve.ATTRIBUTE);
+        request.setAttribute(DEADLINE_ATTRIBUTE, RequestDeadline.start(TimeUnit.MILLISECONDS.toNanos(timeoutMillis), clientGone, watchdog));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        RequestDeadline deadline = (RequestDeadline) request.getAttribute(DEADLINE_ATTRIBUTE);
+        if (deadline != null) {
+            deadline.end();
+            request.removeAttribute(DEADLINE_ATTRIBUTE);
+        }
+    }
+
+    long timeoutMillis(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        long timeout = routeTimeoutMillis.getOrDefault(request.getMethod() + " " + pattern, defaultTimeoutMillis);
+        String header = request.getHeader(TIMEOUT_HEADER);
+        if (header == null) {
+            return timeout;
+        }
+        long requested;
+        try {
+            requested = Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            requested = 0;
+        }
+        if (requested <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, TIMEOUT_HEADER + " must be a positive number of milliseconds");
+        }
+        return timeout > 0 ? Math.min(timeout, requested) : requested;
+    }
+}
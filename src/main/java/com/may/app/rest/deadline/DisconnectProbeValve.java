@@ -0,0 +1,44 @@
+package com.may.app.rest.deadline;
+
+import org.apache.catalina.connector.Request;
+import org.apache.catalina.connector.Response;
+import org.apache.catalina.valves.ValveBase;
+import org.apache.coyote.ActionCode;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Leaves on each request, as {@link #ATTRIBUTE}, a check of whether its client has closed the
+ * connection. The servlet API only reports that on the next write; this reads ahead on the socket
+ * without blocking, which Tomcat answers with data available once it hits end of stream (or a
+ * pipelined request, which clients do not send). Requests whose body has not been fully read are
+ * never reported gone, as the unread body would look the same.
+ */
+public class DisconnectProbeValve extends ValveBase {
+
+    public static final String ATTRIBUTE = DisconnectProbeValve.class.getName();
+
+    public DisconnectProbeValve() {
+        super(true);
+    }
+
+    @Override
+    public void invoke(Request request, Response response) throws IOException, ServletException {
+        org.apache.coyote.Request coyoteRequest = request.getCoyoteRequest();
+        request.setAttribute(ATTRIBUTE, (BooleanSupplier) () -> clientGone(coyoteRequest));
+        getNext().invoke(request, response);
+    }
+
+    private static boolean clientGone(org.apache.coyote.Request request) {
+        AtomicBoolean bodyRead = new AtomicBoolean();
+        request.action(ActionCode.REQUEST_BODY_FULLY_READ, bodyRead);
+        if (!bodyRead.get()) {
+            return false;
+        }
+        request.action(ActionCode.AVAILABLE, Boolean.TRUE);
+        return request.getAvailable() > 0;
+    }
+}
@@ -0,0 +1,130 @@
+package com.may.app.rest.deadline;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The deadline of the request being handled on this thread. Each JDBC statement it executes gets
+ * the seconds left as its query timeout, and while one runs the {@link StatementWatchdog} cancels
+ * it as soon as the deadline passes, the client disconnects or the thread is interrupted (a batch
+ * sub-request whose batch has timed out). Once cancelled, the request's later statements fail
+ * without reaching the database.
+ */
+public final class RequestDeadline {
+
+    @FunctionalInterface
+    public interface Execution {
+        Object proceed() throws Throwable;
+    }
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+    private final BooleanSupplier clientGone;
+    private final StatementWatchdog watchdog;
+    private final Thread thread = Thread.currentThread();
+
+    // Guarded by this; the client is only probed while a statement runs and the request is not over
+    private Statement running;
+    private String cancelled;
+    private boolean ended;
+
+    private RequestDeadline(long timeoutNanos, BooleanSupplier clientGone, StatementWatchdog watchdog) {
+        this.deadlineNanos = System.nanoTime() + timeoutNanos;
+        this.bounded = timeoutNanos > 0;
+        this.clientGone = clientGone;
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * @param timeoutNanos time the request has, or 0 for no deadline
+     * @param clientGone   whether the client has closed the connection, or null if that cannot be told
+     */
+    public static RequestDeadline start(long timeoutNanos, BooleanSupplier clientGone, StatementWatchdog watchdog) {
+        RequestDeadline deadline = new RequestDeadline(timeoutNanos, clientGone, watchdog);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    public void end() {
+        synchronized (this) {
+            ended = true;
+        }
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    public long remainingNanos() {
+        return bounded ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    public Object execute(Statement statement, Execution execution) throws Throwable {
+        long remaining = remainingNanos();
+        String reason = remaining <= 0 ? "deadline" : thread.isInterrupted() ? "abandoned" : null;
+        synchronized (this) {
+            if (cancelled == null && reason != null) {
+                cancelled = reason;
+            }
+            if (cancelled != null) {
+                throw new SQLTimeoutException("Request " + cancelled + ", statement not run");
+            }
+            running = statement;
+        }
+        if (bounded) {
+            statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (remaining + 999_999_999) / 1_000_000_000));
+        }
+        if (watchdog != null) {
+            watchdog.watch(this);
+        }
+        try {
+            return execution.proceed();
+        } catch (SQLException e) {
+            synchronized (this) {
+                if (cancelled != null) {
+                    throw new SQLTimeoutException("Statement cancelled: request " + cancelled, e);
+                }
+            }
+            throw e;
+        } finally {
+            if (watchdog != null) {
+                watchdog.unwatch(this);
+            }
+            synchronized (this) {
+                running = null;
+            }
+        }
+    }
+
+    /**
+     * Cancels the running statement if the request is past its deadline, interrupted or abandoned
+     * by its client.
+     *
+     * @return why the statement was cancelled, or null if it was left running
+     */
+    synchronized String cancelIfOverdue(long nowNanos) {
+        if (running == null || ended || cancelled != null) {
+            return null;
+        }
+        String reason = bounded && nowNanos - deadlineNanos >= 0 ? "deadline"
+                : thread.isInterrupted() ? "abandoned"
+                : clientGone != null && clientGone.getAsBoolean() ? "disconnect"
+                : null;
+        if (reason != null) {
+            cancelled = reason;
+            try {
+                running.cancel();
+            } catch (SQLException e) {
+                // The statement may have completed meanwhile; the request's next one is refused either way
+            }
+        }
+        return reason;
+    }
+}
@@ -0,0 +1,68 @@
+package com.may.app.rest.deadline;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the requests with a statement running every interval and cancels those statements whose
+ * request is past its deadline, interrupted or disconnected, counting them in {@value #CANCELLED}
+ * by reason. JDBC query timeouts only have whole seconds and do not know about the client; this
+ * covers both.
+ */
+public class StatementWatchdog {
+
+    private static final Logger log = LoggerFactory.getLogger(StatementWatchdog.class);
+
+    public static final String CANCELLED = "db.statements.cancelled";
+
+    private final Set<RequestDeadline> running = ConcurrentHashMap.newKeySet();
+    private final ObjectProvider<MeterRegistry> registry;
+    private final ScheduledExecutorService checker;
+
+    public StatementWatchdog(long checkIntervalMillis, ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statement-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void watch(RequestDeadline deadline) {
+        running.add(deadline);
+    }
+
+    void unwatch(RequestDeadline deadline) {
+        running.remove(deadline);
+    }
+
+    void check() {
+        long now = System.nanoTime();
+        for (RequestDeadline deadline : running) {
+            try {
+                String reason = deadline.cancelIfOverdue(now);
+                if (reason != null) {
+                    MeterRegistry meterRegistry = registry.getIfAvailable();
+                    if (meterRegistry != null) {
+                        meterRegistry.counter(CANCELLED, "reason", reason).increment();
+                    }
+                }
+            } catch (RuntimeException e) {
+                log.warn("Statement deadline check failed", e);
+            }
+        }
+    }
+
+    public void close() {
+        checker.shutdownNow();
+    }
+}
@@ -0,0 +1,88 @@
+package com.may.app.rest.entity;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * One row per insert, update or delete of a user or post. The identity column doubles as the
+ * change sequence number that feed cursors point into; deletes are recorded as tombstones.
+ */
+@Entity
+@Table(name = "change_event", indexes = @Index(name = "idx_change_event_type_seq", columnList = "entity_type, id"))
+public class ChangeEvent {
+
+    public enum EntityType {
+        USER, POST
+    }
+
+    public enum Op {
+        UPSERT, DELETE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", nullable = false, length = 8)
+    private EntityType entityType;
+
+    @Column(nullable = false)
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Op op;
+
+    @Column(nullable = false)
+    private Instant changedAt;
+
+    public ChangeEvent() {}
+
+    public ChangeEvent(EntityType entityType, Long entityId, Op op, Instant changedAt) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.op = op;
+        this.changedAt = changedAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public EntityType getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(EntityType entityType) {
+        this.entityType = entityType;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(Long entityId) {
+        this.entityId = entityId;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public void setOp(Op op) {
+        this.op = op;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(Instant changedAt) {
+        this.changedAt = changedAt;
+    }
+}
@@ -0,0 +1,114 @@
+package com.may.app.rest.entity;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores text as Deflate-compressed UTF-8, primed with a preset dictionary of words common in post
+ * bodies so that even short posts compress. The first byte names the format, which lets the
+ * dictionary be replaced later without rewriting existing rows; text that would not shrink is kept raw.
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+    static final byte RAW = 0;
+    static final byte DEFLATE_DICTIONARY_V1 = 1;
+
+    // Most frequent material last: Deflate reaches the end of the dictionary with the shortest distances
+    private static final byte[] DICTIONARY_V1 = (
+            "The the and that this with from have for not you are was but all can will one would there their "
+            + "voluptatem voluptate voluptas voluptatibus consequatur consequuntur exercitationem reprehenderit "
+            + "repellendus perspiciatis doloremque laudantium accusantium necessitatibus praesentium "
+            + "dignissimos ducimus blanditiis quisquam adipisci molestiae molestias recusandae repudiandae "
+            + "architecto beatae vitae dicta explicabo aspernatur aut odit fugit sed quia consequatur magni "
+            + "dolores eos qui ratione sequi nesciunt neque porro quisquam est dolorem ipsum quia dolor sit amet "
+            + "consectetur adipisci velit non numquam eius modi tempora incidunt ut labore et dolore magnam "
+            + "aliquam quaerat ut enim ad minima veniam quis nostrum ullam corporis suscipit laboriosam nisi "
+            + "ut aliquid ex ea commodi autem vel eum iure qui in ea voluptate velit esse quam nihil "
+            + "illum qui dolorem eum fugiat quo voluptas nulla pariatur at vero eos et accusamus et iusto odio "
+            + "similique sunt in culpa qui officia deserunt mollitia animi id est laborum et dolorum fuga "
+            + "et harum quidem rerum facilis est et expedita distinctio nam libero tempore cum soluta nobis "
+            + "est eligendi optio cumque nihil impedit quo minus id quod maxime placeat facere possimus omnis "
+            + "voluptas assumenda est omnis dolor repellendus temporibus autem quibusdam et aut officiis debitis "
+            + "aut rerum necessitatibus saepe eveniet ut et voluptates repudiandae sint et molestiae non "
+            + "recusandae itaque earum rerum hic tenetur a sapiente delectus ut aut reiciendis voluptatibus "
+            + "maiores alias consequatur aut perferendis doloribus asperiores repellat quia et suscipit\n"
+            + "est rerum tempore vitae\nqui est esse\nnesciunt quas odio\net ut et\nut quo\n").getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public byte[] convertToDatabaseColumn(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY_V1);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            out.write(DEFLATE_DICTIONARY_V1);
+            byte[] buffer = new byte[Math.max(64, Math.min(raw.length, 8192))];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            if (out.size() < raw.length + 1) {
+                return out.toByteArray();
+            }
+        } finally {
+            deflater.end();
+        }
+        byte[] stored = new byte[raw.length + 1];
+        stored[0] = RAW;
+        System.arraycopy(raw, 0, stored, 1, raw.length);
+        return stored;
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        if (stored.length == 0) {
+            return "";
+        }
+        switch (stored[0]) {
+            case RAW:
+                return new String(stored, 1, stored.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE_DICTIONARY_V1:
+                return inflate(stored, DICTIONARY_V1);
+            default:
+                throw new IllegalStateException("Unknown compressed text format: " + stored[0]);
+        }
+    }
+
+    private static String inflate(byte[] stored, byte[] dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored, 1, stored.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 3);
+            byte[] buffer = new byte[Math.max(256, Math.min(stored.length * 4, 8192))];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Truncated compressed text");
+                    }
+                }
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed text", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package com.may.app.rest.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
 
 @Entity
+// Newest-first timeline per user: seek on user_id, read id descending, title and content id from the index
+@Table(indexes = @Index(name = "idx_post_user_timeline", columnList = "user_id, id DESC, title, content_id"))
 @Data
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "posts")
 public class Post {
 
     @Id
@@ -13,11 +24,18 @@ public class Post {
 
     private String title;
 
-    @Column(columnDefinition = "TEXT")
-    private String content;
+    // Loaded on first access to the content, in batches across the posts of one session
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "content_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private PostContent body;
 
+    // The author without its posts, which would lead back here
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
+    @JsonIgnoreProperties("posts")
     private User user;
 
     // Default constructor
@@ -41,11 +59,17 @@ public class Post {
     }
 
     public String getContent() {
-        return content;
+        return body == null ? null : body.getText();
     }
 
     public void setContent(String content) {
-        this.content = content;
+        if (content == null) {
+            body = null;
+        } else if (body == null) {
+            body = new PostContent(content);
+        } else {
+            body.setText(content);
+        }
     }
 
     public User getUser() {
@@ -0,0 +1,68 @@
+package com.may.app.rest.entity;
+
+import org.hibernate.annotations.BatchSize;
+
+import javax.persistence.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+/**
+ * The body of a {@link Post}, kept in its own table so that loading a post does not read it.
+ * The text is stored compressed; its SHA-256 serves exact-match lookups on the content.
+ * Ids are assigned here rather than by the database so bulk imports can batch inserts.
+ * Bodies of rows from before the split, still in {@code post.content}, are moved here by
+ * {@code V3__MoveLegacyColumns} before Hibernate starts.
+ */
+@Entity
+@Table(name = "post_content", indexes = @Index(name = "idx_post_content_hash", columnList = "hash"))
+@BatchSize(size = 50)
+public class PostContent {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Lob
+    @Convert(converter = CompressedTextConverter.class)
+    private String body;
+
+    @Column(length = 32)
+    private byte[] hash;
+
+    public PostContent() {}
+
+    public PostContent(String text) {
+        this.id = UUID.randomUUID().toString();
+        setText(text);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getText() {
+        return body;
+    }
+
+    public void setText(String text) {
+        this.body = text;
+        this.hash = hash(text);
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public static byte[] hash(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
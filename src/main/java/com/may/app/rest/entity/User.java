@@ -1,10 +1,20 @@
 package com.may.app.rest.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.List;
 
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+// Authors of a page of posts are loaded together rather than one select each
+@BatchSize(size = 50)
 public class User {
 
     @Id
@@ -25,9 +35,21 @@ public class User {
     private String website;
 
     @Embedded
+    @AttributeOverride(name = "name", column = @Column(name = "company_name"))
     private Company company;
 
+    // Maintained by PostCounters with in-place SQL increments, never written by Hibernate
+    @Column(insertable = false, updatable = false)
+    private Long postCount;
+
+    @Column(insertable = false, updatable = false)
+    private Instant lastPostAt;
+
+    // Embedded in the user's JSON without repeating the user; initialized in batches across the users of one session
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users.posts")
+    @BatchSize(size = 50)
+    @JsonIgnoreProperties("user")
     private List<Post> posts;
 
     // Default constructor
@@ -111,6 +133,22 @@ public class User {
         this.company = company;
     }
 
+    public Long getPostCount() {
+        return postCount;
+    }
+
+    public void setPostCount(Long postCount) {
+        this.postCount = postCount;
+    }
+
+    public Instant getLastPostAt() {
+        return lastPostAt;
+    }
+
+    public void setLastPostAt(Instant lastPostAt) {
+        this.lastPostAt = lastPostAt;
+    }
+
     public List<Post> getPosts() {
         return posts;
     }
@@ -183,35 +221,36 @@ public class User {
         }
     }
 
+    // Text-typed lat/lng columns from older schemas are converted by V3__MoveLegacyColumns
     @Embeddable
     public static class Geo {
-        private String lat;
-        private String lng;
+        private Double lat;
+        private Double lng;
 
         // Default constructor
         public Geo() {}
 
         // Constructor with all fields
-        public Geo(String lat, String lng) {
+        public Geo(Double lat, Double lng) {
             this.lat = lat;
             this.lng = lng;
         }
 
         // Getters and setters
 
-        public String getLat() {
+        public Double getLat() {
             return lat;
         }
 
-        public void setLat(String lat) {
+        public void setLat(Double lat) {
             this.lat = lat;
         }
 
-        public String getLng() {
+        public Double getLng() {
             return lng;
         }
 
-        public void setLng(String lng) {
+        public void setLng(Double lng) {
             this.lng = lng;
         }
     }
@@ -0,0 +1,151 @@
+package com.may.app.rest.jdbc;
+
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Wrapper;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands out connections whose statement executions and close are reported to a {@link Listener}
+ * created for each checkout. Connections and their statements are proxies that compare and hash by
+ * identity, unwrap to the driver's objects, and return the proxied connection from
+ * {@code Statement.getConnection()}. Connections also implement Spring's {@link ConnectionProxy}.
+ */
+public abstract class InterceptingDataSource extends DelegatingDataSource {
+
+    protected InterceptingDataSource(DataSource target) {
+        super(target);
+    }
+
+    /** Called on each checkout; the listener sees only the connection handed out. */
+    protected abstract Listener checkedOut();
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return intercepted(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return intercepted(super.getConnection(username, password));
+    }
+
+    public interface Listener {
+
+        /** Whether statements are proxied at all; when not, only the close is reported. */
+        default boolean interceptsStatements() {
+            return true;
+        }
+
+        /**
+         * Runs one {@code execute*} call of the driver's statement. {@code sql} is the text passed to
+         * the call, or given to {@code prepareStatement}; null when neither is known.
+         */
+        default Object execute(Statement statement, String method, String sql, Execution execution) throws Throwable {
+            return execution.proceed();
+        }
+
+        /** Called once, after the first close of the connection. */
+        default void closed() {
+        }
+    }
+
+    @FunctionalInterface
+    public interface Execution {
+        Object proceed() throws Throwable;
+    }
+
+    private Connection intercepted(Connection connection) {
+        Listener listener = checkedOut();
+        AtomicBoolean closed = new AtomicBoolean();
+        InvocationHandler handler = new Forwarding(connection) {
+            @Override
+            Object forward(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getTargetConnection".equals(method.getName())) {
+                    return connection;
+                }
+                if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                    try {
+                        return call(connection, method, args);
+                    } finally {
+                        if (closed.compareAndSet(false, true)) {
+                            listener.closed();
+                        }
+                    }
+                }
+                Object result = call(connection, method, args);
+                if (listener.interceptsStatements() && result instanceof Statement && method.getReturnType().isInterface()) {
+                    return intercepted((Statement) result, method.getReturnType(), (Connection) proxy, firstString(args), listener);
+                }
+                return result;
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(InterceptingDataSource.class.getClassLoader(), new Class<?>[]{ConnectionProxy.class}, handler);
+    }
+
+    private static Statement intercepted(Statement statement, Class<?> type, Connection connection, String preparedSql, Listener listener) {
+        InvocationHandler handler = new Forwarding(statement) {
+            @Override
+            Object forward(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getConnection".equals(method.getName())) {
+                    return connection;
+                }
+                if (!method.getName().startsWith("execute")) {
+                    return call(statement, method, args);
+                }
+                String sql = firstString(args) != null ? firstString(args) : preparedSql;
+                return listener.execute(statement, method.getName(), sql, () -> call(statement, method, args));
+            }
+        };
+        return (Statement) Proxy.newProxyInstance(InterceptingDataSource.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    // Identity and unwrapping are answered for the proxy; everything else goes to forward
+    private abstract static class Forwarding implements InvocationHandler {
+
+        private final Wrapper target;
+
+        Forwarding(Wrapper target) {
+            this.target = target;
+        }
+
+        abstract Object forward(Object proxy, Method method, Object[] args) throws Throwable;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    return ((Class<?>) args[0]).isInstance(proxy) ? proxy : target.unwrap((Class<?>) args[0]);
+                case "isWrapperFor":
+                    return ((Class<?>) args[0]).isInstance(proxy) || target.isWrapperFor((Class<?>) args[0]);
+                default:
+                    return forward(proxy, method, args);
+            }
+        }
+    }
+
+    private static String firstString(Object[] args) {
+        return args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
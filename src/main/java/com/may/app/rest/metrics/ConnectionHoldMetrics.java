@@ -0,0 +1,34 @@
+package com.may.app.rest.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the application's data source in a {@link TimedDataSource}. The pool's own metrics are still
+ * bound, as Spring Boot unwraps delegating data sources to find it.
+ */
+@Component
+public class ConnectionHoldMetrics implements BeanPostProcessor {
+
+    // Resolved on first checkout; a post-processor must not pull the registry in while beans are being created
+    private final ObjectProvider<MeterRegistry> registry;
+    private final boolean traceStatements;
+
+    public ConnectionHoldMetrics(ObjectProvider<MeterRegistry> registry, @Value("${tracing.enabled:true}") boolean traceStatements) {
+        this.registry = registry;
+        this.traceStatements = traceStatements;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof TimedDataSource)) {
+            return new TimedDataSource((DataSource) bean, registry::getObject, traceStatements);
+        }
+        return bean;
+    }
+}
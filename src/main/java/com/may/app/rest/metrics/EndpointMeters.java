@@ -0,0 +1,28 @@
+package com.may.app.rest.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * Meters tagged with a request's method and route pattern, built and registered once per pair
+ * rather than on every request. Methods outside the standard set are tagged {@code OTHER}, so a
+ * client cannot grow the tag space; route patterns are already bounded by the handler mappings.
+ */
+final class EndpointMeters<M extends Meter> {
+
+    private final ConcurrentHashMap<List<String>, M> meters = new ConcurrentHashMap<>();
+    private final BiFunction<String, String, M> factory;
+
+    EndpointMeters(BiFunction<String, String, M> factory) {
+        this.factory = factory;
+    }
+
+    M get(String method, String uri) {
+        String tag = method == null || "none".equals(method) ? "none" : HttpMethod.resolve(method) == null ? "OTHER" : method;
+        return meters.computeIfAbsent(List.of(tag, uri), key -> factory.apply(key.get(0), key.get(1)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.may.app.rest.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records each request's Hibernate statement count as {@value #STATEMENTS}, and counts requests with
+ * an N+1 select in {@value #REPEATED}, both tagged with the endpoint. The count is left on the
+ * request as {@link #COUNT_ATTRIBUTE} once the request completes.
+ */
+@Component
+public class QueryCountInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryCountInterceptor.class);
+
+    public static final String STATEMENTS = "db.statements";
+    public static final String REPEATED = "db.statements.repeated";
+    public static final String COUNT_ATTRIBUTE = QueryCountInterceptor.class.getName() + ".count";
+    private static final String COUNTS_ATTRIBUTE = QueryCountInterceptor.class.getName() + ".counts";
+
+    private final StatementCounter counter;
+    private final ObjectProvider<MeterRegistry> registry;
+    private final EndpointMeters<DistributionSummary> statements;
+    private final EndpointMeters<Counter> repeated;
+
+    public QueryCountInterceptor(StatementCounter counter, ObjectProvider<MeterRegistry> registry) {
+        this.counter = counter;
+        this.registry = registry;
+        this.statements = new EndpointMeters<>((method, uri) -> DistributionSummary.builder(STATEMENTS)
+                .description("Statements Hibernate prepared for one request")
+                .tag("method", method)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .register(registry.getObject()));
+        this.repeated = new EndpointMeters<>((method, uri) -> Counter.builder(REPEATED)
+                .description("Requests that prepared one select many times over")
+                .tag("method", method)
+                .tag("uri", uri)
+                .register(registry.getObject()));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        request.setAttribute(COUNTS_ATTRIBUTE, counter.begin());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        StatementCounter.Counts counts = (StatementCounter.Counts) request.getAttribute(COUNTS_ATTRIBUTE);
+        if (counts == null) {
+            return;
+        }
+        counter.end(counts);
+        request.removeAttribute(COUNTS_ATTRIBUTE);
+        request.setAttribute(COUNT_ATTRIBUTE, counts.statements());
+
+        Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = route == null ? "none" : route.toString();
+        boolean metered = registry.getIfAvailable() != null;
+        if (metered) {
+            statements.get(request.getMethod(), uri).record(counts.statements());
+        }
+        if (counts.repeatedSql() != null) {
+            if (metered) {
+                repeated.get(request.getMethod(), uri).increment();
+            }
+            log.warn("{} {} prepared one select {} times ({} statements in all): {}", request.getMethod(), uri,
+                    counts.maxRepeats(), counts.statements(), counts.repeatedSql());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.may.app.rest.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Counts the statements Hibernate prepares while a request is being handled, and watches for the N+1
+ * signature: the same select, differing only in its bind values, prepared {@code repeatThreshold}
+ * times in one request. Bind values are {@code ?} placeholders, so such selects have identical SQL.
+ * In strict mode that select fails instead of running, which is meant for tests.
+ */
+@Component
+public class StatementCounter implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final ThreadLocal<Counts> CURRENT = new ThreadLocal<>();
+
+    private final int repeatThreshold;
+    private final boolean strict;
+
+    public StatementCounter(@Value("${query-count.repeat-threshold:5}") int repeatThreshold,
+                            @Value("${query-count.strict:false}") boolean strict) {
+        this.repeatThreshold = repeatThreshold;
+        this.strict = strict;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        Counts counts = CURRENT.get();
+        if (counts != null) {
+            counts.statements++;
+            if (sql.regionMatches(true, 0, "select", 0, 6)) {
+                int repeats = counts.selects.merge(sql, 1, Integer::sum);
+                counts.maxRepeats = Math.max(counts.maxRepeats, repeats);
+                if (repeats == repeatThreshold && counts.repeatedSql == null) {
+                    counts.repeatedSql = sql;
+                    if (strict) {
+                        throw new IllegalStateException(String.format(Locale.ROOT,
+                                "N+1 select: prepared %d times in one request: %s", repeats, sql));
+                    }
+                }
+            }
+        }
+        return sql;
+    }
+
+    /** Starts counting for the request on this thread; a nested request (a batch part) counts separately. */
+    public Counts begin() {
+        Counts counts = new Counts(CURRENT.get());
+        CURRENT.set(counts);
+        return counts;
+    }
+
+    /** Stops counting the innermost request on this thread and returns its counts. */
+    public Counts end(Counts counts) {
+        if (counts.outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(counts.outer);
+        }
+        return counts;
+    }
+
+    public static final class Counts {
+
+        private final Counts outer;
+        private final Map<String, Integer> selects = new HashMap<>();
+        private int statements;
+        private int maxRepeats;
+        private String repeatedSql;
+
+        private Counts(Counts outer) {
+            this.outer = outer;
+        }
+
+        public int statements() {
+            return statements;
+        }
+
+        /** The most times any one select was prepared. */
+        public int maxRepeats() {
+            return maxRepeats;
+        }
+
+        /** The select that reached the repeat threshold, or null. */
+        public String repeatedSql() {
+            return repeatedSql;
+        }
+    }
+}
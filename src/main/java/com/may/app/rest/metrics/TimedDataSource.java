@@ -0,0 +1,89 @@
+package com.may.app.rest.metrics;
+
+import com.may.app.rest.jdbc.InterceptingDataSource;
+import com.may.app.rest.tracing.Phase;
+import com.may.app.rest.tracing.RequestTrace;
+import com.may.app.rest.tracing.Span;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times how long each connection stays checked out, from {@code getConnection} to {@code close},
+ * as {@value #METRIC} tagged with the endpoint that borrowed it. Connections taken outside a
+ * request, such as by imports, the scheduled flushes or startup, are tagged {@code uri=none}.
+ * With {@code traceStatements}, each statement executed inside a traced request is a {@code db} span.
+ */
+public class TimedDataSource extends InterceptingDataSource {
+
+    public static final String METRIC = "db.connection.hold";
+
+    private final EndpointMeters<Timer> timers;
+    private final boolean traceStatements;
+
+    public TimedDataSource(DataSource target, Supplier<MeterRegistry> registry, boolean traceStatements) {
+        super(target);
+        this.timers = new EndpointMeters<>((method, uri) -> Timer.builder(METRIC)
+                .description("Time a JDBC connection is held, from checkout to close")
+                .tag("method", method)
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .register(registry.get()));
+        this.traceStatements = traceStatements;
+    }
+
+    @Override
+    protected Listener checkedOut() {
+        Timer timer = timer();
+        long start = System.nanoTime();
+        return new Listener() {
+            @Override
+            public boolean interceptsStatements() {
+                return traceStatements;
+            }
+
+            @Override
+            public Object execute(Statement statement, String method, String sql, Execution execution) throws Throwable {
+                RequestTrace trace = RequestTrace.current();
+                if (trace == null) {
+                    return execution.proceed();
+                }
+                Span span = trace.open(Phase.DB, method);
+                if (sql != null) {
+                    span.attribute("db.statement", sql);
+                }
+                try {
+                    return execution.proceed();
+                } finally {
+                    trace.close(span);
+                }
+            }
+
+            @Override
+            public void closed() {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private Timer timer() {
+        String method = "none";
+        String uri = "none";
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        Object pattern = request == null ? null
+                : request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (pattern != null && request instanceof ServletRequestAttributes) {
+            method = ((ServletRequestAttributes) request).getRequest().getMethod();
+            uri = pattern.toString();
+        }
+        return timers.get(method, uri);
+    }
+}
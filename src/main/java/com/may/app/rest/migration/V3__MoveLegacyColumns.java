@@ -0,0 +1,123 @@
+package com.may.app.rest.migration;
+
+import com.may.app.rest.entity.CompressedTextConverter;
+import com.may.app.rest.entity.PostContent;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+/**
+ * Moves data left behind by schemas that ddl-auto=update grew over time: post bodies still in the
+ * old {@code post.content} column go to {@code post_content}, compressed, and text-typed
+ * {@code users.lat}/{@code lng} columns become doubles. Databases without those leftovers are untouched.
+ */
+@Component
+public class V3__MoveLegacyColumns extends BaseJavaMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final CompressedTextConverter compressedText = new CompressedTextConverter();
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection connection = context.getConnection();
+        if (columnType(connection, "post", "content") != null) {
+            moveContent(connection);
+        }
+        for (String column : new String[]{"lat", "lng"}) {
+            Integer type = columnType(connection, "users", column);
+            if (type != null && type != Types.DOUBLE && type != Types.FLOAT && type != Types.REAL) {
+                convertToDouble(connection, column);
+            }
+        }
+    }
+
+    private void moveContent(Connection connection) throws SQLException {
+        try (Statement select = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO post_content (id, body, hash) VALUES (?, ?, ?)");
+             PreparedStatement link = connection.prepareStatement("UPDATE post SET content_id = ? WHERE id = ?")) {
+            int pending = 0;
+            try (ResultSet rows = select.executeQuery("SELECT id, content FROM post WHERE content IS NOT NULL AND content_id IS NULL")) {
+                while (rows.next()) {
+                    String text = rows.getString(2);
+                    PostContent content = new PostContent(text);
+                    insert.setString(1, content.getId());
+                    insert.setBytes(2, compressedText.convertToDatabaseColumn(text));
+                    insert.setBytes(3, content.getHash());
+                    insert.addBatch();
+                    link.setString(1, content.getId());
+                    link.setLong(2, rows.getLong(1));
+                    link.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        insert.executeBatch();
+                        link.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                insert.executeBatch();
+                link.executeBatch();
+            }
+            select.execute("ALTER TABLE post DROP COLUMN content");
+        }
+    }
+
+    // Values that do not parse as numbers become NULL, as they could never be read as coordinates
+    private static void convertToDouble(Connection connection, String column) throws SQLException {
+        String converted = column + "_converted";
+        boolean sqlServer = connection.getMetaData().getDatabaseProductName().toLowerCase().contains("sql server");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE users ADD " + converted + (sqlServer ? " DOUBLE PRECISION" : " DOUBLE"));
+            try (PreparedStatement update = connection.prepareStatement("UPDATE users SET " + converted + " = ? WHERE id = ?");
+                 ResultSet rows = statement.executeQuery("SELECT id, " + column + " FROM users WHERE " + column + " IS NOT NULL")) {
+                int pending = 0;
+                while (rows.next()) {
+                    update.setObject(1, parse(rows.getString(2)), Types.DOUBLE);
+                    update.setLong(2, rows.getLong(1));
+                    update.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        update.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    update.executeBatch();
+                }
+            }
+            statement.execute("ALTER TABLE users DROP COLUMN " + column);
+            statement.execute(sqlServer
+                    ? "EXEC sp_rename 'users." + converted + "', '" + column + "', 'COLUMN'"
+                    : "ALTER TABLE users ALTER COLUMN " + converted + " RENAME TO " + column);
+        }
+    }
+
+    private static Double parse(String value) {
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            return Double.isFinite(parsed) ? parsed : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer columnType(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String[] name : new String[][]{{table, column}, {table.toUpperCase(), column.toUpperCase()}}) {
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, name[0], name[1])) {
+                if (columns.next()) {
+                    return columns.getInt("DATA_TYPE");
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.may.app.rest.ratelimit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Holds each request's calls into {@code UserService} and {@code PostService} to the
+ * {@link ConcurrencyLimiter}, refusing them with 503 once the limit is reached. Ordered ahead of
+ * the transaction interceptor, so a refused call never waits for a connection. Calls made outside
+ * a request (imports, scheduled work) and calls nested in an admitted one are not limited.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "concurrency-limit.enabled", matchIfMissing = true)
+public class ConcurrencyLimitAspect {
+
+    private static final ThreadLocal<Boolean> ADMITTED = new ThreadLocal<>();
+
+    @Autowired
+    private ConcurrencyLimiter limiter;
+
+    @Around("(within(com.may.app.rest.service.UserService) || within(com.may.app.rest.service.PostService))"
+            + " && execution(public * *(..))")
+    public Object limited(ProceedingJoinPoint call) throws Throwable {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (ADMITTED.get() != null || request == null) {
+            return call.proceed();
+        }
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            HttpServletResponse response = request instanceof ServletRequestAttributes ? ((ServletRequestAttributes) request).getResponse() : null;
+            if (response != null) {
+                response.setHeader("Retry-After", "1");
+            }
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Concurrency limit reached");
+        }
+        ADMITTED.set(Boolean.TRUE);
+        try {
+            Object result = call.proceed();
+            permit.release();
+            return result;
+        } catch (CannotCreateTransactionException | TransientDataAccessException | DataAccessResourceFailureException e) {
+            permit.drop();
+            throw e;
+        } catch (Throwable e) {
+            permit.release();
+            throw e;
+        } finally {
+            ADMITTED.remove();
+        }
+    }
+}
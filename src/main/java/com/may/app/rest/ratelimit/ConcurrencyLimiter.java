@@ -0,0 +1,157 @@
+package com.may.app.rest.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of service calls in flight at a limit that follows the database's latency
+ * (a gradient limit): each window of samples compares its average latency with the long-term
+ * average and shrinks the limit in proportion as latency rises, or grows it by a small queue
+ * allowance while latency holds. A call that finds the limit reached is refused at once rather
+ * than queueing for a pooled connection, and a call that fails for want of one cuts the limit
+ * by a tenth.
+ */
+@Component
+public class ConcurrencyLimiter {
+
+    // Windows averaged into the long-term latency, and the cut on a dropped call
+    private static final int LONG_WINDOW = 100;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final int windowSamples;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+
+    // Guarded by this
+    private double longRttNanos;
+    private long windowRttNanos;
+    private int windowCount;
+    private int windowMaxInFlight;
+
+    public ConcurrencyLimiter(@Value("${concurrency-limit.initial:20}") int initialLimit,
+                              @Value("${concurrency-limit.min:4}") int minLimit,
+                              @Value("${concurrency-limit.max:200}") int maxLimit,
+                              @Value("${concurrency-limit.rtt-tolerance:1.5}") double tolerance,
+                              @Value("${concurrency-limit.smoothing:0.2}") double smoothing,
+                              @Value("${concurrency-limit.window-samples:20}") int windowSamples,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowSamples = windowSamples;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        meterRegistry.ifAvailable(this::register);
+    }
+
+    /**
+     * @return a permit to release once the call completes, or null if the limit is reached
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit()) {
+                rejected.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(System.nanoTime(), current + 1);
+            }
+        }
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    synchronized void sample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (dropped) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+            resetWindow();
+            return;
+        }
+        windowRttNanos += rttNanos;
+        windowCount++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+        if (windowCount < windowSamples) {
+            return;
+        }
+        double shortRtt = (double) windowRttNanos / windowCount;
+        int maxInFlight = windowMaxInFlight;
+        resetWindow();
+
+        longRttNanos = longRttNanos == 0 ? shortRtt : longRttNanos + (shortRtt - longRttNanos) / LONG_WINDOW;
+        // Latency well below the long-term average means a slowdown has passed; let the average catch up
+        if (longRttNanos / shortRtt > 2) {
+            longRttNanos *= 0.95;
+        }
+        // Callers are not using the limit, so these samples say nothing about it
+        if (maxInFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + target * smoothing));
+    }
+
+    private void resetWindow() {
+        windowRttNanos = 0;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+    }
+
+    private void register(MeterRegistry registry) {
+        Gauge.builder("db.concurrency.limit", this, ConcurrencyLimiter::limit)
+                .description("Service calls allowed in flight at once")
+                .register(registry);
+        Gauge.builder("db.concurrency.in_flight", this, ConcurrencyLimiter::inFlight)
+                .description("Service calls in flight")
+                .register(registry);
+        FunctionCounter.builder("db.concurrency.rejected", this, ConcurrencyLimiter::rejected)
+                .description("Service calls refused because the limit was reached")
+                .register(registry);
+    }
+
+    public final class Permit {
+
+        private final long startNanos;
+        private final int inFlightAtStart;
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /** The call completed, successfully or not; its latency is a sample. */
+        public void release() {
+            inFlight.decrementAndGet();
+            sample(System.nanoTime() - startNanos, inFlightAtStart, false);
+        }
+
+        /** The call failed because the database was unavailable or timed out. */
+        public void drop() {
+            inFlight.decrementAndGet();
+            sample(System.nanoTime() - startNanos, inFlightAtStart, true);
+        }
+    }
+}
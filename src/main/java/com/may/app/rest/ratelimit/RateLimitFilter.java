@@ -0,0 +1,53 @@
+package com.may.app.rest.ratelimit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control in front of the API controllers. Runs after Spring Security so the
+ * authenticated principal is the client key; anonymous callers are keyed by address.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RateLimiter.Budget budget = rateLimiter.classify(request.getMethod(), urlPathHelper.getPathWithinApplication(request));
+        long waitNanos = rateLimiter.tryAcquire(clientKey(request), budget);
+        if (waitNanos > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999))));
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    /** The key a request's rate limits are tracked under; also charged for each sub-request of a batch. */
+    public static String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "principal:" + authentication.getName();
+        }
+        return "address:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,108 @@
+package com.may.app.rest.ratelimit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-client token buckets, one per budget. Expensive routes are matched to their own budget so
+ * that running out of filter or bulk allowance does not block a client's ordinary reads.
+ */
+@Component
+public class RateLimiter {
+
+    public enum Budget {
+        DEFAULT, FILTER, BULK
+    }
+
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final List<Route> routes = new ArrayList<>();
+    private final double[] permitsPerSecond = new double[Budget.values().length];
+    private final int[] burst = new int[Budget.values().length];
+    private final int maxTrackedClients;
+    // Raised when a sweep leaves most buckets in place, so the next sweep waits for the map to double
+    private volatile int sweepAbove;
+
+    public RateLimiter(@Value("${rate-limit.default.permits-per-second:50}") double defaultRate,
+                       @Value("${rate-limit.default.burst:100}") int defaultBurst,
+                       @Value("${rate-limit.filter.permits-per-second:2}") double filterRate,
+                       @Value("${rate-limit.filter.burst:10}") int filterBurst,
+                       @Value("${rate-limit.filter.routes:GET /users/filter,GET /posts/filter}") String filterRoutes,
+                       @Value("${rate-limit.bulk.permits-per-second:0.2}") double bulkRate,
+                       @Value("${rate-limit.bulk.burst:2}") int bulkBurst,
+                       @Value("${rate-limit.bulk.routes:}") String bulkRoutes,
+                       @Value("${rate-limit.max-tracked-clients:100000}") int maxTrackedClients) {
+        configure(Budget.DEFAULT, defaultRate, defaultBurst, "");
+        configure(Budget.FILTER, filterRate, filterBurst, filterRoutes);
+        configure(Budget.BULK, bulkRate, bulkBurst, bulkRoutes);
+        this.maxTrackedClients = maxTrackedClients;
+        this.sweepAbove = maxTrackedClients;
+    }
+
+    public Budget classify(String method, String path) {
+        for (Route route : routes) {
+            if ((route.method() == null || route.method().equals(method)) && pathMatcher.match(route.pattern(), path)) {
+                return route.budget();
+            }
+        }
+        return Budget.DEFAULT;
+    }
+
+    /**
+     * @return 0 if the request is admitted, otherwise the nanoseconds until the client may retry
+     */
+    public long tryAcquire(String client, Budget budget) {
+        long now = System.nanoTime();
+        if (buckets.size() > sweepAbove) {
+            sweepIdle(now);
+        }
+        TokenBucket bucket = buckets.computeIfAbsent(budget.name() + ':' + client,
+                key -> new TokenBucket(permitsPerSecond[budget.ordinal()], burst[budget.ordinal()]));
+        return bucket.tryAcquire(now);
+    }
+
+    int trackedBuckets() {
+        return buckets.size();
+    }
+
+    private void sweepIdle(long now) {
+        if (sweeping.compareAndSet(false, true)) {
+            try {
+                buckets.values().removeIf(bucket -> bucket.isIdle(now));
+                sweepAbove = (int) Math.min(Integer.MAX_VALUE, Math.max(maxTrackedClients, 2L * buckets.size()));
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    private void configure(Budget budget, double rate, int budgetBurst, String routeList) {
+        String prefix = "rate-limit." + budget.name().toLowerCase(Locale.ROOT);
+        if (!(rate > 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException(prefix + ".permits-per-second must be positive, was " + rate);
+        }
+        if (budgetBurst < 1) {
+            throw new IllegalArgumentException(prefix + ".burst must be at least 1, was " + budgetBurst);
+        }
+        permitsPerSecond[budget.ordinal()] = rate;
+        burst[budget.ordinal()] = budgetBurst;
+        for (String route : StringUtils.commaDelimitedListToStringArray(routeList)) {
+            String[] parts = route.trim().split("\\s+", 2);
+            routes.add(parts.length == 2
+                    ? new Route(parts[0].toUpperCase(), parts[1], budget)
+                    : new Route(null, parts[0], budget));
+        }
+    }
+
+    private record Route(String method, String pattern, Budget budget) {
+    }
+}
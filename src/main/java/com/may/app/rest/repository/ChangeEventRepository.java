@@ -0,0 +1,35 @@
+package com.may.app.rest.repository;
+
+import com.may.app.rest.entity.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+
+    @Query("select e from ChangeEvent e where e.entityType = :type and e.id > :since and e.changedAt < :settledBefore order by e.id")
+    List<ChangeEvent> findSince(@Param("type") ChangeEvent.EntityType type, @Param("since") Long since,
+                                @Param("settledBefore") Instant settledBefore, Pageable pageable);
+
+    @Query("select max(e.id) from ChangeEvent e where e.changedAt < :settledBefore")
+    Long findHead(@Param("settledBefore") Instant settledBefore);
+
+    @Query("select min(e.id) from ChangeEvent e")
+    Long findOldestRetained();
+
+    @Query("select max(e.id) from ChangeEvent e")
+    Long findNewest();
+
+    @Modifying
+    @Transactional
+    @Query("delete from ChangeEvent e where e.changedAt < :cutoff and e.id < :keepFrom")
+    int deleteOlderThan(@Param("cutoff") Instant cutoff, @Param("keepFrom") Long keepFrom);
+}
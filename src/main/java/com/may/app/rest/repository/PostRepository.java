@@ -1,19 +1,54 @@
 package com.may.app.rest.repository;
 
 import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_REGION;
+
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
 
+    String QUERY_CACHE_REGION = "post-queries";
+
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<Post> findByTitle(String title);
 
-    List<Post> findByContent(String content);
+    // Content is stored compressed, so exact matches go through its hash
+    default List<Post> findByContent(String content) {
+        return findByContentHash(PostContent.hash(content));
+    }
 
+    @Query("select p from Post p where p.body.hash = :hash")
+    List<Post> findByContentHash(@Param("hash") byte[] hash);
+
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
     List<Post> findByUserId(Long userId);
 
-    List<Post> findByTitleAndContent(String title, String content);
+    @Query("select p.id from Post p where p.user.id = :userId")
+    List<Long> findIdsByUserId(@Param("userId") Long userId);
+
+    // Timeline pages; two queries rather than an optional "before" so each stays a plain index seek
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
+    List<Post> findByUserIdOrderByIdDesc(Long userId, Pageable page);
+
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
+    List<Post> findByUserIdAndIdLessThanOrderByIdDesc(Long userId, Long before, Pageable page);
+
+    default List<Post> findByTitleAndContent(String title, String content) {
+        return findByTitleAndContentHash(title, PostContent.hash(content));
+    }
+
+    @QueryHints({@QueryHint(name = HINT_CACHEABLE, value = "true"), @QueryHint(name = HINT_CACHE_REGION, value = QUERY_CACHE_REGION)})
+    @Query("select p from Post p where p.title = :title and p.body.hash = :hash")
+    List<Post> findByTitleAndContentHash(@Param("title") String title, @Param("hash") byte[] hash);
 }
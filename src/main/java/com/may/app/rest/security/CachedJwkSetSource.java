@@ -0,0 +1,109 @@
+package com.may.app.rest.security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.DefaultResourceRetriever;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWK set held in memory and refreshed in the background, so signature checks never wait on the
+ * identity provider. An unknown key id triggers one synchronous reload (rate limited) to pick up
+ * rotated keys. The location may be an https URL or any Spring resource such as {@code file:} or
+ * {@code classpath:}, which lets tests and local runs use a stand-in key set.
+ */
+public class CachedJwkSetSource implements JWKSource<SecurityContext>, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CachedJwkSetSource.class);
+
+    private final String location;
+    private final long minReloadIntervalNanos;
+    private final ScheduledExecutorService refresher;
+    private final DefaultResourceRetriever retriever = new DefaultResourceRetriever(2000, 2000);
+
+    private volatile JWKSet jwkSet;
+    private volatile long lastReloadNanos;
+
+    public CachedJwkSetSource(String location, Duration refreshInterval, Duration minReloadInterval) {
+        this.location = location;
+        this.minReloadIntervalNanos = minReloadInterval.toNanos();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwk-set-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            reload();
+        } catch (KeySourceException e) {
+            log.warn("Initial JWK set load from {} failed, retrying in the background", location, e);
+        }
+        long period = refreshInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        JWKSet current = jwkSet;
+        List<JWK> matches = current == null ? List.of() : jwkSelector.select(current);
+        if (!matches.isEmpty() || System.nanoTime() - lastReloadNanos < minReloadIntervalNanos) {
+            return matches;
+        }
+        synchronized (this) {
+            if (jwkSet == current) {
+                reload();
+            }
+        }
+        return jwkSelector.select(jwkSet);
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private void refreshQuietly() {
+        try {
+            reload();
+        } catch (KeySourceException e) {
+            log.warn("JWK set refresh from {} failed, keeping the cached keys", location, e);
+        }
+    }
+
+    private void reload() throws KeySourceException {
+        lastReloadNanos = System.nanoTime();
+        try {
+            jwkSet = JWKSet.parse(fetch());
+        } catch (IOException | ParseException e) {
+            throw new KeySourceException("Couldn't load JWK set from " + location, e);
+        }
+    }
+
+    private String fetch() throws IOException {
+        if (location.startsWith("http://") || location.startsWith("https://")) {
+            return retriever.retrieveResource(new URL(location)).getContent();
+        }
+        Resource resource = new DefaultResourceLoader().getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.may.app.rest.security;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers successfully verified tokens until they expire (capped at {@code maxTtl}), so a client
+ * sending the same bearer token on every call pays for the signature check once. At most
+ * {@code maxEntries} tokens are kept, least recently used dropped first.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+    private final int maxEntries;
+    private final Duration maxTtl;
+    private final Clock clock;
+    private final LinkedHashMap<String, Verified> verified;
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries, Duration maxTtl) {
+        this(delegate, maxEntries, maxTtl, Clock.systemUTC());
+    }
+
+    CachingJwtDecoder(JwtDecoder delegate, int maxEntries, Duration maxTtl, Clock clock) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.maxTtl = maxTtl;
+        this.clock = clock;
+        this.verified = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verified> eldest) {
+                return size() > CachingJwtDecoder.this.maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Instant now = clock.instant();
+        synchronized (verified) {
+            Verified cached = verified.get(token);
+            if (cached != null) {
+                if (now.isBefore(cached.validUntil())) {
+                    return cached.jwt();
+                }
+                verified.remove(token);
+            }
+        }
+
+        Jwt jwt = delegate.decode(token);
+        Instant validUntil = now.plus(maxTtl);
+        if (jwt.getExpiresAt() != null && jwt.getExpiresAt().isBefore(validUntil)) {
+            validUntil = jwt.getExpiresAt();
+        }
+        synchronized (verified) {
+            verified.put(token, new Verified(jwt, validUntil));
+        }
+        return jwt;
+    }
+
+    int size() {
+        synchronized (verified) {
+            return verified.size();
+        }
+    }
+
+    private record Verified(Jwt jwt, Instant validUntil) {
+    }
+}
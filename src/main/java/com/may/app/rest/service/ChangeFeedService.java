@@ -0,0 +1,162 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.repository.ChangeEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Records row changes as {@link ChangeEvent}s and serves them back as cursor-paged feeds.
+ * Events become visible only once they are older than {@code changes.settle-millis}, so a write
+ * whose transaction commits after a later-numbered one is not skipped by a client's cursor. That
+ * holds because a transaction recording changes is rolled back if it reaches its commit more than
+ * {@code changes.max-write-millis} after its first one, and the settle window is longer still.
+ */
+@Service
+public class ChangeFeedService {
+
+    static final int MAX_LIMIT = 1000;
+
+    @Autowired
+    private ChangeEventRepository changeEventRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${changes.settle-millis:15000}")
+    private long settleMillis;
+
+    @Value("${changes.max-write-millis:10000}")
+    private long maxWriteMillis;
+
+    @Value("${changes.retention-days:7}")
+    private long retentionDays;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkSettleWindow() {
+        if (settleMillis <= maxWriteMillis) {
+            throw new IllegalStateException("changes.settle-millis (" + settleMillis
+                    + ") must exceed changes.max-write-millis (" + maxWriteMillis + ")");
+        }
+    }
+
+    public void record(ChangeEvent.EntityType type, Long id, ChangeEvent.Op op) {
+        Instant now = Instant.now();
+        limitCommitDelay(now);
+        changeEventRepository.save(new ChangeEvent(type, id, op, now));
+    }
+
+    /** Records the same change of many rows in one JDBC batch, for rows written behind Hibernate's back. */
+    public void recordAll(ChangeEvent.EntityType type, Collection<Long> ids, ChangeEvent.Op op) {
+        Instant recordedAt = Instant.now();
+        limitCommitDelay(recordedAt);
+        Timestamp now = Timestamp.from(recordedAt);
+        jdbcTemplate.batchUpdate("INSERT INTO change_event (entity_type, entity_id, op, changed_at) VALUES (?, ?, ?, ?)",
+                ids.stream().map(id -> new Object[]{type.name(), id, op.name(), now}).collect(Collectors.toList()),
+                new int[]{Types.VARCHAR, Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP});
+    }
+
+    // Events carry the time they were recorded, not committed; bound the gap once per transaction
+    private void limitCommitDelay(Instant recordedAt) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive() || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, recordedAt);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                long elapsed = Duration.between(recordedAt, Instant.now()).toMillis();
+                if (elapsed > maxWriteMillis) {
+                    throw new TransactionTimedOutException("Changes were recorded " + elapsed
+                            + " ms before commit, longer than changes.max-write-millis allows");
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(ChangeFeedService.this);
+            }
+        });
+    }
+
+    /**
+     * Changes of the given type after {@code since}, collapsed to the latest change per row. Without a
+     * cursor an empty page positioned at the current head is returned, to be used after a full read.
+     */
+    public <T> ChangePage<T> changesSince(ChangeEvent.EntityType type, Long since, int limit,
+                                          Function<List<Long>, Map<Long, T>> loader) {
+        Instant settledBefore = Instant.now().minusMillis(settleMillis);
+        if (since == null) {
+            Long head = changeEventRepository.findHead(settledBefore);
+            return new ChangePage<>(Collections.emptyList(), head == null ? 0L : head, false);
+        }
+        Long oldest = changeEventRepository.findOldestRetained();
+        if (oldest != null && since < oldest - 1) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Cursor " + since + " is older than the retained changes");
+        }
+
+        int pageSize = Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<ChangeEvent> events = changeEventRepository.findSince(type, since, settledBefore, PageRequest.of(0, pageSize + 1));
+        boolean hasMore = events.size() > pageSize;
+        if (hasMore) {
+            events = events.subList(0, pageSize);
+        }
+
+        Map<Long, ChangeEvent> latest = new LinkedHashMap<>();
+        for (ChangeEvent event : events) {
+            latest.remove(event.getEntityId());
+            latest.put(event.getEntityId(), event);
+        }
+        List<Long> upserted = new ArrayList<>();
+        latest.values().forEach(event -> {
+            if (event.getOp() == ChangeEvent.Op.UPSERT) {
+                upserted.add(event.getEntityId());
+            }
+        });
+        Map<Long, T> rows = upserted.isEmpty() ? new HashMap<>() : loader.apply(upserted);
+
+        List<ChangePage.Change<T>> changes = new ArrayList<>();
+        for (ChangeEvent event : latest.values()) {
+            T data = event.getOp() == ChangeEvent.Op.UPSERT ? rows.get(event.getEntityId()) : null;
+            // An upsert whose row is gone was deleted since: its tombstone may be in this page, collapsed away
+            ChangeEvent.Op op = data == null ? ChangeEvent.Op.DELETE : event.getOp();
+            changes.add(new ChangePage.Change<>(event.getId(), event.getEntityId(), op, data));
+        }
+        Long cursor = events.isEmpty() ? since : events.get(events.size() - 1).getId();
+        return new ChangePage<>(changes, cursor, hasMore);
+    }
+
+    // Always keeps the newest event so a stale cursor can still be recognised after a quiet period
+    @Scheduled(fixedDelayString = "${changes.prune-interval-ms:3600000}")
+    public void prune() {
+        Long newest = changeEventRepository.findNewest();
+        if (newest != null) {
+            changeEventRepository.deleteOlderThan(Instant.now().minus(Duration.ofDays(retentionDays)), newest);
+        }
+    }
+}
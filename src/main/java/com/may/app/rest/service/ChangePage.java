@@ -0,0 +1,65 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.ChangeEvent;
+
+import java.util.List;
+
+/**
+ * One page of a change feed. {@code cursor} is the sequence number to pass as {@code since} for
+ * the next page; {@code data} is the row's current state, absent for deletes.
+ */
+public class ChangePage<T> {
+
+    private final List<Change<T>> changes;
+    private final Long cursor;
+    private final boolean hasMore;
+
+    public ChangePage(List<Change<T>> changes, Long cursor, boolean hasMore) {
+        this.changes = changes;
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<Change<T>> getChanges() {
+        return changes;
+    }
+
+    public Long getCursor() {
+        return cursor;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public static class Change<T> {
+
+        private final Long seq;
+        private final Long id;
+        private final ChangeEvent.Op op;
+        private final T data;
+
+        public Change(Long seq, Long id, ChangeEvent.Op op, T data) {
+            this.seq = seq;
+            this.id = id;
+            this.op = op;
+            this.data = data;
+        }
+
+        public Long getSeq() {
+            return seq;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public ChangeEvent.Op getOp() {
+            return op;
+        }
+
+        public T getData() {
+            return data;
+        }
+    }
+}
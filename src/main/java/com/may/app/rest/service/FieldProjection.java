@@ -0,0 +1,179 @@
+package com.may.app.rest.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.may.app.rest.entity.Post;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.AnnotatedElement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sparse fieldsets: turns {@code ?fields=id,name,company.name} into a criteria query selecting only
+ * those columns and returns each row as nested maps shaped like the entity's JSON. Naming an
+ * embedded object ({@code address}) selects all of its fields; associations expose only their id.
+ */
+@Component
+public class FieldProjection {
+
+    @FunctionalInterface
+    public interface Shape<T> {
+        void apply(CriteriaBuilder builder, CriteriaQuery<Tuple> query, Root<T> root);
+    }
+
+    // JSON properties backed by an association rather than a column of the entity's own table
+    private static final Map<Class<?>, Map<String, String[]>> JOINED_FIELDS =
+            Map.of(Post.class, Map.of("content", new String[]{"body", "body"}));
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private final Map<Class<?>, Set<String>> fieldsByType = new ConcurrentHashMap<>();
+
+    public <T> List<Map<String, Object>> select(Class<T> type, String fields, Shape<T> shape) {
+        return select(type, fields, shape, 0);
+    }
+
+    /** As {@link #select(Class, String, Shape)}, returning at most {@code maxResults} rows when positive. */
+    public <T> List<Map<String, Object>> select(Class<T> type, String fields, Shape<T> shape, int maxResults) {
+        List<String> selected = resolve(type, fields);
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<T> root = query.from(type);
+        List<Selection<?>> selections = new ArrayList<>();
+        Map<String, String[]> joined = JOINED_FIELDS.getOrDefault(type, Map.of());
+        for (String field : selected) {
+            if (joined.containsKey(field)) {
+                String[] target = joined.get(field);
+                selections.add(root.join(target[0], JoinType.LEFT).get(target[1]));
+                continue;
+            }
+            Path<?> path = root;
+            for (String segment : field.split("\\.")) {
+                path = path.get(segment);
+            }
+            selections.add(path);
+        }
+        query.multiselect(selections);
+        shape.apply(builder, query, root);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (maxResults > 0) {
+            typedQuery.setMaxResults(maxResults);
+        }
+        for (Tuple tuple : typedQuery.getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < selected.size(); i++) {
+                put(row, selected.get(i), tuple.get(i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * The given fields of the rows with the given ids, keyed by id; ids without a row are absent.
+     * {@code id} is kept in each row only when it is one of the requested fields.
+     */
+    public <T> Map<Long, Map<String, Object>> selectByIds(Class<T> type, Collection<Long> ids, String fields) {
+        boolean idRequested = resolve(type, fields).contains("id");
+        Map<Long, Map<String, Object>> found = new HashMap<>();
+        if (ids.isEmpty()) {
+            return found;
+        }
+        for (Map<String, Object> row : select(type, "id," + fields, (builder, query, root) -> query.where(root.get("id").in(ids)))) {
+            Long id = (Long) (idRequested ? row.get("id") : row.remove("id"));
+            found.put(id, row);
+        }
+        return found;
+    }
+
+    List<String> resolve(Class<?> type, String fields) {
+        Set<String> known = fieldsByType.computeIfAbsent(type, t -> {
+            Set<String> leaves = new TreeSet<>();
+            collect(entityManager.getMetamodel().managedType(t), "", leaves);
+            leaves.addAll(JOINED_FIELDS.getOrDefault(t, Map.of()).keySet());
+            return leaves;
+        });
+        Set<String> selected = new LinkedHashSet<>();
+        List<String> unknown = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (known.contains(name)) {
+                selected.add(name);
+                continue;
+            }
+            int before = selected.size();
+            known.stream().filter(leaf -> leaf.startsWith(name + ".")).forEach(selected::add);
+            if (selected.size() == before) {
+                unknown.add(name);
+            }
+        }
+        if (!unknown.isEmpty() || selected.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    unknown.isEmpty() ? "No fields requested" : "Unknown fields: " + String.join(", ", unknown));
+        }
+        return new ArrayList<>(selected);
+    }
+
+    private static void collect(ManagedType<?> type, String prefix, Set<String> leaves) {
+        for (Attribute<?, ?> attribute : type.getAttributes()) {
+            if (attribute.getJavaMember() instanceof AnnotatedElement
+                    && ((AnnotatedElement) attribute.getJavaMember()).isAnnotationPresent(JsonIgnore.class)) {
+                continue;
+            }
+            String path = prefix + attribute.getName();
+            switch (attribute.getPersistentAttributeType()) {
+                case BASIC:
+                    leaves.add(path);
+                    break;
+                case EMBEDDED:
+                    collect((ManagedType<?>) ((SingularAttribute<?, ?>) attribute).getType(), path + ".", leaves);
+                    break;
+                case MANY_TO_ONE:
+                case ONE_TO_ONE:
+                    leaves.add(path + ".id");
+                    break;
+                default:
+                    // Collections are not projectable
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(Map<String, Object> row, String field, Object value) {
+        String[] segments = field.split("\\.");
+        Map<String, Object> target = row;
+        for (int i = 0; i < segments.length - 1; i++) {
+            target = (Map<String, Object>) target.computeIfAbsent(segments[i], key -> new LinkedHashMap<String, Object>());
+        }
+        target.put(segments[segments.length - 1], value);
+    }
+}
@@ -0,0 +1,216 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory grid over user coordinates. A nearby query visits only the cells overlapping the
+ * search radius' bounding box and then checks the exact great-circle distance of each candidate.
+ */
+@Component
+public class GeoIndex {
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double KM_PER_DEGREE = Math.PI * EARTH_RADIUS_KM / 180;
+
+    private final double cellDegrees;
+    private final int latCells;
+    private final int lngCells;
+    private final ConcurrentHashMap<Long, Point> points = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+    @Autowired
+    private EntityManager entityManager;
+
+    public GeoIndex(@Value("${geo.cell-degrees:0.5}") double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.latCells = (int) Math.ceil(180 / cellDegrees);
+        this.lngCells = (int) Math.ceil(360 / cellDegrees);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Object[]> rows = entityManager.createQuery(
+                "select u.id, u.address.geo.lat, u.address.geo.lng from User u "
+                        + "where u.address.geo.lat is not null and u.address.geo.lng is not null", Object[].class)
+                .getResultList();
+        for (Object[] row : rows) {
+            put((Long) row[0], (Double) row[1], (Double) row[2]);
+        }
+    }
+
+    /** Re-indexes the user from its saved state, after the surrounding transaction commits. */
+    public void index(User user) {
+        Long id = user.getId();
+        User.Geo geo = user.getAddress() == null ? null : user.getAddress().getGeo();
+        if (geo == null || geo.getLat() == null || geo.getLng() == null) {
+            afterCommit(() -> remove(id));
+        } else {
+            index(id, geo.getLat(), geo.getLng());
+        }
+    }
+
+    public void index(Long id, double lat, double lng) {
+        afterCommit(() -> put(id, lat, lng));
+    }
+
+    public void unindex(Long id) {
+        afterCommit(() -> remove(id));
+    }
+
+    void put(Long id, double lat, double lng) {
+        if (lat < -90 || lat > 90 || lng < -180 || lng > 180) {
+            remove(id);
+            return;
+        }
+        Point point = new Point(id, lat, lng, cellOf(lat, lng));
+        points.compute(id, (key, previous) -> {
+            if (previous != null && previous.cell != point.cell) {
+                leaveCell(previous);
+            }
+            cells.compute(point.cell, (cell, members) -> {
+                Set<Long> updated = members == null ? ConcurrentHashMap.newKeySet() : members;
+                updated.add(id);
+                return updated;
+            });
+            return point;
+        });
+    }
+
+    void remove(Long id) {
+        points.computeIfPresent(id, (key, previous) -> {
+            leaveCell(previous);
+            return null;
+        });
+    }
+
+    int size() {
+        return points.size();
+    }
+
+    /** Ids of users within {@code radiusKm} of the given point, nearest first. */
+    public List<Long> near(double lat, double lng, double radiusKm, int limit) {
+        double dLat = radiusKm / KM_PER_DEGREE;
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double dLng = cosLat < 1e-9 ? 180 : radiusKm / (KM_PER_DEGREE * cosLat);
+
+        int fromLat = Math.max(0, latIndex(lat - dLat));
+        int toLat = Math.min(latCells - 1, latIndex(lat + dLat));
+        boolean allLng = dLng >= 180 || fromLat == 0 || toLat == latCells - 1;
+        int fromLng = allLng ? 0 : lngIndex(lng - dLng);
+        int lngSpan = allLng ? lngCells : Math.min(lngCells, lngIndex(lng + dLng) - fromLng + 1);
+
+        List<Candidate> matches = new ArrayList<>();
+        if ((long) (toLat - fromLat + 1) * lngSpan > points.size()) {
+            // Radius spans more cells than there are users; a straight scan is cheaper
+            points.values().forEach(point -> collect(point, lat, lng, radiusKm, matches));
+        } else {
+            for (int latIdx = fromLat; latIdx <= toLat; latIdx++) {
+                for (int i = 0; i < lngSpan; i++) {
+                    int lngIdx = Math.floorMod(fromLng + i, lngCells);
+                    Set<Long> members = cells.get((long) latIdx * lngCells + lngIdx);
+                    if (members == null) {
+                        continue;
+                    }
+                    for (Long id : members) {
+                        Point point = points.get(id);
+                        if (point != null) {
+                            collect(point, lat, lng, radiusKm, matches);
+                        }
+                    }
+                }
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble((Candidate c) -> c.distanceKm).thenComparingLong(c -> c.id));
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, matches.size()); i++) {
+            ids.add(matches.get(i).id);
+        }
+        return ids;
+    }
+
+    static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static void collect(Point point, double lat, double lng, double radiusKm, List<Candidate> matches) {
+        double distance = distanceKm(lat, lng, point.lat, point.lng);
+        if (distance <= radiusKm) {
+            matches.add(new Candidate(point.id, distance));
+        }
+    }
+
+    private void leaveCell(Point point) {
+        cells.computeIfPresent(point.cell, (cell, members) -> {
+            members.remove(point.id);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private long cellOf(double lat, double lng) {
+        return (long) Math.min(latCells - 1, latIndex(lat)) * lngCells + Math.floorMod(lngIndex(lng), lngCells);
+    }
+
+    private int latIndex(double lat) {
+        return (int) Math.floor((lat + 90) / cellDegrees);
+    }
+
+    private int lngIndex(double lng) {
+        return (int) Math.floor((lng + 180) / cellDegrees);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class Point {
+        private final long id;
+        private final double lat;
+        private final double lng;
+        private final long cell;
+
+        private Point(long id, double lat, double lng, long cell) {
+            this.id = id;
+            this.lat = lat;
+            this.lng = lng;
+            this.cell = cell;
+        }
+    }
+
+    private static final class Candidate {
+        private final long id;
+        private final double distanceKm;
+
+        private Candidate(long id, double distanceKm) {
+            this.id = id;
+            this.distanceKm = distanceKm;
+        }
+    }
+}
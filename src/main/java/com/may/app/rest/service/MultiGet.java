@@ -0,0 +1,102 @@
+package com.may.app.rest.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batched lookup by id. Entities already in the second-level cache are served from it; the rest
+ * are read with one {@code id IN (...)} query per chunk of {@code multiget.chunk-size} ids, which
+ * keeps each statement under the driver's bind-parameter limit (2100 on SQL Server).
+ */
+@Component
+public class MultiGet {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private FieldProjection fieldProjection;
+
+    @Value("${multiget.max-ids:1000}")
+    private int maxIds;
+
+    @Value("${multiget.chunk-size:1000}")
+    private int chunkSize;
+
+    public <T> MultiGetResult<T> load(Class<T> type, List<Long> ids) {
+        List<Long> requested = distinct(ids);
+        Map<Long, T> found = new HashMap<>();
+        List<Long> uncached = new ArrayList<>();
+        for (Long id : requested) {
+            if (entityManagerFactory.getCache().contains(type, id)) {
+                T entity = entityManager.find(type, id);
+                if (entity != null) {
+                    found.put(id, entity);
+                    continue;
+                }
+            }
+            uncached.add(id);
+        }
+        String query = "select e from " + entityManager.getMetamodel().entity(type).getName() + " e where e.id in :ids";
+        for (List<Long> chunk : chunks(uncached)) {
+            entityManager.createQuery(query, type).setParameter("ids", chunk).getResultList()
+                    .forEach(entity -> found.put((Long) entityManagerFactory.getPersistenceUnitUtil().getIdentifier(entity), entity));
+        }
+        return inRequestOrder(requested, found);
+    }
+
+    /** Like {@link #load} but selecting only the given fields, as for {@code ?fields=}. */
+    public MultiGetResult<Map<String, Object>> loadFields(Class<?> type, List<Long> ids, String fields) {
+        List<Long> requested = distinct(ids);
+        Map<Long, Map<String, Object>> found = new HashMap<>();
+        for (List<Long> chunk : chunks(requested)) {
+            found.putAll(fieldProjection.selectByIds(type, chunk, fields));
+        }
+        return inRequestOrder(requested, found);
+    }
+
+    private List<Long> distinct(List<Long> ids) {
+        List<Long> requested = new ArrayList<>(new LinkedHashSet<>(ids));
+        requested.remove(null);
+        if (requested.isEmpty() || requested.size() > maxIds) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ids must list between 1 and " + maxIds + " ids");
+        }
+        return requested;
+    }
+
+    private List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            chunks.add(ids.subList(from, Math.min(ids.size(), from + chunkSize)));
+        }
+        return chunks;
+    }
+
+    private static <T> MultiGetResult<T> inRequestOrder(List<Long> requested, Map<Long, T> found) {
+        List<T> items = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : requested) {
+            T item = found.get(id);
+            if (item == null) {
+                missing.add(id);
+            } else {
+                items.add(item);
+            }
+        }
+        return new MultiGetResult<>(items, missing);
+    }
+}
@@ -0,0 +1,26 @@
+package com.may.app.rest.service;
+
+import java.util.List;
+
+/**
+ * Response of a lookup by id list: the rows found, in the order their ids were requested,
+ * and the requested ids that do not exist.
+ */
+public class MultiGetResult<T> {
+
+    private final List<T> items;
+    private final List<Long> missing;
+
+    public MultiGetResult(List<T> items, List<Long> missing) {
+        this.items = items;
+        this.missing = missing;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public List<Long> getMissing() {
+        return missing;
+    }
+}
@@ -0,0 +1,196 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps {@code users.post_count} and {@code users.last_post_at} in step with post writes.
+ * Most users are updated in place with a single SQL increment; a user who posts more than
+ * {@code counters.hot-threshold} times within one flush interval is switched to striped in-memory
+ * counters that are folded into the row by the periodic flush.
+ */
+@Component
+public class PostCounters {
+
+    static final String INCREMENT_SQL = "UPDATE users SET post_count = COALESCE(post_count, 0) + ?, "
+            + "last_post_at = CASE WHEN ? IS NOT NULL AND (last_post_at IS NULL OR last_post_at < ?) THEN ? ELSE last_post_at END "
+            + "WHERE id = ?";
+
+    private static final int CANDIDATE_CHUNK = 1000;
+
+    private static final String BACKFILL_SQL = "UPDATE users SET post_count = "
+            + "(SELECT COUNT(*) FROM post WHERE post.user_id = users.id) WHERE post_count IS NULL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private SerializedEntityCache responseCache;
+
+    @Autowired
+    private UserRanking ranking;
+
+    @Autowired
+    private ChangeFeedService changeFeed;
+
+    @Value("${counters.hot-threshold:20}")
+    private long hotThreshold;
+
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+
+    /** Records a post created ({@code delta > 0}, with its timestamp) or deleted for the given user. */
+    public void record(Long userId, long delta, Instant postedAt) {
+        if (userId == null) {
+            return;
+        }
+        Pending counter = pending.computeIfAbsent(userId, id -> new Pending());
+        counter.writes.increment();
+        if (counter.writes.sum() <= hotThreshold) {
+            apply(userId, delta, postedAt);
+            return;
+        }
+        // Held in memory rather than written with the post, so only once that write has committed
+        afterCommit(() -> buffer(userId, counter, delta, postedAt));
+    }
+
+    /** Drops a deleted user's buffered counts and ranking entry, once the delete has committed. */
+    public void forget(Long userId) {
+        afterCommit(() -> {
+            Pending counter = pending.remove(userId);
+            if (counter != null) {
+                counter.retired = true;
+                counter.delta.reset();
+                counter.lastPostAt.reset();
+            }
+            ranking.remove(userId);
+        });
+    }
+
+    private void buffer(Long userId, Pending counter, long delta, Instant postedAt) {
+        counter.delta.add(delta);
+        if (postedAt != null) {
+            counter.lastPostAt.accumulate(postedAt.toEpochMilli());
+        }
+        if (counter.retired) {
+            // Flush already dropped this counter; whatever it still holds is ours to write
+            drain(userId, counter);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${counters.flush-interval-ms:1000}")
+    public void flush() {
+        pending.forEach((userId, counter) -> {
+            if (counter.writes.sumThenReset() == 0) {
+                counter.retired = true;
+                pending.remove(userId, counter);
+            }
+            drain(userId, counter);
+        });
+        refreshRankingIfStale();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        jdbcTemplate.update(BACKFILL_SQL);
+        entityManagerFactory.getCache().evict(User.class);
+        refreshRankingIfStale();
+    }
+
+    long pendingDelta(Long userId) {
+        Pending counter = pending.get(userId);
+        return counter == null ? 0 : counter.delta.sum();
+    }
+
+    private void refreshRankingIfStale() {
+        if (ranking.isStale()) {
+            List<Object[]> rows = entityManager
+                    .createQuery("select u.id, u.postCount from User u where u.postCount > 0 order by u.postCount desc, u.id", Object[].class)
+                    .setMaxResults(ranking.capacity())
+                    .getResultList();
+            ranking.reload(rows);
+            return;
+        }
+        List<Long> candidates = new ArrayList<>(ranking.takeCandidates());
+        for (int from = 0; from < candidates.size(); from += CANDIDATE_CHUNK) {
+            ranking.admit(entityManager
+                    .createQuery("select u.id, u.postCount from User u where u.id in :ids", Object[].class)
+                    .setParameter("ids", candidates.subList(from, Math.min(from + CANDIDATE_CHUNK, candidates.size())))
+                    .getResultList());
+        }
+    }
+
+    private void drain(Long userId, Pending counter) {
+        long delta = counter.delta.sumThenReset();
+        long lastPostAt = counter.lastPostAt.getThenReset();
+        if (delta != 0 || lastPostAt != Long.MIN_VALUE) {
+            apply(userId, delta, lastPostAt == Long.MIN_VALUE ? null : Instant.ofEpochMilli(lastPostAt));
+        }
+    }
+
+    private void apply(Long userId, long delta, Instant postedAt) {
+        SqlParameterValue timestamp = new SqlParameterValue(Types.TIMESTAMP, postedAt == null ? null : Timestamp.from(postedAt));
+        if (jdbcTemplate.update(INCREMENT_SQL, delta, timestamp, timestamp, timestamp, userId) == 0) {
+            // The user was deleted; a change event now would follow its tombstone
+            return;
+        }
+        changeFeed.record(ChangeEvent.EntityType.USER, userId, ChangeEvent.Op.UPSERT);
+        afterCommit(() -> afterApply(userId, delta));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // The row changed behind Hibernate's back, so drop just this user from the caches
+    private void afterApply(Long userId, long delta) {
+        entityManagerFactory.getCache().evict(User.class, userId);
+        responseCache.evict(User.class, userId);
+        if (delta != 0) {
+            ranking.onPostCountChanged(userId, delta);
+        }
+    }
+
+    private static final class Pending {
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder delta = new LongAdder();
+        private final LongAccumulator lastPostAt = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private volatile boolean retired;
+    }
+}
@@ -1,37 +1,119 @@
 package com.may.app.rest.service;
 
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.ChangeEvent;
 import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
 import com.may.app.rest.repository.PostRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.persistence.criteria.Predicate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 @Service
 public class PostService {
 
+    public static final int TIMELINE_DEFAULT_LIMIT = 20;
+    static final int TIMELINE_MAX_LIMIT = 100;
+    static final String PAGE_REGION = "posts";
+
     @Autowired
     private PostRepository postRepository;
 
+    @Autowired
+    private SerializedEntityCache responseCache;
+
+    @Autowired
+    private PostCounters postCounters;
+
+    @Autowired
+    private ChangeFeedService changeFeed;
+
+    @Autowired
+    private FieldProjection fieldProjection;
+
+    @Autowired
+    private MultiGet multiGet;
+
+    @Autowired
+    private ResultPageCache pages;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final SingleFlight<Long, Optional<Post>> postLoads = new SingleFlight<>("post");
+
+    // Served from the page cache, which only opens a transaction when it has to load
     public List<Post> getAllPosts() {
-        return postRepository.findAll();
+        return pages.get(PAGE_REGION, "all", () -> readOnly().execute(status ->
+                Collections.unmodifiableList(Prefetch.posts(postRepository.findAll()))));
+    }
+
+    @Transactional(readOnly = true)
+    public MultiGetResult<Post> getPostsByIds(List<Long> ids) {
+        MultiGetResult<Post> result = multiGet.load(Post.class, ids);
+        Prefetch.posts(result.getItems());
+        return result;
     }
 
+    @Transactional(readOnly = true)
+    public MultiGetResult<Map<String, Object>> getPostFieldsByIds(List<Long> ids, String fields) {
+        return multiGet.loadFields(Post.class, ids, fields);
+    }
+
+    // Only the leading load opens a transaction, so callers waiting on it hold no connection
     public Optional<Post> getPostById(Long id) {
-        return postRepository.findById(id);
+        return postLoads.load(id, () -> readOnly().execute(status -> postRepository.findById(id).map(Prefetch::post)));
     }
 
+    @Transactional
     public Post createPost(Post post) {
-        return postRepository.save(post);
+        Post saved = postRepository.save(post);
+        pages.markDirty();
+        evictOwner(post);
+        postCounters.record(ownerId(post), 1, Instant.now());
+        changeFeed.record(ChangeEvent.EntityType.POST, saved.getId(), ChangeEvent.Op.UPSERT);
+        return Prefetch.post(saved);
     }
 
+    @Transactional
     public Post updatePost(Post newPost, Long id) {
+        // Read before the save merges the new state over it
+        Long previousOwnerId = postRepository.findById(id).map(PostService::ownerId).orElse(null);
         newPost.setId(id);
-        return postRepository.save(newPost);
+        // Saved under a new id when none was stored under this one
+        Post saved = postRepository.save(newPost);
+        evict(saved);
+        Long ownerId = ownerId(newPost);
+        if (!Objects.equals(previousOwnerId, ownerId)) {
+            // Moved to another user: the old owner's JSON loses it and the counts follow it
+            if (previousOwnerId != null) {
+                responseCache.evict(User.class, previousOwnerId);
+                postCounters.record(previousOwnerId, -1, null);
+            }
+            postCounters.record(ownerId, 1, null);
+        }
+        changeFeed.record(ChangeEvent.EntityType.POST, saved.getId(), ChangeEvent.Op.UPSERT);
+        return Prefetch.post(saved);
     }
 
+    @Transactional
     public Post patchPost(Post patchedPost, Long id) {
         Optional<Post> existingPost = postRepository.findById(id);
         if (existingPost.isPresent()) {
@@ -44,32 +126,147 @@ public class PostService {
                 post.setContent(patchedPost.getContent());
             }
             // Apply more patches as needed
-            return postRepository.save(post);
+            Post saved = postRepository.save(post);
+            evict(post);
+            changeFeed.record(ChangeEvent.EntityType.POST, id, ChangeEvent.Op.UPSERT);
+            return Prefetch.post(saved);
         } else {
             throw new RuntimeException("Post not found with id: " + id);
         }
     }
 
+    @Transactional
     public void deletePost(Long id) {
+        Optional<Post> existingPost = postRepository.findById(id);
         postRepository.deleteById(id);
+        responseCache.evict(Post.class, id);
+        pages.markDirty();
+        existingPost.ifPresent(post -> {
+            evictOwner(post);
+            postCounters.record(ownerId(post), -1, null);
+        });
+        changeFeed.record(ChangeEvent.EntityType.POST, id, ChangeEvent.Op.DELETE);
     }
 
     public List<Post> filterPosts(Map<String, String> filters) {
         String title = filters.get("title");
         String content = filters.get("content");
 
-        if (title != null && content != null) {
-            return postRepository.findByTitleAndContent(title, content);
-        } else if (title != null) {
-            return postRepository.findByTitle(title);
-        } else if (content != null) {
-            return postRepository.findByContent(content);
-        } else {
+        if (title == null && content == null) {
             return getAllPosts();
         }
+        return pages.get(PAGE_REGION, Arrays.asList(title, content), () -> readOnly().execute(status -> {
+            if (title != null && content != null) {
+                return Collections.unmodifiableList(Prefetch.posts(postRepository.findByTitleAndContent(title, content)));
+            } else if (title != null) {
+                return Collections.unmodifiableList(Prefetch.posts(postRepository.findByTitle(title)));
+            } else {
+                return Collections.unmodifiableList(Prefetch.posts(postRepository.findByContent(content)));
+            }
+        }));
     }
 
+    @Transactional(readOnly = true)
     public List<Post> getPostsByUserId(Long userId) {
-        return postRepository.findByUserId(userId);
+        return Prefetch.posts(postRepository.findByUserId(userId));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAllPostFields(String fields) {
+        return fieldProjection.select(Post.class, fields, (builder, query, root) -> { });
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> getPostFieldsById(Long id, String fields) {
+        return fieldProjection.select(Post.class, fields, (builder, query, root) -> query.where(builder.equal(root.get("id"), id)))
+                .stream().findFirst();
+    }
+
+    // Same matching as filterPosts: exact title and/or content
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> filterPostFields(Map<String, String> filters, String fields) {
+        return fieldProjection.select(Post.class, fields, (builder, query, root) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (filters.get("title") != null) {
+                predicates.add(builder.equal(root.get("title"), filters.get("title")));
+            }
+            if (filters.get("content") != null) {
+                predicates.add(builder.equal(root.get("body").get("hash"), PostContent.hash(filters.get("content"))));
+            }
+            query.where(predicates.toArray(new Predicate[0]));
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getPostFieldsByUserId(Long userId, String fields) {
+        return fieldProjection.select(Post.class, fields,
+                (builder, query, root) -> query.where(builder.equal(root.get("user").get("id"), userId)));
+    }
+
+    /** A user's posts newest first, {@code limit} at a time; pass the last id of a page as {@code before} for the next. */
+    @Transactional(readOnly = true)
+    public List<Post> getTimeline(Long userId, Long before, int limit) {
+        PageRequest page = PageRequest.of(0, timelineLimit(limit));
+        return Prefetch.posts(before == null
+                ? postRepository.findByUserIdOrderByIdDesc(userId, page)
+                : postRepository.findByUserIdAndIdLessThanOrderByIdDesc(userId, before, page));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getTimelineFields(Long userId, Long before, int limit, String fields) {
+        return fieldProjection.select(Post.class, fields, (builder, query, root) -> {
+            Predicate owner = builder.equal(root.get("user").get("id"), userId);
+            query.where(before == null ? owner : builder.and(owner, builder.lessThan(root.get("id"), before)));
+            query.orderBy(builder.desc(root.get("id")));
+        }, timelineLimit(limit));
+    }
+
+    private static int timelineLimit(int limit) {
+        if (limit < 1 || limit > TIMELINE_MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + TIMELINE_MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    @Transactional(readOnly = true)
+    public ChangePage<Post> getChanges(Long since, int limit) {
+        return changeFeed.changesSince(ChangeEvent.EntityType.POST, since, limit, ids -> {
+            Map<Long, Post> posts = new HashMap<>();
+            postRepository.findAllById(ids).forEach(post -> posts.put(post.getId(), Prefetch.post(post)));
+            return posts;
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public ChangePage<Map<String, Object>> getChangeFields(Long since, int limit, String fields) {
+        // Checked up front, as a page without upserts never selects them
+        fieldProjection.resolve(Post.class, fields);
+        return changeFeed.changesSince(ChangeEvent.EntityType.POST, since, limit,
+                ids -> fieldProjection.selectByIds(Post.class, ids, fields));
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    // A user's JSON embeds its posts, so post writes also invalidate the owner
+    private void evict(Post post) {
+        responseCache.evict(Post.class, post.getId());
+        pages.markDirty();
+        evictOwner(post);
+    }
+
+    private void evictOwner(Post post) {
+        Long ownerId = ownerId(post);
+        if (ownerId != null) {
+            responseCache.evict(User.class, ownerId);
+        }
+    }
+
+    private static Long ownerId(Post post) {
+        User user = post.getUser();
+        return user == null ? null : user.getId();
     }
 }
\ No newline at end of file
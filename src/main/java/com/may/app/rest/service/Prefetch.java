@@ -0,0 +1,44 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.User;
+import org.hibernate.Hibernate;
+
+import java.util.Collection;
+
+/**
+ * Loads, inside the service's transaction, the lazy state a response writes: a post's content and
+ * author, and a user's posts with their content. Open-session-in-view is off, so anything left
+ * unloaded here is written as null once the transaction has released its connection.
+ */
+final class Prefetch {
+
+    private Prefetch() {
+    }
+
+    static Post post(Post post) {
+        if (post != null) {
+            post.getContent();
+            Hibernate.initialize(post.getUser());
+        }
+        return post;
+    }
+
+    static User user(User user) {
+        if (user != null && user.getPosts() != null) {
+            Hibernate.initialize(user.getPosts());
+            user.getPosts().forEach(Post::getContent);
+        }
+        return user;
+    }
+
+    static <C extends Collection<Post>> C posts(C posts) {
+        posts.forEach(Prefetch::post);
+        return posts;
+    }
+
+    static <C extends Collection<User>> C users(C users) {
+        users.forEach(Prefetch::user);
+        return users;
+    }
+}
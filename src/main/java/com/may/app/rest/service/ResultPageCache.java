@@ -0,0 +1,235 @@
+package com.may.app.rest.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Recently computed list results (GET /users, /posts and their filters), served stale-while-revalidate.
+ * A page younger than the soft TTL is served as is; an older one, or one loaded before the last
+ * {@link #markDirty()}, is still served while a background load replaces it. Past the hard TTL a page
+ * is not served and the caller loads it again. Concurrent loads of one page share a single query.
+ * At most {@code maxEntries} pages are kept, least recently used dropped first. The cached lists are
+ * shared by every caller, so they must not be modified.
+ */
+@Component
+public class ResultPageCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultPageCache.class);
+    private static final int REFRESH_QUEUE_CAPACITY = 64;
+
+    private final LinkedHashMap<Key, Entry> entries;
+    private final SingleFlight<Key, Object> loads = new SingleFlight<>("result-page");
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder fresh = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final ThreadPoolExecutor refresher;
+    private final long softTtlNanos;
+    private final long hardTtlNanos;
+    private final int maxEntries;
+
+    public ResultPageCache(@Value("${cache.pages.soft-ttl-ms:5000}") long softTtlMillis,
+                           @Value("${cache.pages.hard-ttl-ms:60000}") long hardTtlMillis,
+                           @Value("${cache.pages.max-entries:64}") int maxEntries,
+                           @Value("${cache.pages.refresh-threads:2}") int refreshThreads,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this.softTtlNanos = TimeUnit.MILLISECONDS.toNanos(softTtlMillis);
+        this.hardTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(hardTtlMillis, softTtlMillis));
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > ResultPageCache.this.maxEntries;
+            }
+        };
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refresher = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY), task -> {
+            Thread thread = new Thread(task, "page-refresh-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refresher.allowCoreThreadTimeOut(true);
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("cache.pages.entries", this, ResultPageCache::size)
+                    .description("Result pages kept")
+                    .register(registry);
+            counter(registry, "fresh", fresh, "Pages served within their soft TTL");
+            counter(registry, "stale", stale, "Stale or dirty pages served while a refresh runs");
+            counter(registry, "miss", misses, "Pages loaded on the request, as none was kept or it was past its hard TTL");
+            FunctionCounter.builder("cache.pages.refreshes", refreshes, LongAdder::sum)
+                    .description("Pages replaced by a background load")
+                    .register(registry);
+        });
+    }
+
+    private static void counter(MeterRegistry registry, String result, LongAdder count, String description) {
+        FunctionCounter.builder("cache.pages.requests", count, LongAdder::sum)
+                .tag("result", result)
+                .description(description)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * The page kept for {@code key} in {@code region}, running {@code loader} when there is none to
+     * serve. The loader runs on a background thread when refreshing, so it must open its own transaction.
+     */
+    public <V> V get(String region, Object key, Supplier<V> loader) {
+        return get(region, key, loader, System.nanoTime());
+    }
+
+    @SuppressWarnings("unchecked")
+    <V> V get(String region, Object key, Supplier<V> loader, long now) {
+        // Loaded in the caller's transaction, the entities would stay attached to its session
+        if (maxEntries <= 0 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loader.get();
+        }
+        Key pageKey = new Key(region, key);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(pageKey);
+        }
+        if (entry != null && now - entry.loadedNanos < hardTtlNanos) {
+            if (now - entry.loadedNanos < softTtlNanos && entry.generation == generation.get()) {
+                fresh.increment();
+            } else {
+                stale.increment();
+                refresh(pageKey, entry, loader);
+            }
+            return (V) entry.value;
+        }
+        misses.increment();
+        return (V) loads.load(pageKey, () -> load(pageKey, loader));
+    }
+
+    /**
+     * Makes every page stale; a user's JSON embeds its posts and a post's its author, so any write can
+     * change any page. Inside a transaction it is marked again once that ends, as a page loaded in
+     * between would not yet see the write.
+     */
+    public void markDirty() {
+        generation.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void refresh(Key pageKey, Entry entry, Supplier<?> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    loads.load(pageKey, () -> load(pageKey, loader));
+                    refreshes.increment();
+                } catch (RuntimeException e) {
+                    log.warn("Refresh of {} page {} failed", pageKey.region, pageKey.key, e);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Refresh queue full: keep serving the stale page, a later request tries again
+            entry.refreshing.set(false);
+        }
+    }
+
+    // Aged from when the load finished, but stamped with the generation from before the query, so a write made
+    // while it ran leaves it dirty. A load from an older generation does not replace a newer one.
+    private Object load(Key pageKey, Supplier<?> loader) {
+        long loadGeneration = generation.get();
+        Object value = loader.get();
+        synchronized (entries) {
+            Entry current = entries.get(pageKey);
+            if (current == null || current.generation <= loadGeneration) {
+                entries.put(pageKey, new Entry(value, System.nanoTime(), loadGeneration));
+            }
+        }
+        return value;
+    }
+
+    private static final class Key {
+
+        final String region;
+        final Object key;
+
+        Key(String region, Object key) {
+            this.region = region;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return region.equals(other.region) && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * region.hashCode() + Objects.hashCode(key);
+        }
+    }
+
+    private static final class Entry {
+
+        final Object value;
+        final long loadedNanos;
+        final long generation;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Object value, long loadedNanos, long generation) {
+            this.value = value;
+            this.loadedNanos = loadedNanos;
+            this.generation = generation;
+        }
+    }
+}
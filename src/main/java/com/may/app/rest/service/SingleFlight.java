@@ -0,0 +1,78 @@
+package com.may.app.rest.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader, callers that arrive
+ * while it is in flight wait for and share its result. Nothing is kept once the load completes.
+ * Loaders open their own transaction and return entities with {@link Prefetch} applied, so what is
+ * shared is detached and fully initialized. A caller already in a transaction loads on its own, as
+ * its entities stay attached to that transaction's session, which other threads must not touch.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    public SingleFlight(String name) {
+        FunctionCounter.builder("service.loads", loads, AtomicLong::get)
+                .tag("load", name)
+                .description("Loads that ran against the database")
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("service.loads.deduplicated", deduplicated, AtomicLong::get)
+                .tag("load", name)
+                .description("Loads answered by joining an identical in-flight load")
+                .register(Metrics.globalRegistry);
+    }
+
+    public V load(K key, Supplier<V> loader) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            loads.incrementAndGet();
+            return loader.get();
+        }
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            return join(existing);
+        }
+        loads.incrementAndGet();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public long deduplicatedCount() {
+        return deduplicated.get();
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.may.app.rest.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * In-memory top-K of users by post count. Members are adjusted in place as their counts change.
+ * A non-member that gains posts becomes a candidate: the next counter flush reads the candidates'
+ * counts and admits those above the K-th entry. A member losing posts or leaving marks the ranking
+ * stale instead, as someone untracked may now belong in it, and the next flush reloads it.
+ */
+@Component
+public class UserRanking {
+
+    private static final Comparator<Entry> LOWEST_FIRST =
+            Comparator.comparingLong((Entry e) -> e.count).thenComparing(e -> e.userId, Comparator.reverseOrder());
+
+    private final int capacity;
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>(LOWEST_FIRST);
+    private final Map<Long, Entry> members = new HashMap<>();
+    private Set<Long> candidates = new HashSet<>();
+    private boolean stale = true;
+
+    public UserRanking(@Value("${ranking.top-k:100}") int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** Replaces the ranking with the given (userId, postCount) pairs, typically the top K rows. */
+    public synchronized void reload(List<Object[]> rows) {
+        heap.clear();
+        members.clear();
+        for (Object[] row : rows) {
+            offer(((Number) row[0]).longValue(), row[1] == null ? 0 : ((Number) row[1]).longValue());
+        }
+        candidates.clear();
+        stale = false;
+    }
+
+    /** Non-members that gained posts since the last call; their current counts go to {@link #admit}. */
+    public synchronized Set<Long> takeCandidates() {
+        Set<Long> taken = candidates;
+        candidates = new HashSet<>();
+        return taken;
+    }
+
+    /** Offers the given (userId, postCount) pairs of candidates, keeping only those that rank in the top K. */
+    public synchronized void admit(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            long userId = ((Number) row[0]).longValue();
+            if (!members.containsKey(userId) && row[1] != null) {
+                offer(userId, ((Number) row[1]).longValue());
+            }
+        }
+    }
+
+    public synchronized void onPostCountChanged(Long userId, long delta) {
+        Entry entry = members.get(userId);
+        if (entry == null) {
+            // A non-member can only climb into the top K by gaining posts
+            if (delta > 0) {
+                candidates.add(userId);
+            }
+            return;
+        }
+        heap.remove(entry);
+        entry.count += delta;
+        heap.add(entry);
+        // A member that lost posts may now rank below someone we are not tracking
+        stale |= delta < 0;
+    }
+
+    public synchronized void remove(Long userId) {
+        candidates.remove(userId);
+        Entry entry = members.remove(userId);
+        if (entry != null) {
+            heap.remove(entry);
+            stale = true;
+        }
+    }
+
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    /** User ids of the top {@code n} posters, highest count first. */
+    public synchronized List<Long> top(int n) {
+        List<Entry> sorted = new ArrayList<>(heap);
+        sorted.sort(LOWEST_FIRST.reversed());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, sorted.size()); i++) {
+            ids.add(sorted.get(i).userId);
+        }
+        return ids;
+    }
+
+    private void offer(long userId, long count) {
+        if (heap.size() >= capacity) {
+            if (LOWEST_FIRST.compare(heap.peek(), new Entry(userId, count)) >= 0) {
+                return;
+            }
+            members.remove(heap.poll().userId);
+        }
+        Entry entry = new Entry(userId, count);
+        heap.add(entry);
+        members.put(userId, entry);
+    }
+
+    private static final class Entry {
+        private final long userId;
+        private long count;
+
+        private Entry(long userId, long count) {
+            this.userId = userId;
+            this.count = count;
+        }
+    }
+}
@@ -1,68 +1,282 @@
 package com.may.app.rest.service;
 
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.Post;
 import com.may.app.rest.entity.User;
+import com.may.app.rest.repository.PostRepository;
 import com.may.app.rest.repository.UserRepository;
+import org.hibernate.jpa.QueryHints;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.ReflectionUtils;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import java.lang.reflect.Field;
 import java.util.*;
 
 @Service
 public class UserService {
 
+    static final String FILTER_QUERY_CACHE_REGION = "user-filter-queries";
+    static final String PAGE_REGION = "users";
+
+    private static final Set<String> READ_ONLY_FIELDS = Set.of("postCount", "lastPostAt");
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PostRepository postRepository;
+
     @Autowired
     private EntityManager entityManager;
 
+    @Autowired
+    private SerializedEntityCache responseCache;
+
+    @Autowired
+    private UserRanking ranking;
+
+    @Autowired
+    private PostCounters postCounters;
+
+    @Autowired
+    private ChangeFeedService changeFeed;
+
+    @Autowired
+    private GeoIndex geoIndex;
+
+    @Autowired
+    private FieldProjection fieldProjection;
+
+    @Autowired
+    private MultiGet multiGet;
+
+    @Autowired
+    private ResultPageCache pages;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final SingleFlight<Long, Optional<User>> userLoads = new SingleFlight<>("user");
+
+    // Served from the page cache, which only opens a transaction when it has to load
     public List<User> getAllUsers() {
-        return userRepository.findAll();
+        return pages.get(PAGE_REGION, "all", () -> readOnly().execute(status ->
+                Collections.unmodifiableList(Prefetch.users(userRepository.findAll()))));
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> getUsersByPostCount() {
+        return Prefetch.users(userRepository.findAll(Sort.by(Sort.Order.desc("postCount"), Sort.Order.asc("id"))));
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> getTopPosters(int n) {
+        return Prefetch.users(findAllInOrder(ranking.top(n)));
+    }
+
+    @Transactional(readOnly = true)
+    public List<User> getUsersNear(double lat, double lng, double radiusKm, int limit) {
+        return Prefetch.users(findAllInOrder(geoIndex.near(lat, lng, radiusKm, limit)));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getTopPosterFields(int n, String fields) {
+        List<Long> ids = ranking.top(n);
+        return inOrder(ids, fieldProjection.selectByIds(User.class, ids, fields));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getUserFieldsNear(double lat, double lng, double radiusKm, int limit, String fields) {
+        List<Long> ids = geoIndex.near(lat, lng, radiusKm, limit);
+        return inOrder(ids, fieldProjection.selectByIds(User.class, ids, fields));
+    }
+
+    private static <T> List<T> inOrder(List<Long> ids, Map<Long, T> byId) {
+        List<T> rows = new ArrayList<>();
+        for (Long id : ids) {
+            T row = byId.get(id);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private List<User> findAllInOrder(List<Long> ids) {
+        Map<Long, User> byId = new HashMap<>();
+        userRepository.findAllById(ids).forEach(user -> byId.put(user.getId(), user));
+        return inOrder(ids, byId);
+    }
+
+    @Transactional(readOnly = true)
+    public MultiGetResult<User> getUsersByIds(List<Long> ids) {
+        MultiGetResult<User> result = multiGet.load(User.class, ids);
+        Prefetch.users(result.getItems());
+        return result;
     }
 
+    @Transactional(readOnly = true)
+    public MultiGetResult<Map<String, Object>> getUserFieldsByIds(List<Long> ids, String fields) {
+        return multiGet.loadFields(User.class, ids, fields);
+    }
+
+    // Only the leading load opens a transaction, so callers waiting on it hold no connection
     public Optional<User> getUserById(Long id) {
-        return userRepository.findById(id);
+        return userLoads.load(id, () -> readOnly().execute(status -> userRepository.findById(id).map(Prefetch::user)));
     }
 
+    @Transactional
     public User createUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        pages.markDirty();
+        changeFeed.record(ChangeEvent.EntityType.USER, saved.getId(), ChangeEvent.Op.UPSERT);
+        geoIndex.index(saved);
+        return Prefetch.user(saved);
     }
 
+    @Transactional
     public User updateUser(User newUser, Long id) {
         newUser.setId(id); // Ensure the new user object has the correct ID set
-        return userRepository.save(newUser);
+        // Post counters are not client-writable; keep the stored values on the returned entity
+        userRepository.findById(id).ifPresent(existing -> {
+            newUser.setPostCount(existing.getPostCount());
+            newUser.setLastPostAt(existing.getLastPostAt());
+        });
+        // Saved under a new id when none was stored under this one
+        User saved = userRepository.save(newUser);
+        evict(saved.getId());
+        changeFeed.record(ChangeEvent.EntityType.USER, saved.getId(), ChangeEvent.Op.UPSERT);
+        geoIndex.index(saved);
+        return Prefetch.user(saved);
     }
 
+    @Transactional
     public User patchUser(Map<String, Object> updates, Long id) {
         Optional<User> optionalUser = userRepository.findById(id);
         if (optionalUser.isPresent()) {
             User user = optionalUser.get();
             updates.forEach((key, value) -> {
-                ReflectionUtils.setField(Objects.requireNonNull(ReflectionUtils.findField(User.class, key)), user, value);
+                if (READ_ONLY_FIELDS.contains(key)) {
+                    throw new RuntimeException("Field is read-only: " + key);
+                }
+                Field field = Objects.requireNonNull(ReflectionUtils.findField(User.class, key));
+                ReflectionUtils.makeAccessible(field);
+                ReflectionUtils.setField(field, user, value);
             });
-            return userRepository.save(user);
+            User saved = userRepository.save(user);
+            evict(id);
+            changeFeed.record(ChangeEvent.EntityType.USER, id, ChangeEvent.Op.UPSERT);
+            geoIndex.index(saved);
+            return Prefetch.user(saved);
         } else {
             throw new RuntimeException("User not found with id: " + id);
         }
     }
 
+    @Transactional
     public void deleteUser(Long id) {
+        // The user's posts go with it (cascade), so they need tombstones and evicting too
+        userRepository.findById(id).ifPresent(user -> {
+            if (user.getPosts() != null) {
+                user.getPosts().forEach(post -> {
+                    responseCache.evict(Post.class, post.getId());
+                    changeFeed.record(ChangeEvent.EntityType.POST, post.getId(), ChangeEvent.Op.DELETE);
+                });
+            }
+        });
         userRepository.deleteById(id);
+        responseCache.evict(User.class, id);
+        pages.markDirty();
+        postCounters.forget(id);
+        geoIndex.unindex(id);
+        changeFeed.record(ChangeEvent.EntityType.USER, id, ChangeEvent.Op.DELETE);
+    }
+
+    // A post's JSON embeds its author, so the user's posts go stale with it
+    private void evict(Long id) {
+        responseCache.evict(User.class, id);
+        postRepository.findIdsByUserId(id).forEach(postId -> responseCache.evict(Post.class, postId));
+        pages.markDirty();
+    }
+
+    @Transactional(readOnly = true)
+    public ChangePage<User> getChanges(Long since, int limit) {
+        return changeFeed.changesSince(ChangeEvent.EntityType.USER, since, limit, ids -> {
+            Map<Long, User> users = new HashMap<>();
+            userRepository.findAllById(ids).forEach(user -> users.put(user.getId(), Prefetch.user(user)));
+            return users;
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public ChangePage<Map<String, Object>> getChangeFields(Long since, int limit, String fields) {
+        // Checked up front, as a page without upserts never selects them
+        fieldProjection.resolve(User.class, fields);
+        return changeFeed.changesSince(ChangeEvent.EntityType.USER, since, limit,
+                ids -> fieldProjection.selectByIds(User.class, ids, fields));
     }
 
     public List<User> filterUsers(Map<String, String> filters) {
+        Map<String, String> key = new HashMap<>(filters);
+        return pages.get(PAGE_REGION, key, () -> readOnly().execute(status ->
+                Collections.unmodifiableList(Prefetch.users(runFilterQuery(key)))));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAllUserFields(String fields, boolean byPostCount) {
+        return fieldProjection.select(User.class, fields, (builder, query, root) -> {
+            if (byPostCount) {
+                query.orderBy(builder.desc(root.get("postCount")), builder.asc(root.get("id")));
+            }
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> getUserFieldsById(Long id, String fields) {
+        return fieldProjection.select(User.class, fields, (builder, query, root) -> query.where(builder.equal(root.get("id"), id)))
+                .stream().findFirst();
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> filterUserFields(Map<String, String> filters, String fields) {
+        return fieldProjection.select(User.class, fields, (builder, query, root) ->
+                query.where(filterPredicates(builder, root, filters).toArray(new Predicate[0])));
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private List<User> runFilterQuery(Map<String, String> filters) {
         CriteriaBuilder builder = entityManager.getCriteriaBuilder();
         CriteriaQuery<User> criteriaQuery = builder.createQuery(User.class);
         Root<User> root = criteriaQuery.from(User.class);
 
-        List<Predicate> predicates = new ArrayList<>();
+        List<Predicate> predicates = filterPredicates(builder, root, filters);
 
+        criteriaQuery.where(builder.and(predicates.toArray(new Predicate[0])));
+        TypedQuery<User> query = entityManager.createQuery(criteriaQuery);
+        query.setHint(QueryHints.HINT_CACHEABLE, true);
+        query.setHint(QueryHints.HINT_CACHE_REGION, FILTER_QUERY_CACHE_REGION);
+        return query.getResultList();
+    }
+
+    private static List<Predicate> filterPredicates(CriteriaBuilder builder, Root<User> root, Map<String, String> filters) {
+        List<Predicate> predicates = new ArrayList<>();
         filters.forEach((key, value) -> {
             if (value != null) {
                 switch (key) {
@@ -94,7 +308,6 @@ public class UserService {
             }
         });
 
-        criteriaQuery.where(builder.and(predicates.toArray(new Predicate[0])));
-        return entityManager.createQuery(criteriaQuery).getResultList();
+        return predicates;
     }
 }
@@ -0,0 +1,178 @@
+package com.may.app.rest.tracing;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends finished traces to a file, one OTLP/JSON {@code ExportTraceServiceRequest} per line, the
+ * format the OpenTelemetry collector's {@code otlpjsonfile} receiver reads. Requests only hand the
+ * trace to a bounded queue; a background thread writes it, and traces are dropped while it is full.
+ */
+public class OtlpFileExporter implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OtlpFileExporter.class);
+
+    private static final int KIND_INTERNAL = 1;
+    private static final int KIND_SERVER = 2;
+    private static final int KIND_CLIENT = 3;
+
+    private final String serviceName;
+    private final BlockingQueue<RequestTrace> queue;
+    private final OutputStream out;
+    private final JsonFactory json = new JsonFactory();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public OtlpFileExporter(Path file, String serviceName, int queueCapacity) {
+        this.serviceName = serviceName;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open trace file " + file, e);
+        }
+        this.writer = new Thread(this::drain, "trace-export");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** Queues a finished trace for writing; false if it was dropped. */
+    public boolean export(RequestTrace trace) {
+        if (closed || !queue.offer(trace)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /** Writes what is queued and closes the file. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+    }
+
+    // Polls rather than being interrupted: an interrupt during a write would close the file's channel
+    private void drain() {
+        List<RequestTrace> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            RequestTrace trace;
+            try {
+                trace = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (trace != null) {
+                batch.add(trace);
+                queue.drainTo(batch);
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<RequestTrace> traces) {
+        try {
+            for (RequestTrace trace : traces) {
+                JsonGenerator generator = json.createGenerator(out, JsonEncoding.UTF8);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                writeRequest(generator, trace);
+                generator.close();
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            log.warn("Could not write {} traces", traces.size(), e);
+        }
+    }
+
+    private void writeRequest(JsonGenerator json, RequestTrace trace) throws IOException {
+        json.writeStartObject();
+        json.writeArrayFieldStart("resourceSpans");
+        json.writeStartObject();
+        json.writeObjectFieldStart("resource");
+        writeAttributes(json, Map.of("service.name", serviceName));
+        json.writeEndObject();
+        json.writeArrayFieldStart("scopeSpans");
+        json.writeStartObject();
+        json.writeObjectFieldStart("scope");
+        json.writeStringField("name", RequestTrace.class.getPackageName());
+        json.writeEndObject();
+        json.writeArrayFieldStart("spans");
+        for (Span span : trace.spans()) {
+            writeSpan(json, trace, span);
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    private void writeSpan(JsonGenerator json, RequestTrace trace, Span span) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("traceId", trace.traceId());
+        json.writeStringField("spanId", String.format("%016x", span.id));
+        if (span.parent != null) {
+            json.writeStringField("parentSpanId", String.format("%016x", span.parent.id));
+        }
+        json.writeStringField("name", span.name);
+        json.writeNumberField("kind", span.phase == Phase.REQUEST ? KIND_SERVER : span.phase == Phase.DB ? KIND_CLIENT : KIND_INTERNAL);
+        // 64-bit integers are strings in OTLP/JSON
+        json.writeStringField("startTimeUnixNano", Long.toString(trace.epochNanos(span.startNanos)));
+        json.writeStringField("endTimeUnixNano", Long.toString(trace.epochNanos(span.endNanos)));
+        writeAttributes(json, span.attributes());
+        json.writeEndObject();
+    }
+
+    private static void writeAttributes(JsonGenerator json, Map<String, ?> attributes) throws IOException {
+        json.writeArrayFieldStart("attributes");
+        for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+            json.writeStartObject();
+            json.writeStringField("key", attribute.getKey());
+            json.writeObjectFieldStart("value");
+            Object value = attribute.getValue();
+            if (value instanceof Integer || value instanceof Long) {
+                json.writeStringField("intValue", value.toString());
+            } else if (value instanceof Number) {
+                json.writeNumberField("doubleValue", ((Number) value).doubleValue());
+            } else {
+                json.writeStringField("stringValue", String.valueOf(value));
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+}
@@ -0,0 +1,22 @@
+package com.may.app.rest.tracing;
+
+/** What a span's time is charged to in the {@code Server-Timing} breakdown. */
+public enum Phase {
+    /** The request itself; its own time covers the filters, dispatch and anything not traced. */
+    REQUEST("other"),
+    SECURITY("security"),
+    CONTROLLER("controller"),
+    SERVICE("service"),
+    DB("db"),
+    JSON("json");
+
+    private final String metricName;
+
+    Phase(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String metricName() {
+        return metricName;
+    }
+}
@@ -0,0 +1,169 @@
+package com.may.app.rest.tracing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The spans of one request, opened and closed on the request thread as a stack. Besides keeping
+ * up to {@code maxSpans} spans for export, it sums each phase's own time (a span's duration less
+ * its children's), so the {@code Server-Timing} entries add up to the total instead of overlapping.
+ * Work handed to other threads is not traced.
+ */
+public final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    private final String traceId;
+    private final long epochNanos;
+    private final int maxSpans;
+    private final List<Span> spans = new ArrayList<>();
+    private final List<Span> open = new ArrayList<>();
+    private final Map<Phase, long[]> phases = new EnumMap<>(Phase.class);
+    private final Span root;
+    private long nextSpanId = ThreadLocalRandom.current().nextLong();
+    private int droppedSpans;
+    private boolean sendsServerTiming;
+
+    private RequestTrace(String name, int maxSpans) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        this.traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+        Instant now = Instant.now();
+        this.epochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        this.maxSpans = maxSpans;
+        this.root = open(Phase.REQUEST, name);
+    }
+
+    /** The trace of the request on this thread, or null outside a traced request. */
+    public static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /** Starts tracing the request on this thread; {@link ServerTimingFilter} does this for every request. */
+    public static RequestTrace start(String name, int maxSpans) {
+        RequestTrace trace = new RequestTrace(name, maxSpans);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /** Closes whatever is still open, the request span last, and detaches the trace from the thread. */
+    public void finish() {
+        close(root);
+        CURRENT.remove();
+    }
+
+    public Span open(Phase phase, String name) {
+        Span parent = open.isEmpty() ? null : open.get(open.size() - 1);
+        Span span = new Span(nextSpanId++, parent, phase, name, System.nanoTime());
+        open.add(span);
+        if (spans.size() < maxSpans) {
+            spans.add(span);
+        } else {
+            droppedSpans++;
+        }
+        return span;
+    }
+
+    /** Closes the span, and any left open above it by an exception. */
+    public void close(Span span) {
+        int index = open.lastIndexOf(span);
+        if (index < 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (int i = open.size() - 1; i >= index; i--) {
+            Span closed = open.remove(i);
+            closed.endNanos = now;
+            long duration = closed.durationNanos();
+            long[] totals = phases.computeIfAbsent(closed.phase, phase -> new long[2]);
+            totals[0] += duration - closed.childNanos;
+            totals[1]++;
+            if (closed.parent != null) {
+                closed.parent.childNanos += duration;
+            }
+        }
+    }
+
+    /** Closes the innermost open span if it belongs to the given phase. */
+    public void close(Phase phase) {
+        if (!open.isEmpty() && open.get(open.size() - 1).phase == phase) {
+            close(open.get(open.size() - 1));
+        }
+    }
+
+    /**
+     * The {@code Server-Timing} value as of now: each phase's own time in milliseconds, the statement
+     * count on {@code db}, and the total. Spans still open are counted up to now.
+     */
+    public String serverTiming() {
+        long now = System.nanoTime();
+        Map<Phase, long[]> totals = new EnumMap<>(Phase.class);
+        phases.forEach((phase, values) -> totals.put(phase, values.clone()));
+        long openChild = 0;
+        for (int i = open.size() - 1; i >= 0; i--) {
+            Span span = open.get(i);
+            long elapsed = now - span.startNanos;
+            long[] values = totals.computeIfAbsent(span.phase, phase -> new long[2]);
+            values[0] += elapsed - span.childNanos - openChild;
+            values[1]++;
+            openChild = elapsed;
+        }
+        StringBuilder header = new StringBuilder();
+        totals.forEach((phase, values) -> {
+            if (phase == Phase.REQUEST) {
+                return;
+            }
+            header.append(phase.metricName()).append(";dur=").append(millis(values[0]));
+            if (phase == Phase.DB) {
+                header.append(";desc=\"").append(values[1]).append(values[1] == 1 ? " statement\"" : " statements\"");
+            }
+            header.append(", ");
+        });
+        long[] own = totals.get(Phase.REQUEST);
+        header.append(Phase.REQUEST.metricName()).append(";dur=").append(millis(own == null ? 0 : own[0]));
+        header.append(", total;dur=").append(millis(now - root.startNanos));
+        return header.toString();
+    }
+
+    public String traceId() {
+        return traceId;
+    }
+
+    /** Whether the response carries a {@code Server-Timing} header, which the body has to wait for. */
+    public boolean sendsServerTiming() {
+        return sendsServerTiming;
+    }
+
+    void sendServerTiming() {
+        sendsServerTiming = true;
+    }
+
+    Span root() {
+        return root;
+    }
+
+    List<Span> spans() {
+        return spans;
+    }
+
+    int droppedSpans() {
+        return droppedSpans;
+    }
+
+    long totalNanos() {
+        return (root.endNanos == 0 ? System.nanoTime() : root.endNanos) - root.startNanos;
+    }
+
+    // Wall-clock time of a nanoTime reading, for export
+    long epochNanos(long nanoTime) {
+        return epochNanos + (nanoTime - root.startNanos);
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+}
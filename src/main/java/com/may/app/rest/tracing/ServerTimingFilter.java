@@ -0,0 +1,135 @@
+package com.may.app.rest.tracing;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces each request from just before Spring Security, which is charged to {@code security} until
+ * {@link #securityDone()} runs behind it. The {@code Server-Timing} header is added as the response
+ * starts, so a streamed body only reports the time up to its first byte; the export always has it all.
+ */
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Server-Timing";
+
+    private final boolean serverTiming;
+    private final int maxSpans;
+    private final OtlpFileExporter exporter;
+    private final long exportMinNanos;
+
+    public ServerTimingFilter(boolean serverTiming, int maxSpans, OtlpFileExporter exporter, long exportMinMillis) {
+        this.serverTiming = serverTiming;
+        this.maxSpans = maxSpans;
+        this.exporter = exporter;
+        this.exportMinNanos = TimeUnit.MILLISECONDS.toNanos(exportMinMillis);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RequestTrace trace = RequestTrace.start(request.getMethod() + " " + request.getRequestURI(), maxSpans);
+        if (serverTiming) {
+            trace.sendServerTiming();
+        }
+        trace.open(Phase.SECURITY, "security");
+        TimingResponse timed = new TimingResponse(response, trace);
+        try {
+            chain.doFilter(request, timed);
+        } finally {
+            timed.addServerTiming();
+            trace.finish();
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            trace.root()
+                    .attribute("http.method", request.getMethod())
+                    .attribute("http.target", request.getRequestURI())
+                    .attribute("http.route", route == null ? "" : route.toString())
+                    .attribute("http.status_code", response.getStatus());
+            if (trace.droppedSpans() > 0) {
+                trace.root().attribute("spans.dropped", trace.droppedSpans());
+            }
+            if (exporter != null && trace.totalNanos() >= exportMinNanos) {
+                exporter.export(trace);
+            }
+        }
+    }
+
+    /** Ends the {@code security} phase; registered right behind the Spring Security filter chain. */
+    public static OncePerRequestFilter securityDone() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                    throws ServletException, IOException {
+                RequestTrace trace = RequestTrace.current();
+                if (trace != null) {
+                    trace.close(Phase.SECURITY);
+                }
+                chain.doFilter(request, response);
+            }
+        };
+    }
+
+    // Adds the header at the last moment it can still be sent: when the body or an error starts
+    private class TimingResponse extends HttpServletResponseWrapper {
+
+        private final RequestTrace trace;
+        private boolean added;
+
+        TimingResponse(HttpServletResponse response, RequestTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        void addServerTiming() {
+            if (!added && serverTiming && !isCommitted()) {
+                setHeader(HEADER, trace.serverTiming() + (exporter == null ? "" : ", trace;desc=\"" + trace.traceId() + "\""));
+            }
+            added = true;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            addServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            addServerTiming();
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            addServerTiming();
+            super.sendRedirect(location);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.may.app.rest.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** One timed step of a {@link RequestTrace}. Times are {@link System#nanoTime()} readings. */
+public final class Span {
+
+    final long id;
+    final Span parent;
+    final Phase phase;
+    final String name;
+    final long startNanos;
+    long endNanos;
+    // Time spent in closed children, so the span's own time is what is left
+    long childNanos;
+    private Map<String, Object> attributes;
+
+    Span(long id, Span parent, Phase phase, String name, long startNanos) {
+        this.id = id;
+        this.parent = parent;
+        this.phase = phase;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    /** Adds an attribute to the exported span; values are strings or numbers. */
+    public Span attribute(String key, Object value) {
+        if (attributes == null) {
+            attributes = new LinkedHashMap<>();
+        }
+        attributes.put(key, value);
+        return this;
+    }
+
+    Map<String, Object> attributes() {
+        return attributes == null ? Map.of() : attributes;
+    }
+
+    long durationNanos() {
+        return endNanos - startNanos;
+    }
+}
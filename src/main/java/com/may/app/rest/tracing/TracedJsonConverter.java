@@ -0,0 +1,60 @@
+package com.may.app.rest.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * The JSON converter, charging serialization to a {@code json} span. When the request sends a
+ * {@code Server-Timing} header the whole body is serialized into a buffer first, so the time is
+ * known before the response, and with it the header, is started; otherwise the body is streamed.
+ */
+public class TracedJsonConverter extends MappingJackson2HttpMessageConverter {
+
+    public TracedJsonConverter(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        RequestTrace trace = RequestTrace.current();
+        if (trace == null) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+        if (!trace.sendsServerTiming()) {
+            Span span = trace.open(Phase.JSON, "json " + (object == null ? "null" : object.getClass().getSimpleName()));
+            try {
+                super.writeInternal(object, type, outputMessage);
+            } finally {
+                trace.close(span);
+            }
+            return;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+        Span span = trace.open(Phase.JSON, "json " + (object == null ? "null" : object.getClass().getSimpleName()));
+        try {
+            super.writeInternal(object, type, new HttpOutputMessage() {
+                @Override
+                public OutputStream getBody() {
+                    return buffer;
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return outputMessage.getHeaders();
+                }
+            });
+        } finally {
+            trace.close(span);
+        }
+        span.attribute("bytes", buffer.size());
+        buffer.writeTo(outputMessage.getBody());
+    }
+}
@@ -0,0 +1,37 @@
+package com.may.app.rest.tracing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Opens a {@code controller} span around each controller handler and a {@code service} span around
+ * each public service method called through its proxy. Serialization of the handler's result
+ * happens after the handler returns, so it is charged to {@code json} rather than {@code controller}.
+ */
+@Aspect
+public class TracingAspect {
+
+    @Around("within(@org.springframework.web.bind.annotation.RestController *) && execution(public * *(..))")
+    public Object controller(ProceedingJoinPoint call) throws Throwable {
+        return traced(Phase.CONTROLLER, call);
+    }
+
+    @Around("within(@org.springframework.stereotype.Service *) && execution(public * *(..))")
+    public Object service(ProceedingJoinPoint call) throws Throwable {
+        return traced(Phase.SERVICE, call);
+    }
+
+    private static Object traced(Phase phase, ProceedingJoinPoint call) throws Throwable {
+        RequestTrace trace = RequestTrace.current();
+        if (trace == null) {
+            return call.proceed();
+        }
+        Span span = trace.open(phase, call.getSignature().getDeclaringType().getSimpleName() + "." + call.getSignature().getName());
+        try {
+            return call.proceed();
+        } finally {
+            trace.close(span);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+-- Tables as the entities map them (see sqlserver/V1__schema.sql)
+
+CREATE TABLE IF NOT EXISTS users (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    name         VARCHAR(255),
+    username     VARCHAR(255),
+    email        VARCHAR(255),
+    street       VARCHAR(255),
+    suite        VARCHAR(255),
+    city         VARCHAR(255),
+    zipcode      VARCHAR(255),
+    lat          DOUBLE,
+    lng          DOUBLE,
+    phone        VARCHAR(255),
+    website      VARCHAR(255),
+    company_name VARCHAR(255),
+    catch_phrase VARCHAR(255),
+    bs           VARCHAR(255),
+    post_count   BIGINT,
+    last_post_at TIMESTAMP
+);
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS post_count BIGINT;
+ALTER TABLE users ADD COLUMN IF NOT EXISTS last_post_at TIMESTAMP;
+
+CREATE TABLE IF NOT EXISTS post_content (
+    id   VARCHAR(36) NOT NULL PRIMARY KEY,
+    body BLOB,
+    hash BINARY(32)
+);
+
+CREATE TABLE IF NOT EXISTS post (
+    id         BIGINT AUTO_INCREMENT PRIMARY KEY,
+    title      VARCHAR(255),
+    content_id VARCHAR(36),
+    user_id    BIGINT
+);
+
+ALTER TABLE post ADD COLUMN IF NOT EXISTS content_id VARCHAR(36);
+ALTER TABLE post ADD CONSTRAINT IF NOT EXISTS fk_post_user FOREIGN KEY (user_id) REFERENCES users (id);
+ALTER TABLE post ADD CONSTRAINT IF NOT EXISTS fk_post_content FOREIGN KEY (content_id) REFERENCES post_content (id);
+
+CREATE TABLE IF NOT EXISTS change_event (
+    id          BIGINT AUTO_INCREMENT PRIMARY KEY,
+    entity_type VARCHAR(8) NOT NULL,
+    entity_id   BIGINT NOT NULL,
+    op          VARCHAR(8) NOT NULL,
+    changed_at  TIMESTAMP NOT NULL
+);
@@ -0,0 +1,9 @@
+-- Indexes behind the repository queries (see sqlserver/V2__indexes.sql; H2 has no INCLUDE columns)
+
+DROP INDEX IF EXISTS idx_post_user_timeline;
+CREATE INDEX idx_post_user_timeline ON post (user_id, id DESC, title, content_id);
+CREATE INDEX IF NOT EXISTS idx_post_title ON post (title);
+CREATE INDEX IF NOT EXISTS idx_post_content_hash ON post_content (hash);
+CREATE INDEX IF NOT EXISTS idx_users_username ON users (username);
+CREATE INDEX IF NOT EXISTS idx_users_email ON users (email);
+CREATE INDEX IF NOT EXISTS idx_change_event_type_seq ON change_event (entity_type, id);
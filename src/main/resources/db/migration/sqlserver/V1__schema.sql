@@ -0,0 +1,63 @@
+-- Tables as the entities map them. Databases previously managed by ddl-auto=update run this too
+-- (baseline version 0), so every statement only creates what is missing.
+
+IF OBJECT_ID('users', 'U') IS NULL
+CREATE TABLE users (
+    id           BIGINT IDENTITY NOT NULL PRIMARY KEY,
+    name         VARCHAR(255),
+    username     VARCHAR(255),
+    email        VARCHAR(255),
+    street       VARCHAR(255),
+    suite        VARCHAR(255),
+    city         VARCHAR(255),
+    zipcode      VARCHAR(255),
+    lat          DOUBLE PRECISION,
+    lng          DOUBLE PRECISION,
+    phone        VARCHAR(255),
+    website      VARCHAR(255),
+    company_name VARCHAR(255),
+    catch_phrase VARCHAR(255),
+    bs           VARCHAR(255),
+    post_count   BIGINT,
+    last_post_at DATETIME2
+);
+
+IF COL_LENGTH('users', 'post_count') IS NULL
+    ALTER TABLE users ADD post_count BIGINT;
+IF COL_LENGTH('users', 'last_post_at') IS NULL
+    ALTER TABLE users ADD last_post_at DATETIME2;
+
+IF OBJECT_ID('post_content', 'U') IS NULL
+CREATE TABLE post_content (
+    id   VARCHAR(36) NOT NULL PRIMARY KEY,
+    body VARBINARY(MAX),
+    hash VARBINARY(32)
+);
+
+IF OBJECT_ID('post', 'U') IS NULL
+CREATE TABLE post (
+    id         BIGINT IDENTITY NOT NULL PRIMARY KEY,
+    title      VARCHAR(255),
+    content_id VARCHAR(36),
+    user_id    BIGINT
+);
+
+IF COL_LENGTH('post', 'content_id') IS NULL
+    ALTER TABLE post ADD content_id VARCHAR(36);
+
+IF NOT EXISTS (SELECT 1 FROM sys.foreign_keys
+               WHERE parent_object_id = OBJECT_ID('post') AND referenced_object_id = OBJECT_ID('users'))
+    ALTER TABLE post ADD CONSTRAINT fk_post_user FOREIGN KEY (user_id) REFERENCES users (id);
+
+IF NOT EXISTS (SELECT 1 FROM sys.foreign_keys
+               WHERE parent_object_id = OBJECT_ID('post') AND referenced_object_id = OBJECT_ID('post_content'))
+    ALTER TABLE post ADD CONSTRAINT fk_post_content FOREIGN KEY (content_id) REFERENCES post_content (id);
+
+IF OBJECT_ID('change_event', 'U') IS NULL
+CREATE TABLE change_event (
+    id          BIGINT IDENTITY NOT NULL PRIMARY KEY,
+    entity_type VARCHAR(8) NOT NULL,
+    entity_id   BIGINT NOT NULL,
+    op          VARCHAR(8) NOT NULL,
+    changed_at  DATETIME2 NOT NULL
+);
@@ -0,0 +1,25 @@
+-- Indexes behind the repository queries. ddl-auto=update may already have created the ones declared
+-- on the entities, without INCLUDE columns; those are replaced.
+
+-- findByUserId and the newest-first timeline
+IF EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'idx_post_user_timeline' AND object_id = OBJECT_ID('post'))
+    DROP INDEX idx_post_user_timeline ON post;
+CREATE INDEX idx_post_user_timeline ON post (user_id, id DESC) INCLUDE (title, content_id);
+
+-- findByTitle, findByTitleAndContent
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'idx_post_title' AND object_id = OBJECT_ID('post'))
+    CREATE INDEX idx_post_title ON post (title) INCLUDE (content_id, user_id);
+
+-- findByContent, findByTitleAndContent through the content hash
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'idx_post_content_hash' AND object_id = OBJECT_ID('post_content'))
+    CREATE INDEX idx_post_content_hash ON post_content (hash);
+
+-- User filters on username and email
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'idx_users_username' AND object_id = OBJECT_ID('users'))
+    CREATE INDEX idx_users_username ON users (username);
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'idx_users_email' AND object_id = OBJECT_ID('users'))
+    CREATE INDEX idx_users_email ON users (email);
+
+-- Change feed pages
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'idx_change_event_type_seq' AND object_id = OBJECT_ID('change_event'))
+    CREATE INDEX idx_change_event_type_seq ON change_event (entity_type, id);
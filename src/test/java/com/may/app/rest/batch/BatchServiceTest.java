@@ -0,0 +1,220 @@
+package com.may.app.rest.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.ratelimit.RateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class BatchServiceTest {
+
+    private final DispatcherServlet dispatcherServlet = mock(DispatcherServlet.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final RateLimiter rateLimiter = mock(RateLimiter.class);
+    private final List<String> dispatched = new ArrayList<>();
+    private final AtomicBoolean slowFinished = new AtomicBoolean();
+    private BatchService batchService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        batchService = new BatchService(2, 4);
+        ReflectionTestUtils.setField(batchService, "dispatcherServlet", dispatcherServlet);
+        ReflectionTestUtils.setField(batchService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(batchService, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(batchService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(batchService, "maxRequests", 5);
+        ReflectionTestUtils.setField(batchService, "timeoutMillis", 5000L);
+        when(rateLimiter.classify(anyString(), anyString())).thenReturn(RateLimiter.Budget.DEFAULT);
+        when(rateLimiter.classify("POST", "/users/import")).thenReturn(RateLimiter.Budget.BULK);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        doAnswer(invocation -> {
+            HttpServletRequest request = invocation.getArgument(0);
+            HttpServletResponse response = invocation.getArgument(1);
+            String target = request.getMethod() + " " + request.getRequestURI()
+                    + (request.getQueryString() == null ? "" : "?" + request.getQueryString());
+            synchronized (dispatched) {
+                dispatched.add(target);
+            }
+            if (request.getRequestURI().equals("/users/1")) {
+                response.setContentType("application/json");
+                response.getWriter().write("{\"id\":1,\"company\":{\"name\":\"Acme\"}}");
+            } else if (request.getRequestURI().equals("/users/2")) {
+                response.sendError(404, "User not found with id: 2");
+            } else if (request.getRequestURI().equals("/posts") && "POST".equals(request.getMethod())) {
+                String body = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                response.setContentType("application/json");
+                response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+            } else if (request.getRequestURI().equals("/posts/boom")) {
+                throw new IllegalStateException("boom");
+            } else if (request.getRequestURI().equals("/posts/slow")) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    // Still using the batch request while it winds down
+                    Thread.sleep(200);
+                    request.getHeader("Accept");
+                    slowFinished.set(true);
+                    throw e;
+                }
+            } else {
+                response.setContentType("application/json");
+                response.getWriter().write("[{\"q\":\"" + request.getParameter("q") + "\"}]");
+            }
+            return null;
+        }).when(dispatcherServlet).service(any(ServletRequest.class), any(ServletResponse.class));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Test
+    public void testDependentGetsShareOneReadOnlyTransaction() {
+        List<BatchResponse.Part> responses = execute(
+                part("me", "GET", "/users/1", null),
+                part("posts", "GET", "/posts/user/{me.id}?q={me.company.name}", null));
+
+        assertEquals(List.of("me", "posts"), responses.stream().map(BatchResponse.Part::getId).collect(Collectors.toList()));
+        assertEquals(200, responses.get(1).getStatus());
+        assertEquals("Acme", ((JsonNode) responses.get(1).getBody()).get(0).get("q").asText());
+        assertEquals(List.of("GET /users/1", "GET /posts/user/1?q=Acme"), dispatched);
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertTrue(definition.getValue().isReadOnly());
+        verify(transactionManager).commit(argThat(TransactionStatus::isRollbackOnly));
+    }
+
+    @Test
+    public void testIndependentRequestsRunOutsideATransactionAndKeepRequestOrder() {
+        BatchRequest.Part create = part("create", "POST", "/posts", new ObjectMapper().createObjectNode().put("title", "t"));
+
+        List<BatchResponse.Part> responses = execute(part("a", "GET", "/posts?q=x%20y", null), create, part("missing", "GET", "/users/2", null));
+
+        assertEquals(List.of("a", "create", "missing"), responses.stream().map(BatchResponse.Part::getId).collect(Collectors.toList()));
+        assertEquals("x y", ((JsonNode) responses.get(0).getBody()).get(0).get("q").asText());
+        assertEquals("t", ((JsonNode) responses.get(1).getBody()).get("title").asText());
+        assertEquals(404, responses.get(2).getStatus());
+        assertEquals("User not found with id: 2", responses.get(2).getError());
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    public void testFailuresAreReportedPerSubRequest() {
+        when(rateLimiter.tryAcquire(anyString(), eq(RateLimiter.Budget.FILTER))).thenReturn(2_500_000_000L);
+        when(rateLimiter.classify("GET", "/users/filter")).thenReturn(RateLimiter.Budget.FILTER);
+
+        List<BatchResponse.Part> responses = execute(
+                part("gone", "GET", "/users/2", null),
+                part("dependent", "GET", "/posts/user/{gone.id}", null),
+                part("outside", "GET", "/actuator/health", null),
+                part("bulk", "POST", "/users/import", null),
+                part("limited", "GET", "/users/filter", null));
+
+        assertEquals(List.of(404, 424, 400, 400, 429), responses.stream().map(BatchResponse.Part::getStatus).collect(Collectors.toList()));
+        assertEquals("3", responses.get(4).getHeaders().get("Retry-After"));
+        assertEquals(List.of("GET /users/2"), dispatched);
+    }
+
+    @Test
+    public void testEncodedPathsAreCheckedAsTheyAreDispatched() {
+        List<BatchResponse.Part> responses = execute(
+                part("encoded", "POST", "/users/%69mport", null),
+                part("parameter", "POST", "/users;v=1/import", null),
+                part("slashes", "POST", "//users//import", null),
+                part("escaped", "GET", "/%75sers/1", null));
+
+        assertEquals(List.of(400, 400, 400, 200), responses.stream().map(BatchResponse.Part::getStatus).collect(Collectors.toList()));
+        assertEquals(List.of("GET /users/1"), dispatched);
+    }
+
+    @Test
+    public void testHandlerExceptionBecomesServerError() {
+        BatchResponse.Part response = execute(part("boom", "GET", "/posts/boom", null)).get(0);
+
+        assertEquals(500, response.getStatus());
+        assertEquals("boom", response.getError());
+    }
+
+    @Test
+    public void testTimedOutBatchWaitsForItsRunningSubRequestsToStop() {
+        ReflectionTestUtils.setField(batchService, "timeoutMillis", 200L);
+
+        List<BatchResponse.Part> responses = execute(part("slow", "GET", "/posts/slow", null), part("me", "GET", "/users/1", null));
+
+        assertTrue(slowFinished.get());
+        assertEquals(200, responses.get(1).getStatus());
+        assertEquals(504, responses.get(0).getStatus());
+        assertEquals("Batch timed out", responses.get(0).getError());
+    }
+
+    @Test
+    public void testMalformedBatchesAreRejected() {
+        assertThrows(ResponseStatusException.class, () -> execute());
+        assertThrows(ResponseStatusException.class, () -> execute(part("a", "GET", "/posts/{b.id}", null), part("b", "GET", "/users/1", null)));
+        assertThrows(ResponseStatusException.class, () -> execute(part("a", "GET", "/users/1", null), part("a", "GET", "/users/1", null)));
+        assertThrows(ResponseStatusException.class, () -> execute(part("a", "TRACE", "/users/1", null)));
+        BatchRequest.Part[] tooMany = new BatchRequest.Part[6];
+        for (int i = 0; i < tooMany.length; i++) {
+            tooMany[i] = part("p" + i, "GET", "/users/1", null);
+        }
+        assertThrows(ResponseStatusException.class, () -> execute(tooMany));
+    }
+
+    @Test
+    public void testNamedGroupsAndReferencesMustAgree() {
+        BatchRequest.Part first = part("a", "GET", "/users/1", null);
+        first.setGroup("left");
+        BatchRequest.Part second = part("b", "GET", "/users/1", null);
+        second.setGroup("right");
+        BatchRequest.Part third = part("c", "GET", "/posts/{a.id}", null);
+        third.setGroup("right");
+
+        assertThrows(ResponseStatusException.class, () -> batchService.group(List.of(first, second, third)));
+        third.setGroup("left");
+        assertEquals(2, batchService.group(List.of(first, second, third)).size());
+    }
+
+    private List<BatchResponse.Part> execute(BatchRequest.Part... parts) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/batch");
+        return batchService.execute(List.of(parts), request, new MockHttpServletResponse());
+    }
+
+    private static BatchRequest.Part part(String id, String method, String path, JsonNode body) {
+        BatchRequest.Part part = new BatchRequest.Part();
+        part.setId(id);
+        part.setMethod(method);
+        part.setPath(path);
+        part.setBody(body);
+        part.setHeaders(Map.of());
+        return part;
+    }
+}
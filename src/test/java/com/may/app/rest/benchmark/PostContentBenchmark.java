@@ -0,0 +1,163 @@
+package com.may.app.rest.benchmark;
+
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compression ratio of post bodies and the latency of listing posts with the body stored inline
+ * (the old {@code TEXT} column) versus split out and compressed. Run with
+ * {@code mvn test -Dtest=PostContentBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class PostContentBenchmark {
+
+    private static final int USERS = 200;
+    private static final int POSTS_PER_USER = 25;
+    private static final int LISTS = 20_000;
+    private static final String[] WORDS = ("sunt aut facere repellat provident occaecati excepturi optio reprehenderit "
+            + "quia et suscipit recusandae consequuntur expedita cum molestiae quas totam nostrum rerum est autem "
+            + "rem eveniet architecto qui esse tempore vitae sequi sint nihil reprehenderit dolor beatae ea dolores "
+            + "neque fugiat blanditiis voluptate porro vel nihil molestiae ut reiciendis accusantium dolorum quam").split(" ");
+
+    @Test
+    public void listPosts() {
+        try (SessionFactory sessionFactory = sessionFactory()) {
+            long raw = seed(sessionFactory);
+            long stored = ((Number) sessionFactory.createEntityManager()
+                    .createNativeQuery("SELECT SUM(LENGTH(body)) FROM post_content").getSingleResult()).longValue();
+
+            double inline = time(sessionFactory, "select p from InlinePost p where p.user.id = :userId", false);
+            double split = time(sessionFactory, "select p from Post p where p.user.id = :userId", false);
+            double splitWithBody = time(sessionFactory, "select p from Post p where p.user.id = :userId", true);
+
+            System.out.printf("content bytes raw=%d stored=%d ratio=%.2f%n", raw, stored, (double) raw / stored);
+            System.out.printf("%-22s %10s%n", "list by user", "us/list");
+            System.out.printf("%-22s %10.1f%n", "inline TEXT", inline);
+            System.out.printf("%-22s %10.1f%n", "split, body unread", split);
+            System.out.printf("%-22s %10.1f%n", "split, body read", splitWithBody);
+        }
+    }
+
+    private static double time(SessionFactory sessionFactory, String query, boolean readBody) {
+        Random random = new Random(42);
+        long start = 0;
+        for (int i = -LISTS / 10; i < LISTS; i++) {
+            if (i == 0) {
+                start = System.nanoTime();
+            }
+            long userId = 1 + random.nextInt(USERS);
+            EntityManager em = sessionFactory.createEntityManager();
+            try {
+                List<?> posts = em.createQuery(query).setParameter("userId", userId).getResultList();
+                if (readBody) {
+                    posts.forEach(post -> ((Post) post).getContent());
+                }
+            } finally {
+                em.close();
+            }
+        }
+        return (System.nanoTime() - start) / 1e3 / LISTS;
+    }
+
+    private static long seed(SessionFactory sessionFactory) {
+        Random random = new Random(7);
+        long raw = 0;
+        EntityManager em = sessionFactory.createEntityManager();
+        em.getTransaction().begin();
+        for (int u = 1; u <= USERS; u++) {
+            User user = new User(null, "User " + u, "user" + u, "user" + u + "@mail.com",
+                    new User.Address("Street", "Suite", "City", "12345", new User.Geo(0.0, 0.0)),
+                    "555-0100", "example.com", new User.Company("Company " + u, "Phrase", "bs"));
+            em.persist(user);
+            for (int p = 1; p <= POSTS_PER_USER; p++) {
+                String content = body(random);
+                raw += content.getBytes(StandardCharsets.UTF_8).length;
+                Post post = new Post();
+                post.setTitle("Title " + p);
+                post.setContent(content);
+                post.setUser(user);
+                em.persist(post);
+                em.persist(new InlinePost(user, "Title " + p, content));
+            }
+        }
+        em.getTransaction().commit();
+        em.close();
+        return raw;
+    }
+
+    // Four lines of lorem ipsum, the shape of the bodies this API serves
+    private static String body(Random random) {
+        StringBuilder body = new StringBuilder();
+        for (int line = 0; line < 4; line++) {
+            int words = 6 + random.nextInt(6);
+            for (int w = 0; w < words; w++) {
+                body.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            body.append(line < 3 ? "\n" : "");
+        }
+        return body.toString();
+    }
+
+    private static SessionFactory sessionFactory() {
+        return new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .addAnnotatedClass(InlinePost.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:content-benchmark;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.jdbc.batch_size", "50")
+                .setProperty("javax.persistence.sharedCache.mode", "NONE")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+    }
+
+    /** The post as it was stored before the body moved out: content inline as a {@code TEXT} column. */
+    @Entity(name = "InlinePost")
+    @Table(name = "inline_post")
+    public static class InlinePost {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        private Long id;
+
+        @ManyToOne(fetch = FetchType.LAZY)
+        @JoinColumn(name = "user_id")
+        private User user;
+
+        private String title;
+
+        @Column(columnDefinition = "TEXT")
+        private String content;
+
+        public InlinePost() {}
+
+        InlinePost(User user, String title, String content) {
+            this.user = user;
+            this.title = title;
+            this.content = content;
+        }
+    }
+}
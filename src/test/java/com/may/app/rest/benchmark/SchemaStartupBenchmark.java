@@ -0,0 +1,84 @@
+package com.may.app.rest.benchmark;
+
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import com.may.app.rest.migration.V3__MoveLegacyColumns;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+
+/**
+ * Hibernate bootstrap time with ddl-auto=update versus validate against a migrated schema, and the
+ * plans of the post and user lookups with and without the migration's indexes. Run with
+ * {@code mvn test -Dtest=SchemaStartupBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SchemaStartupBenchmark {
+
+    private static final int RUNS = 20;
+    private static final List<String> LOOKUPS = List.of(
+            "SELECT id, title, content_id, user_id FROM post WHERE title = 'Title 1'",
+            "SELECT id, title, content_id, user_id FROM post WHERE user_id = 7",
+            "SELECT id FROM users WHERE username = 'user7'",
+            "SELECT id FROM users WHERE email = 'user7@mail.com'");
+
+    @Test
+    public void startupAndPlans() {
+        String url = "jdbc:h2:mem:schema-benchmark;DB_CLOSE_DELAY=-1";
+        Flyway.configure().dataSource(url, "sa", "").locations("classpath:db/migration/h2")
+                .javaMigrations(new V3__MoveLegacyColumns()).load().migrate();
+
+        System.out.printf("%-10s %10s%n", "ddl-auto", "ms/boot");
+        for (String mode : List.of("update", "validate", "none")) {
+            build(url, mode).close();
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                build(url, mode).close();
+            }
+            System.out.printf("%-10s %10.1f%n", mode, (System.nanoTime() - start) / 1e6 / RUNS);
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+        System.out.println("-- with indexes");
+        LOOKUPS.forEach(sql -> System.out.println(plan(jdbcTemplate, sql)));
+        for (String index : List.of("idx_post_title", "idx_post_user_timeline", "idx_users_username", "idx_users_email")) {
+            jdbcTemplate.execute("DROP INDEX " + index);
+        }
+        System.out.println("-- as ddl-auto=update left it");
+        LOOKUPS.forEach(sql -> System.out.println(plan(jdbcTemplate, sql)));
+    }
+
+    private static String plan(JdbcTemplate jdbcTemplate, String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class).replaceAll("\\s+", " ");
+    }
+
+    private static SessionFactory build(String url, String mode) {
+        Configuration configuration = new Configuration();
+        configuration.setPhysicalNamingStrategy(new SpringPhysicalNamingStrategy());
+        configuration.setImplicitNamingStrategy(new SpringImplicitNamingStrategy());
+        return configuration
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .addAnnotatedClass(ChangeEvent.class)
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", mode)
+                .setProperty("javax.persistence.sharedCache.mode", "NONE")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+    }
+}
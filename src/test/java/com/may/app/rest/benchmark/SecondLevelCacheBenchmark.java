@@ -0,0 +1,158 @@
+package com.may.app.rest.benchmark;
+
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Read-heavy mix (95% reads, 5% post updates) against embedded H2, with and without the
+ * second-level and query cache. Run with {@code mvn test -Dtest=SecondLevelCacheBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class SecondLevelCacheBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(SecondLevelCacheBenchmark.class);
+
+    private static final int USERS = 500;
+    private static final int POSTS_PER_USER = 10;
+    private static final int OPERATIONS = 50_000;
+
+    @Test
+    public void readHeavyMix() {
+        Result uncached = run(false);
+        Result cached = run(true);
+
+        log.info("uncached: {} ops/s, {} statements", Math.round(uncached.opsPerSecond), uncached.statements);
+        log.info("cached: {} ops/s, {} statements\n{}", Math.round(cached.opsPerSecond), cached.statements, cached.regions);
+        // Reads are 95% of the mix, so at least half the statements must have been answered from the cache
+        assertTrue(cached.statements * 2 < uncached.statements, cached.statements + " vs " + uncached.statements);
+    }
+
+    private Result run(boolean cacheEnabled) {
+        try (SessionFactory sessionFactory = sessionFactory(cacheEnabled)) {
+            seed(sessionFactory);
+            Statistics statistics = sessionFactory.getStatistics();
+            statistics.clear();
+
+            Random random = new Random(42);
+            long start = System.nanoTime();
+            for (int i = 0; i < OPERATIONS; i++) {
+                long userId = 1 + random.nextInt(USERS);
+                long postId = 1 + random.nextInt(USERS * POSTS_PER_USER);
+                int operation = random.nextInt(100);
+                EntityManager em = sessionFactory.createEntityManager();
+                try {
+                    if (operation < 40) {
+                        em.find(User.class, userId).getCompany();
+                    } else if (operation < 75) {
+                        em.find(Post.class, postId).getTitle();
+                    } else if (operation < 85) {
+                        em.createQuery("select p from Post p where p.user.id = :userId", Post.class)
+                                .setParameter("userId", userId)
+                                .setHint(QueryHints.HINT_CACHEABLE, cacheEnabled)
+                                .setHint(QueryHints.HINT_CACHE_REGION, "post-queries")
+                                .getResultList();
+                    } else if (operation < 95) {
+                        em.createQuery("select p from Post p where p.title = :title", Post.class)
+                                .setParameter("title", "Title " + postId)
+                                .setHint(QueryHints.HINT_CACHEABLE, cacheEnabled)
+                                .setHint(QueryHints.HINT_CACHE_REGION, "post-queries")
+                                .getResultList();
+                    } else {
+                        em.getTransaction().begin();
+                        em.find(Post.class, postId).setTitle("Title " + postId);
+                        em.getTransaction().commit();
+                    }
+                } finally {
+                    em.close();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return new Result(OPERATIONS / seconds, statistics.getPrepareStatementCount(),
+                    cacheEnabled ? regionSummary(statistics) : "");
+        }
+    }
+
+    private static String regionSummary(Statistics statistics) {
+        StringBuilder summary = new StringBuilder();
+        for (String region : List.of("users", "users.posts", "posts")) {
+            append(summary, region, statistics.getDomainDataRegionStatistics(region));
+        }
+        append(summary, "post-queries", statistics.getQueryRegionStatistics("post-queries"));
+        return summary.toString();
+    }
+
+    private static void append(StringBuilder summary, String region, CacheRegionStatistics stats) {
+        summary.append(String.format("region %-14s hit=%d miss=%d put=%d%n",
+                region, stats.getHitCount(), stats.getMissCount(), stats.getPutCount()));
+    }
+
+    private static void seed(SessionFactory sessionFactory) {
+        EntityManager em = sessionFactory.createEntityManager();
+        em.getTransaction().begin();
+        for (int u = 1; u <= USERS; u++) {
+            User user = new User(null, "User " + u, "user" + u, "user" + u + "@mail.com",
+                    new User.Address("Street", "Suite", "City", "12345", new User.Geo(0.0, 0.0)),
+                    "555-0100", "example.com", new User.Company("Company " + u, "Phrase", "bs"));
+            em.persist(user);
+            for (int p = 1; p <= POSTS_PER_USER; p++) {
+                Post post = new Post();
+                post.setTitle("Title " + ((u - 1) * POSTS_PER_USER + p));
+                post.setContent("Content of post " + p + " by user " + u);
+                post.setUser(user);
+                em.persist(post);
+            }
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private static SessionFactory sessionFactory(boolean cacheEnabled) {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:l2-benchmark-" + cacheEnabled + ";DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.generate_statistics", "true")
+                .setProperty("javax.persistence.sharedCache.mode", cacheEnabled ? "ENABLE_SELECTIVE" : "NONE")
+                .setProperty("hibernate.cache.use_second_level_cache", String.valueOf(cacheEnabled))
+                .setProperty("hibernate.cache.use_query_cache", String.valueOf(cacheEnabled));
+        if (cacheEnabled) {
+            configuration
+                    .setProperty("hibernate.cache.region.factory_class", "jcache")
+                    .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                    .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                    .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail");
+        }
+        return configuration.buildSessionFactory();
+    }
+
+    private static class Result {
+        final double opsPerSecond;
+        final long statements;
+        final String regions;
+
+        Result(double opsPerSecond, long statements, String regions) {
+            this.opsPerSecond = opsPerSecond;
+            this.statements = statements;
+            this.regions = regions;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.may.app.rest.bulk;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExportServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ExportService exportService;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:export-test;DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), city VARCHAR(255), "
+                + "lat DOUBLE, company_name VARCHAR(255))");
+        jdbcTemplate.update("INSERT INTO users (name, city, lat, company_name) VALUES ('Leanne', 'Gwenborough', -37.3159, 'Romaguera, \"Crona\"')");
+        jdbcTemplate.update("INSERT INTO users (name, city) VALUES ('Ervin', 'Wisokyburgh')");
+
+        exportService = new ExportService();
+        ReflectionTestUtils.setField(exportService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(exportService, "fetchSize", 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    public void testSelectedColumnsAreWrittenInOrderWithEscaping() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        exportService.exportCsv(ColumnMapping.USERS, "users", Arrays.asList("name", "geo.lat", "company.name"), "users.csv", response);
+
+        assertEquals("text/csv;charset=UTF-8", response.getContentType());
+        assertEquals("name,address.geo.lat,company.name\r\n"
+                + "Leanne,-37.3159,\"Romaguera, \"\"Crona\"\"\"\r\n"
+                + "Ervin,,\r\n", response.getContentAsString());
+    }
+
+    @Test
+    public void testUnknownColumnIsRejected() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> exportService.exportCsv(
+                ColumnMapping.USERS, "users", Arrays.asList("name", "password"), "users.csv", new MockHttpServletResponse()));
+
+        assertEquals(400, e.getStatus().value());
+    }
+}
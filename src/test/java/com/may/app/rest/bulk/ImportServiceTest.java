@@ -0,0 +1,156 @@
+package com.may.app.rest.bulk;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.CompressedTextConverter;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import com.may.app.rest.service.ChangeFeedService;
+import com.may.app.rest.service.GeoIndex;
+import com.may.app.rest.service.PostCounters;
+import com.may.app.rest.service.ResultPageCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ImportServiceTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private ImportService importService;
+    private PostCounters postCounters;
+    private GeoIndex geoIndex;
+    private org.hibernate.Cache hibernateCache;
+
+    @BeforeEach
+    public void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:import-test;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), username VARCHAR(255), "
+                + "email VARCHAR(255), street VARCHAR(255), suite VARCHAR(255), city VARCHAR(255), zipcode VARCHAR(255), "
+                + "lat DOUBLE, lng DOUBLE, phone VARCHAR(255), website VARCHAR(255), company_name VARCHAR(255), "
+                + "catch_phrase VARCHAR(255), bs VARCHAR(255), post_count BIGINT, last_post_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE post_content (id VARCHAR(36) PRIMARY KEY, body BLOB, hash VARBINARY(32))");
+        jdbcTemplate.execute("CREATE TABLE post (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), content_id VARCHAR(36), "
+                + "user_id BIGINT REFERENCES users(id))");
+        jdbcTemplate.execute("CREATE TABLE change_event (id BIGINT AUTO_INCREMENT PRIMARY KEY, entity_type VARCHAR(8), "
+                + "entity_id BIGINT, op VARCHAR(8), changed_at TIMESTAMP)");
+
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        Cache cache = mock(Cache.class);
+        hibernateCache = mock(org.hibernate.Cache.class);
+        when(entityManagerFactory.getCache()).thenReturn(cache);
+        when(cache.unwrap(org.hibernate.Cache.class)).thenReturn(hibernateCache);
+        postCounters = mock(PostCounters.class);
+        geoIndex = mock(GeoIndex.class);
+
+        importService = new ImportService();
+        ReflectionTestUtils.setField(importService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(importService, "transactionManager", new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(importService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(importService, "entityManagerFactory", entityManagerFactory);
+        ReflectionTestUtils.setField(importService, "postCounters", postCounters);
+        ReflectionTestUtils.setField(importService, "geoIndex", geoIndex);
+        ChangeFeedService changeFeed = new ChangeFeedService();
+        ReflectionTestUtils.setField(changeFeed, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(changeFeed, "maxWriteMillis", 10000L);
+        ReflectionTestUtils.setField(importService, "changeFeed", changeFeed);
+        ReflectionTestUtils.setField(importService, "responseCache", mock(SerializedEntityCache.class));
+        ReflectionTestUtils.setField(importService, "pages", mock(ResultPageCache.class));
+        ReflectionTestUtils.setField(importService, "batchSize", 2);
+        ReflectionTestUtils.setField(importService, "maxErrors", 10);
+        ReflectionTestUtils.setField(importService, "jobRetentionMinutes", 60L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    private ImportJob run(ImportJob.Type type, String contentType, String body) {
+        ImportJob job = importService.start(type);
+        importService.run(job, contentType, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        return job;
+    }
+
+    @Test
+    public void testNdjsonUsersMapNestedFieldsAndReportBadLines() {
+        String body = "{\"name\":\"Leanne\",\"address\":{\"city\":\"Gwenborough\",\"geo\":{\"lat\":\"-37.3159\",\"lng\":\"81.1496\"}},"
+                + "\"company\":{\"name\":\"Romaguera-Crona\"}}\n"
+                + "not json\n"
+                + "\n"
+                + "{\"name\":\"Ervin\",\"address\":{\"geo\":{\"lat\":\"north\"}}}\n"
+                + "{\"name\":\"Clementine\",\"email\":\"c@mail.com\"}\n"
+                + "{\"name\":\"Patricia\"}\n";
+
+        ImportJob job = run(ImportJob.Type.USERS, ImportService.NDJSON, body);
+
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getReceived());
+        assertEquals(3, job.getImported());
+        assertEquals(2, job.getFailed());
+        assertEquals(2, job.getErrors().get(0).getLine());
+        assertEquals(4, job.getErrors().get(1).getLine());
+
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+        assertEquals("Romaguera-Crona", jdbcTemplate.queryForObject("SELECT company_name FROM users WHERE name = 'Leanne'", String.class));
+        assertEquals(-37.3159, jdbcTemplate.queryForObject("SELECT lat FROM users WHERE name = 'Leanne'", Double.class));
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT post_count FROM users WHERE name = 'Patricia'", Long.class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM change_event WHERE entity_type = 'USER'", Integer.class));
+        verify(geoIndex).index(anyLong(), eq(-37.3159), eq(81.1496));
+        verify(hibernateCache, times(2)).evictQueryRegions();
+    }
+
+    @Test
+    public void testCsvPostsUpdateOwnerCounters() {
+        jdbcTemplate.update("INSERT INTO users (name) VALUES ('owner')");
+        Long ownerId = jdbcTemplate.queryForObject("SELECT id FROM users", Long.class);
+        String body = "title,content,userId\n"
+                + "First,\"Hello, world\"," + ownerId + "\n"
+                + "Second,\"Line one\nline two\"," + ownerId + "\n"
+                + "Third,Orphan,\n";
+
+        ImportJob job = run(ImportJob.Type.POSTS, "text/csv; charset=UTF-8", body);
+
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getImported());
+        byte[] stored = jdbcTemplate.queryForObject(
+                "SELECT c.body FROM post p JOIN post_content c ON c.id = p.content_id WHERE p.title = 'Second'", byte[].class);
+        assertEquals("Line one\nline two", new CompressedTextConverter().convertToEntityAttribute(stored));
+        assertArrayEquals(PostContent.hash("Hello, world"), jdbcTemplate.queryForObject(
+                "SELECT c.hash FROM post p JOIN post_content c ON c.id = p.content_id WHERE p.title = 'First'", byte[].class));
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM change_event WHERE entity_type = 'POST' AND op = 'UPSERT' "
+                + "AND entity_id IN (SELECT id FROM post)", Integer.class));
+        verify(postCounters).record(eq(ownerId), eq(2L), any());
+        verify(hibernateCache).evictCollectionData(User.class.getName() + ".posts", ownerId);
+    }
+
+    @Test
+    public void testFailedBatchIsReportedAndImportContinues() {
+        String body = "{\"title\":\"a\",\"user\":{\"id\":999}}\n"
+                + "{\"title\":\"b\",\"user\":{\"id\":999}}\n"
+                + "{\"title\":\"c\"}\n";
+
+        ImportJob job = run(ImportJob.Type.POSTS, ImportService.NDJSON, body);
+
+        assertEquals(ImportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(1, job.getImported());
+        assertEquals(2, job.getFailed());
+        assertEquals(1, job.getErrors().get(0).getLine());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM change_event WHERE entity_id IN "
+                + "(SELECT id FROM post WHERE title IN ('a', 'b'))", Integer.class));
+        verify(postCounters, never()).record(eq(999L), anyLong(), any());
+    }
+}
@@ -0,0 +1,151 @@
+package com.may.app.rest.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreTest {
+
+    public static IdempotencyStore store(long ttlMinutes, int maxKeys) {
+        return new IdempotencyStore(new ObjectMapper(), ttlMinutes, maxKeys, new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static MockHttpServletRequest post(String path, String address) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setRemoteAddr(address);
+        return request;
+    }
+
+    @Test
+    public void testRetryGetsTheFirstResponse() {
+        IdempotencyStore store = store(60, 100);
+        AtomicInteger created = new AtomicInteger();
+
+        ResponseEntity<Integer> first = store.execute(post("/posts", "10.0.0.1"), "k1", Map.of("title", "a"), created::incrementAndGet);
+        ResponseEntity<Integer> retry = store.execute(post("/posts", "10.0.0.1"), "k1", Map.of("title", "a"), created::incrementAndGet);
+
+        assertEquals(1, created.get());
+        assertEquals(1, retry.getBody());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void testKeysAreScopedToClientAndPath() {
+        IdempotencyStore store = store(60, 100);
+        AtomicInteger created = new AtomicInteger();
+
+        store.execute(post("/posts", "10.0.0.1"), "k1", "a", created::incrementAndGet);
+        store.execute(post("/posts", "10.0.0.2"), "k1", "a", created::incrementAndGet);
+        store.execute(post("/users", "10.0.0.1"), "k1", "a", created::incrementAndGet);
+        store.execute(post("/posts", "10.0.0.1"), null, "a", created::incrementAndGet);
+        store.execute(post("/posts", "10.0.0.1"), null, "a", created::incrementAndGet);
+
+        assertEquals(5, created.get());
+    }
+
+    @Test
+    public void testKeyReusedWithADifferentBodyIsRefused() {
+        IdempotencyStore store = store(60, 100);
+        store.execute(post("/posts", "10.0.0.1"), "k1", Map.of("title", "a"), () -> 1);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> store.execute(post("/posts", "10.0.0.1"), "k1", Map.of("title", "b"), () -> 2));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatus());
+        assertThrows(ResponseStatusException.class, () -> store.execute(post("/posts", "10.0.0.1"), "", "a", () -> 3));
+    }
+
+    @Test
+    public void testConcurrentDuplicatesWaitForTheFirst() throws Exception {
+        IdempotencyStore store = store(60, 100);
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+
+        CompletableFuture<ResponseEntity<Integer>> first = CompletableFuture.supplyAsync(
+                () -> store.execute(post("/posts", "10.0.0.1"), "k1", "a", () -> {
+                    running.countDown();
+                    await(finish);
+                    return created.incrementAndGet();
+                }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        CompletableFuture<ResponseEntity<Integer>> duplicate = CompletableFuture.supplyAsync(
+                () -> store.execute(post("/posts", "10.0.0.1"), "k1", "a", created::incrementAndGet));
+        Thread.sleep(100);
+        assertFalse(duplicate.isDone());
+
+        finish.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals(1, duplicate.get(5, TimeUnit.SECONDS).getBody());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void testFailureIsNotKept() {
+        IdempotencyStore store = store(60, 100);
+
+        assertThrows(IllegalStateException.class, () -> store.execute(post("/posts", "10.0.0.1"), "k1", "a", () -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertEquals(0, store.size());
+
+        assertEquals(7, store.execute(post("/posts", "10.0.0.1"), "k1", "a", () -> 7).getBody());
+    }
+
+    @Test
+    public void testFailedKeysDoNotAccumulate() {
+        IdempotencyStore store = store(60, 10);
+        store.execute(post("/posts", "10.0.0.1"), "kept", "a", () -> 1);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThrows(IllegalStateException.class, () -> store.execute(post("/posts", "10.0.0.1"), "k" + System.nanoTime(), "a", () -> {
+                throw new IllegalStateException("database down");
+            }));
+        }
+
+        assertTrue(store.queued() <= 21, store.queued() + " queued");
+        assertEquals(1, store.size());
+        assertEquals("true", store.execute(post("/posts", "10.0.0.1"), "kept", "a", () -> 2)
+                .getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+    }
+
+    @Test
+    public void testOldestKeysAreDroppedAndExpiredOnesRunAgain() {
+        IdempotencyStore bounded = store(60, 2);
+        AtomicInteger created = new AtomicInteger();
+        for (String key : List.of("k1", "k2", "k3")) {
+            bounded.execute(post("/posts", "10.0.0.1"), key, "a", created::incrementAndGet);
+        }
+        assertEquals(2, bounded.size());
+        assertEquals(4, bounded.execute(post("/posts", "10.0.0.1"), "k1", "a", created::incrementAndGet).getBody());
+        assertEquals(3, bounded.execute(post("/posts", "10.0.0.1"), "k3", "a", created::incrementAndGet).getBody());
+
+        IdempotencyStore expiring = store(0, 100);
+        created.set(0);
+        expiring.execute(post("/posts", "10.0.0.1"), "k1", "a", created::incrementAndGet);
+        expiring.execute(post("/posts", "10.0.0.1"), "k1", "a", created::incrementAndGet);
+        assertEquals(2, created.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
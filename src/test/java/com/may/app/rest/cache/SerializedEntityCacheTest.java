@@ -0,0 +1,109 @@
+package com.may.app.rest.cache;
+
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializedEntityCacheTest {
+
+    private static String read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] json(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        SerializedEntityCache cache = new SerializedEntityCache(1024, 256, 300);
+        long version = cache.version(User.class, 1L);
+
+        cache.put(User.class, 1L, version, json("{\"id\":1}"));
+
+        assertEquals("{\"id\":1}", read(cache.get(User.class, 1L)));
+        assertEquals("{\"id\":1}", read(cache.get(User.class, 1L)));
+        assertNull(cache.get(Post.class, 1L));
+    }
+
+    @Test
+    public void testEvictRemovesEntry() {
+        SerializedEntityCache cache = new SerializedEntityCache(1024, 256, 300);
+        cache.put(User.class, 1L, cache.version(User.class, 1L), json("{\"id\":1}"));
+
+        cache.evict(User.class, 1L);
+
+        assertNull(cache.get(User.class, 1L));
+        assertEquals(0, cache.usedBytes());
+    }
+
+    @Test
+    public void testStaleVersionIsNotStored() {
+        SerializedEntityCache cache = new SerializedEntityCache(1024, 256, 300);
+        long versionBeforeLoad = cache.version(User.class, 1L);
+
+        cache.evict(User.class, 1L);
+        cache.put(User.class, 1L, versionBeforeLoad, json("{\"id\":1,\"name\":\"old\"}"));
+
+        assertNull(cache.get(User.class, 1L));
+    }
+
+    @Test
+    public void testEvictInATransactionRejectsWhatWasReadBeforeItsCommit() {
+        SerializedEntityCache cache = new SerializedEntityCache(1024, 256, 300);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.evict(User.class, 1L);
+            // A concurrent read of the row the transaction has not yet committed
+            cache.put(User.class, 1L, cache.version(User.class, 1L), json("{\"name\":\"old\"}"));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertNull(cache.get(User.class, 1L));
+    }
+
+    @Test
+    public void testSizeBoundEvictsOldestEntries() {
+        SerializedEntityCache cache = new SerializedEntityCache(20, 20, 300);
+        cache.put(Post.class, 1L, cache.version(Post.class, 1L), json("{\"id\":1}"));
+        cache.put(Post.class, 2L, cache.version(Post.class, 2L), json("{\"id\":2}"));
+        cache.put(Post.class, 3L, cache.version(Post.class, 3L), json("{\"id\":3}"));
+
+        assertNull(cache.get(Post.class, 1L));
+        assertNotNull(cache.get(Post.class, 3L));
+        assertTrue(cache.usedBytes() <= 20);
+    }
+
+    @Test
+    public void testEntryExpiresAfterItsTtl() {
+        SerializedEntityCache cache = new SerializedEntityCache(1024, 256, 60);
+        cache.put(User.class, 1L, cache.version(User.class, 1L), json("{\"id\":1}"));
+
+        assertNotNull(cache.get(User.class, 1L, System.nanoTime() + TimeUnit.SECONDS.toNanos(30)));
+        assertNull(cache.get(User.class, 1L, System.nanoTime() + TimeUnit.SECONDS.toNanos(61)));
+        assertEquals(0, cache.usedBytes());
+    }
+
+    @Test
+    public void testOversizedEntryIsSkipped() {
+        SerializedEntityCache cache = new SerializedEntityCache(1024, 4, 300);
+
+        cache.put(User.class, 1L, cache.version(User.class, 1L), json("{\"id\":1}"));
+
+        assertNull(cache.get(User.class, 1L));
+        assertEquals(0, cache.size());
+    }
+}
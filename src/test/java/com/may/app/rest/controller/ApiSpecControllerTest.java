@@ -0,0 +1,63 @@
+package com.may.app.rest.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class ApiSpecControllerTest {
+
+    private MockMvc mockMvc;
+    private byte[] spec;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        mockMvc = MockMvcBuilders.standaloneSetup(new ApiSpecController(3600)).build();
+        spec = StreamUtils.copyToByteArray(new ClassPathResource("swagger.yaml").getInputStream());
+    }
+
+    @Test
+    public void testServesTheSpecWithCacheHeaders() throws Exception {
+        mockMvc.perform(get("/swagger.yaml"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(ApiSpecController.YAML))
+                .andExpect(header().string("Cache-Control", "max-age=3600, public"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().bytes(spec));
+    }
+
+    @Test
+    public void testServesThePrecompressedSpecWhenGzipIsAccepted() throws Exception {
+        MvcResult result = mockMvc.perform(get("/swagger.yaml").header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn();
+
+        byte[] body = result.getResponse().getContentAsByteArray();
+        assertTrue(body.length < spec.length / 4);
+        assertArrayEquals(spec, StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(body))));
+    }
+
+    @Test
+    public void testMatchingETagIsNotModified() throws Exception {
+        String etag = mockMvc.perform(get("/swagger.yaml"))
+                .andReturn().getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/swagger.yaml").header("If-None-Match", etag).header("Accept-Encoding", "gzip"))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().bytes(new byte[0]));
+    }
+}
@@ -0,0 +1,137 @@
+package com.may.app.rest.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Keeps the checked-in swagger.yaml in line with the controllers, since with runtime generation
+ * off it is the only API description served: every mapping must be documented with its path
+ * and query parameters, and the spec must not describe routes that no longer exist.
+ */
+public class ApiSpecTest {
+
+    private static final String PACKAGE = "com/may/app/rest/controller";
+    private static final Pattern PATH_VARIABLE = Pattern.compile("\\{(\\w+)}");
+
+    @Test
+    public void testSpecDescribesEveryMapping() throws Exception {
+        Map<String, Set<String>> mapped = mappedOperations();
+        Map<String, Map<String, Set<String>>> documented = documentedOperations();
+
+        assertEquals(new TreeSet<>(mapped.keySet()), new TreeSet<>(documented.keySet()));
+        mapped.forEach((operation, queryParams) -> {
+            Map<String, Set<String>> parameters = documented.get(operation);
+            assertTrue(parameters.get("query").containsAll(queryParams),
+                    operation + " documents " + parameters.get("query") + " but takes " + queryParams);
+            Matcher variables = PATH_VARIABLE.matcher(operation);
+            while (variables.find()) {
+                assertTrue(parameters.get("path").contains(variables.group(1)), operation + " lacks path parameter " + variables.group(1));
+            }
+        });
+    }
+
+    // "get /users/{id}" -> the query parameters of all handlers mapped to it
+    private static Map<String, Set<String>> mappedOperations() throws Exception {
+        Map<String, Set<String>> operations = new TreeMap<>();
+        DefaultParameterNameDiscoverer names = new DefaultParameterNameDiscoverer();
+        for (Class<?> controller : controllers()) {
+            RequestMapping root = AnnotatedElementUtils.findMergedAnnotation(controller, RequestMapping.class);
+            String prefix = root == null || root.path().length == 0 ? "" : root.path()[0];
+            for (Method method : controller.getDeclaredMethods()) {
+                RequestMapping mapping = AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+                if (mapping == null) {
+                    continue;
+                }
+                Set<String> queryParams = new TreeSet<>();
+                for (String condition : mapping.params()) {
+                    if (!condition.startsWith("!")) {
+                        queryParams.add(condition.split("!?=")[0]);
+                    }
+                }
+                String[] parameterNames = names.getParameterNames(method);
+                Parameter[] parameters = method.getParameters();
+                for (int i = 0; i < parameters.length; i++) {
+                    RequestParam param = parameters[i].getAnnotation(RequestParam.class);
+                    if (param != null && !Map.class.isAssignableFrom(parameters[i].getType())) {
+                        queryParams.add(param.name().isEmpty() ? parameterNames[i] : param.name());
+                    }
+                }
+                List<String> paths = mapping.path().length == 0 ? List.of("") : List.of(mapping.path());
+                for (RequestMethod requestMethod : mapping.method()) {
+                    for (String path : paths) {
+                        operations.computeIfAbsent(requestMethod.name().toLowerCase() + " " + prefix + path, key -> new TreeSet<>())
+                                .addAll(queryParams);
+                    }
+                }
+            }
+        }
+        assertFalse(operations.isEmpty());
+        return operations;
+    }
+
+    // Component scanning reads class files with ASM, which cannot parse this build's, so list the package
+    private static List<Class<?>> controllers() throws Exception {
+        List<Class<?>> controllers = new ArrayList<>();
+        Enumeration<URL> directories = ApiSpecTest.class.getClassLoader().getResources(PACKAGE);
+        for (URL directory : Collections.list(directories)) {
+            File[] files = new File(directory.toURI()).listFiles((dir, name) -> name.endsWith(".class") && !name.contains("$"));
+            for (File file : files) {
+                Class<?> type = Class.forName(PACKAGE.replace('/', '.') + "." + file.getName().replace(".class", ""));
+                if (type.isAnnotationPresent(RestController.class)) {
+                    controllers.add(type);
+                }
+            }
+        }
+        return controllers;
+    }
+
+    // "get /users/{id}" -> {"query": names, "path": names, "header": names}
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Set<String>>> documentedOperations() throws Exception {
+        Map<String, Object> spec;
+        try (InputStream in = new ClassPathResource("swagger.yaml").getInputStream()) {
+            spec = new Yaml().load(in);
+        }
+        Map<String, Object> sharedParameters = (Map<String, Object>) ((Map<String, Object>) spec.get("components")).get("parameters");
+        Map<String, Map<String, Set<String>>> operations = new TreeMap<>();
+        ((Map<String, Map<String, Object>>) spec.get("paths")).forEach((path, methods) -> methods.forEach((method, operation) -> {
+            Map<String, Set<String>> parameters = Map.of("query", new TreeSet<>(), "path", new TreeSet<>(), "header", new TreeSet<>());
+            List<Map<String, Object>> declared = (List<Map<String, Object>>) ((Map<String, Object>) operation).get("parameters");
+            for (Map<String, Object> parameter : declared == null ? List.<Map<String, Object>>of() : declared) {
+                Object ref = parameter.get("$ref");
+                if (ref != null) {
+                    parameter = (Map<String, Object>) sharedParameters.get(ref.toString().substring(ref.toString().lastIndexOf('/') + 1));
+                    assertNotNull(parameter, "Unresolved " + ref);
+                }
+                parameters.get(parameter.get("in")).add((String) parameter.get("name"));
+            }
+            operations.put(method + " " + path, parameters);
+        }));
+        return operations;
+    }
+}
@@ -1,12 +1,15 @@
 package com.may.app.rest.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.cache.IdempotencyStore;
+import com.may.app.rest.cache.IdempotencyStoreTest;
 import com.may.app.rest.entity.Post;
 import com.may.app.rest.service.PostService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
@@ -33,6 +36,9 @@ public class PostControllerTest {
     @Mock
     private PostService postService;
 
+    @Spy
+    private IdempotencyStore idempotencyStore = IdempotencyStoreTest.store(60, 100);
+
     @InjectMocks
     private PostController postController;
 
@@ -106,6 +112,31 @@ public class PostControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$.content").value("New Content"));
     }
 
+    @Test
+    public void testRetriedCreatePostWithIdempotencyKeyIsReplayed() throws Exception {
+        Post savedPost = new Post();
+        savedPost.setId(1L);
+        savedPost.setTitle("New Post");
+        when(postService.createPost(any(Post.class))).thenReturn(savedPost);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(postController).build();
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(MockMvcRequestBuilders.post("/posts")
+                            .header(IdempotencyStore.HEADER, "3f1c9a")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"title\":\"New Post\"}"))
+                    .andExpect(status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.id").value(1L));
+        }
+        mockMvc.perform(MockMvcRequestBuilders.post("/posts")
+                        .header(IdempotencyStore.HEADER, "3f1c9a")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"title\":\"Other Post\"}"))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(postService, times(1)).createPost(any(Post.class));
+    }
+
     @Test
     public void testUpdatePost() throws Exception {
         Long postId = 1L;
@@ -211,4 +242,19 @@ public class PostControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(2L))
                 .andExpect(MockMvcResultMatchers.jsonPath("$[1].title").value("Title 2"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetPostsByUserTimeline() throws Exception {
+        Post post = new Post();
+        post.setId(7L);
+        post.setTitle("Title 7");
+        when(postService.getTimeline(1L, 8L, PostService.TIMELINE_DEFAULT_LIMIT)).thenReturn(List.of(post));
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(postController).build();
+        mockMvc.perform(MockMvcRequestBuilders.get("/posts/user/{userId}", 1L).param("before", "8"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(7L));
+        verify(postService, times(0)).getPostsByUserId(anyLong());
+    }
+}
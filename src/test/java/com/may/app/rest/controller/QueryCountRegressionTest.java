@@ -0,0 +1,395 @@
+package com.may.app.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.bulk.ExportService;
+import com.may.app.rest.bulk.ImportService;
+import com.may.app.rest.cache.CachedResponseAdvice;
+import com.may.app.rest.cache.CachedResponseInterceptor;
+import com.may.app.rest.cache.IdempotencyStore;
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.config.JacksonConfig;
+import com.may.app.rest.deadline.DeadlineDataSource;
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import com.may.app.rest.metrics.QueryCountInterceptor;
+import com.may.app.rest.metrics.StatementCounter;
+import com.may.app.rest.metrics.TimedDataSource;
+import com.may.app.rest.repository.ChangeEventRepository;
+import com.may.app.rest.repository.PostRepository;
+import com.may.app.rest.repository.UserRepository;
+import com.may.app.rest.service.ChangeFeedService;
+import com.may.app.rest.service.FieldProjection;
+import com.may.app.rest.service.GeoIndex;
+import com.may.app.rest.service.MultiGet;
+import com.may.app.rest.service.PostCounters;
+import com.may.app.rest.service.PostService;
+import com.may.app.rest.service.ResultPageCache;
+import com.may.app.rest.service.UserRanking;
+import com.may.app.rest.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactoryBean;
+import org.springframework.data.repository.Repository;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.util.NestedServletException;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * The {@link UserControllerTest} and {@link PostControllerTest} scenarios against the real services on
+ * H2, each held to the statement count it has today with cold caches. Lazy associations load in batches
+ * of 50, so reads take one more statement per 50 rows at most; strict mode fails any select repeated
+ * {@value #REPEAT_THRESHOLD} times, so lazy {@code Post.user} or {@code User.posts} access turning into
+ * one select per row fails here first.
+ */
+public class QueryCountRegressionTest {
+
+    private static final int USERS = 20;
+    private static final int POSTS_PER_USER = 3;
+    private static final int REPEAT_THRESHOLD = 3;
+
+    private static AnnotationConfigApplicationContext context;
+    private static final List<Long> userIds = new ArrayList<>();
+    private static final List<Long> postIds = new ArrayList<>();
+
+    private MockMvc mockMvc;
+
+    @BeforeAll
+    public static void start() {
+        context = new AnnotationConfigApplicationContext(Wiring.class);
+        try (Session session = context.getBean(SessionFactory.class).openSession()) {
+            session.beginTransaction();
+            for (int i = 1; i <= USERS; i++) {
+                User user = new User();
+                user.setName("User " + i);
+                user.setUsername("user" + i);
+                session.persist(user);
+                userIds.add(user.getId());
+                for (int j = 1; j <= POSTS_PER_USER; j++) {
+                    Post post = new Post();
+                    post.setTitle("Title " + i + "." + j);
+                    post.setContent("Content " + i + "." + j);
+                    post.setUser(user);
+                    session.persist(post);
+                    postIds.add(post.getId());
+                }
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterAll
+    public static void stop() {
+        context.close();
+    }
+
+    @BeforeEach
+    public void setup() {
+        context.getBean(SessionFactory.class).getCache().evictAllRegions();
+        SerializedEntityCache responseCache = context.getBean(SerializedEntityCache.class);
+        userIds.forEach(id -> responseCache.evict(User.class, id));
+        postIds.forEach(id -> responseCache.evict(Post.class, id));
+        context.getBean(ResultPageCache.class).clear();
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(context.getBean(UserController.class), context.getBean(PostController.class))
+                .setControllerAdvice(context.getBean(CachedResponseAdvice.class))
+                .addInterceptors(context.getBean(QueryCountInterceptor.class), context.getBean(CachedResponseInterceptor.class))
+                .setMessageConverters(new MappingJackson2HttpMessageConverter(context.getBean(ObjectMapper.class)))
+                .build();
+    }
+
+    @Test
+    public void testGetAllUsers() throws Exception {
+        // Users, their posts in one batch, and the posts' content in batches of 50
+        assertStatements(4, get("/users"))
+                .andExpect(jsonPath("$.length()").value(USERS))
+                .andExpect(jsonPath("$[0].posts.length()").value(POSTS_PER_USER))
+                .andExpect(jsonPath("$[0].posts[0].content").exists());
+    }
+
+    @Test
+    public void testGetUserById() throws Exception {
+        assertStatements(3, get("/users/{id}", userIds.get(0)))
+                .andExpect(jsonPath("$.name").value("User 1"))
+                .andExpect(jsonPath("$.posts.length()").value(POSTS_PER_USER));
+    }
+
+    @Test
+    public void testGetUserByIdUserNotFound() {
+        Exception failure = assertThrows(NestedServletException.class, () -> assertStatements(1, get("/users/{id}", Long.MAX_VALUE)));
+        assertEquals("User not found with id: " + Long.MAX_VALUE, failure.getCause().getMessage());
+    }
+
+    @Test
+    public void testCreateUser() throws Exception {
+        assertStatements(2, post("/users").contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"New\"}"))
+                .andExpect(jsonPath("$.name").value("New"));
+    }
+
+    @Test
+    public void testUpdateUser() throws Exception {
+        // One of them selects the user's post ids, whose cached JSON embeds the user
+        assertStatements(4, put("/users/{id}", userIds.get(1)).contentType(MediaType.APPLICATION_JSON).content("{\"name\":\"Updated\"}"))
+                .andExpect(jsonPath("$.name").value("Updated"));
+    }
+
+    @Test
+    public void testPatchUser() throws Exception {
+        assertStatements(6, patch("/users/{id}", userIds.get(2)).contentType(MediaType.APPLICATION_JSON).content("{\"email\":\"patched@example.com\"}"))
+                .andExpect(jsonPath("$.email").value("patched@example.com"));
+    }
+
+    @Test
+    public void testDeleteUser() throws Exception {
+        // Each cascaded post is a delete and a change event: linear in the user's posts, but no repeated selects
+        assertStatements(5 + 3 * POSTS_PER_USER, delete("/users/{id}", userIds.get(USERS - 1)));
+    }
+
+    @Test
+    public void testFilterUsers() throws Exception {
+        assertStatements(3, get("/users/filter").param("name", "User 3"))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    public void testGetUserPosts() throws Exception {
+        assertStatements(3, get("/users/{id}/posts", userIds.get(3)))
+                .andExpect(jsonPath("$.length()").value(POSTS_PER_USER));
+    }
+
+    @Test
+    public void testGetAllPosts() throws Exception {
+        assertStatements(4, get("/posts"))
+                .andExpect(jsonPath("$.length()").value(USERS * POSTS_PER_USER))
+                .andExpect(jsonPath("$[0].user.name").exists())
+                .andExpect(jsonPath("$[0].content").exists());
+    }
+
+    @Test
+    public void testGetPostById() throws Exception {
+        assertStatements(3, get("/posts/{id}", postIds.get(0)))
+                .andExpect(jsonPath("$.user.name").value("User 1"))
+                .andExpect(jsonPath("$.content").value("Content 1.1"));
+    }
+
+    @Test
+    public void testCreatePost() throws Exception {
+        String body = "{\"title\":\"New\",\"content\":\"New content\",\"user\":{\"id\":" + userIds.get(4) + "}}";
+        assertStatements(4, post("/posts").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(jsonPath("$.title").value("New"));
+    }
+
+    @Test
+    public void testUpdatePost() throws Exception {
+        // No user in the body, so the post leaves its owner: that user's counter update and change event are the last two
+        assertStatements(8, put("/posts/{id}", postIds.get(5)).contentType(MediaType.APPLICATION_JSON).content("{\"title\":\"Updated\",\"content\":\"Updated content\"}"))
+                .andExpect(jsonPath("$.title").value("Updated"));
+    }
+
+    @Test
+    public void testPatchPost() throws Exception {
+        assertStatements(5, patch("/posts/{id}", postIds.get(6)).contentType(MediaType.APPLICATION_JSON).content("{\"title\":\"Patched\"}"))
+                .andExpect(jsonPath("$.title").value("Patched"));
+    }
+
+    @Test
+    public void testDeletePost() throws Exception {
+        assertStatements(6, delete("/posts/{id}", postIds.get(7)));
+    }
+
+    @Test
+    public void testFilterPosts() throws Exception {
+        assertStatements(3, get("/posts/filter").param("title", "Title 5.1"))
+                .andExpect(jsonPath("$.length()").value(1));
+    }
+
+    @Test
+    public void testGetPostsByUser() throws Exception {
+        assertStatements(3, get("/posts/user/{userId}", userIds.get(8)))
+                .andExpect(jsonPath("$.length()").value(POSTS_PER_USER));
+    }
+
+    @Test
+    public void testGetPostsByUserTimeline() throws Exception {
+        assertStatements(1, get("/posts/user/{userId}", userIds.get(9)).param("fields", "id,title").param("limit", "2"))
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    public void testStrictModeFailsOnLazyAuthorsLoadedOneByOne() {
+        StatementCounter counter = context.getBean(StatementCounter.class);
+        TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        StatementCounter.Counts counts = counter.begin();
+        try {
+            IllegalStateException failure = assertThrows(IllegalStateException.class, () -> transaction.executeWithoutResult(status -> {
+                EntityManager entityManager = context.getBean(EntityManager.class);
+                for (int i = 0; i < REPEAT_THRESHOLD; i++) {
+                    entityManager.find(Post.class, postIds.get(i * POSTS_PER_USER)).getUser().getName();
+                }
+            }));
+            assertTrue(failure.getMessage().startsWith("N+1 select"), failure.getMessage());
+        } finally {
+            counter.end(counts);
+        }
+    }
+
+    // Performs the request, failing it on an N+1 select or more than maxStatements statements
+    private ResultActions assertStatements(int maxStatements, MockHttpServletRequestBuilder request) throws Exception {
+        List<MockHttpServletRequest> sent = new ArrayList<>();
+        try {
+            return mockMvc.perform(request.with(built -> {
+                sent.add(built);
+                return built;
+            }));
+        } catch (NestedServletException e) {
+            if (e.getCause() instanceof IllegalStateException && e.getCause().getMessage().startsWith("N+1")) {
+                throw new AssertionError(e.getCause().getMessage(), e.getCause());
+            }
+            throw e;
+        } finally {
+            // Counted even when the handler threw
+            Integer statements = (Integer) sent.get(0).getAttribute(QueryCountInterceptor.COUNT_ATTRIBUTE);
+            assertNotNull(statements);
+            assertTrue(statements <= maxStatements, statements + " statements, budget " + maxStatements);
+        }
+    }
+
+    @org.springframework.context.annotation.Configuration
+    @EnableTransactionManagement
+    @Import({UserController.class, PostController.class, UserService.class, PostService.class, ChangeFeedService.class,
+            FieldProjection.class, GeoIndex.class, MultiGet.class, PostCounters.class, UserRanking.class,
+            SerializedEntityCache.class, CachedResponseInterceptor.class, CachedResponseAdvice.class, QueryCountInterceptor.class,
+            IdempotencyStore.class, ResultPageCache.class})
+    static class Wiring {
+
+        // Wrapped as ConnectionHoldMetrics and DeadlineConfig wrap the application's data source
+        @Bean
+        public DataSource dataSource() {
+            DataSource h2 = new DriverManagerDataSource("jdbc:h2:mem:query-count-test;DB_CLOSE_DELAY=-1");
+            return new TimedDataSource(new DeadlineDataSource(h2), SimpleMeterRegistry::new, true);
+        }
+
+        @Bean
+        public StatementCounter statementCounter() {
+            return new StatementCounter(REPEAT_THRESHOLD, true);
+        }
+
+        @Bean(destroyMethod = "close")
+        public SessionFactory sessionFactory(DataSource dataSource, StatementCounter statementCounter) {
+            Configuration configuration = new Configuration()
+                    .addAnnotatedClass(User.class)
+                    .addAnnotatedClass(Post.class)
+                    .addAnnotatedClass(PostContent.class)
+                    .addAnnotatedClass(ChangeEvent.class)
+                    .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                    .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                    .setProperty("hibernate.batch_fetch_style", "padded")
+                    // As HibernateJpaVendorAdapter sets it: the connection prepared for a transaction is the one reset after it
+                    .setProperty("hibernate.connection.handling_mode", "DELAYED_ACQUISITION_AND_HOLD")
+                    .setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE")
+                    .setProperty("hibernate.cache.use_second_level_cache", "true")
+                    .setProperty("hibernate.cache.use_query_cache", "true")
+                    .setProperty("hibernate.cache.region.factory_class", "jcache")
+                    .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                    .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                    .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail");
+            // Spring Boot's naming, as PostCounters writes post_count in plain SQL
+            configuration.setPhysicalNamingStrategy(new SpringPhysicalNamingStrategy());
+            configuration.setImplicitNamingStrategy(new SpringImplicitNamingStrategy());
+            configuration.getProperties().put(AvailableSettings.DATASOURCE, dataSource);
+            configuration.getProperties().put(AvailableSettings.STATEMENT_INSPECTOR, statementCounter);
+            return configuration.buildSessionFactory();
+        }
+
+        @Bean
+        public EntityManager entityManager(SessionFactory sessionFactory) {
+            return SharedEntityManagerCreator.createSharedEntityManager(sessionFactory);
+        }
+
+        @Bean
+        public JpaTransactionManager transactionManager(SessionFactory sessionFactory, DataSource dataSource) {
+            JpaTransactionManager transactionManager = new JpaTransactionManager(sessionFactory);
+            transactionManager.setDataSource(dataSource);
+            transactionManager.setJpaDialect(new HibernateJpaDialect());
+            return transactionManager;
+        }
+
+        @Bean
+        public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper().registerModule(new JacksonConfig().hibernate5Module());
+        }
+
+        // Factory beans rather than @EnableJpaRepositories, whose scan cannot read these class files
+        @Bean
+        public JpaRepositoryFactoryBean<UserRepository, User, Long> userRepository(EntityManager entityManager) {
+            return repository(UserRepository.class, entityManager);
+        }
+
+        @Bean
+        public JpaRepositoryFactoryBean<PostRepository, Post, Long> postRepository(EntityManager entityManager) {
+            return repository(PostRepository.class, entityManager);
+        }
+
+        @Bean
+        public JpaRepositoryFactoryBean<ChangeEventRepository, ChangeEvent, Long> changeEventRepository(EntityManager entityManager) {
+            return repository(ChangeEventRepository.class, entityManager);
+        }
+
+        private static <R extends Repository<T, Long>, T> JpaRepositoryFactoryBean<R, T, Long> repository(Class<R> type, EntityManager entityManager) {
+            JpaRepositoryFactoryBean<R, T, Long> factory = new JpaRepositoryFactoryBean<>(type);
+            factory.setEntityManager(entityManager);
+            return factory;
+        }
+
+        @Bean
+        public ImportService importService() {
+            return mock(ImportService.class);
+        }
+
+        @Bean
+        public ExportService exportService() {
+            return mock(ExportService.class);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.may.app.rest.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.cache.IdempotencyStore;
+import com.may.app.rest.cache.IdempotencyStoreTest;
 import com.may.app.rest.entity.Post;
 import com.may.app.rest.entity.User;
 import com.may.app.rest.service.PostService;
@@ -10,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
@@ -35,6 +38,9 @@ public class UserControllerTest {
     @Mock
     private PostService postService;
 
+    @Spy
+    private IdempotencyStore idempotencyStore = IdempotencyStoreTest.store(60, 100);
+
     @InjectMocks
     private UserController userController;
 
@@ -0,0 +1,81 @@
+package com.may.app.rest.deadline;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class DeadlineInterceptorTest {
+
+    private final DeadlineInterceptor interceptor = new DeadlineInterceptor(null, 10000,
+            "GET /users/{id}=2000, GET /users/filter=30000,GET /users/export.csv=0");
+
+    private static MockHttpServletRequest request(String method, String pattern, String timeout) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, pattern);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, pattern);
+        if (timeout != null) {
+            request.addHeader(DeadlineInterceptor.TIMEOUT_HEADER, timeout);
+        }
+        return request;
+    }
+
+    @Test
+    public void testRouteTimeouts() {
+        assertEquals(2000, interceptor.timeoutMillis(request("GET", "/users/{id}", null)));
+        assertEquals(30000, interceptor.timeoutMillis(request("GET", "/users/filter", null)));
+        assertEquals(10000, interceptor.timeoutMillis(request("PUT", "/users/{id}", null)));
+        assertEquals(10000, interceptor.timeoutMillis(request("GET", "/posts", null)));
+        assertEquals(0, interceptor.timeoutMillis(request("GET", "/users/export.csv", null)));
+    }
+
+    @Test
+    public void testHeaderOnlyShortensTheTimeout() {
+        assertEquals(500, interceptor.timeoutMillis(request("GET", "/users/filter", "500")));
+        assertEquals(2000, interceptor.timeoutMillis(request("GET", "/users/{id}", "5000")));
+        assertEquals(60000, interceptor.timeoutMillis(request("GET", "/users/export.csv", "60000")));
+    }
+
+    @Test
+    public void testRequestsRunUnderTheirDeadline() throws Exception {
+        DeadlineController controller = new DeadlineController();
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .addInterceptors(interceptor)
+                .setControllerAdvice(new DeadlineExceededHandler())
+                .build();
+
+        mockMvc.perform(get("/deadlines/1").header(DeadlineInterceptor.TIMEOUT_HEADER, "750")).andExpect(status().isOk());
+        assertTrue(controller.remainingMillis.get() > 500 && controller.remainingMillis.get() <= 750, controller.remainingMillis + "ms");
+        assertNull(RequestDeadline.current());
+
+        mockMvc.perform(get("/deadlines/1").header(DeadlineInterceptor.TIMEOUT_HEADER, "soon")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/deadlines/0")).andExpect(status().isGatewayTimeout());
+        assertNull(RequestDeadline.current());
+    }
+
+    @RestController
+    static class DeadlineController {
+
+        final AtomicLong remainingMillis = new AtomicLong();
+
+        @GetMapping("/deadlines/{id}")
+        public String deadline(@PathVariable long id) {
+            if (id == 0) {
+                throw new QueryTimeoutException("Request deadline passed, statement not run");
+            }
+            remainingMillis.set(TimeUnit.NANOSECONDS.toMillis(RequestDeadline.current().remainingNanos()));
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.may.app.rest.deadline;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RequestDeadlineTest {
+
+    // Long enough that only a cancel ends it
+    private static final String ENDLESS = "SELECT SUM(X) FROM SYSTEM_RANGE(1, 100000000000)";
+
+    private SimpleMeterRegistry registry;
+    private StatementWatchdog watchdog;
+    private DataSource dataSource;
+
+    @BeforeEach
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("meterRegistry", registry);
+        watchdog = new StatementWatchdog(20, beans.getBeanProvider(MeterRegistry.class));
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:deadline");
+        dataSource = new DeadlineDataSource(h2);
+    }
+
+    @AfterEach
+    public void close() {
+        RequestDeadline current = RequestDeadline.current();
+        if (current != null) {
+            current.end();
+        }
+        watchdog.close();
+    }
+
+    @Test
+    public void testStatementsGetTheTimeLeftAsTheirQueryTimeout() throws Exception {
+        Statement statement = mock(Statement.class);
+        Connection connection = mock(Connection.class);
+        DataSource target = mock(DataSource.class);
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        Statement bounded = new DeadlineDataSource(target).getConnection().createStatement();
+
+        bounded.execute("SELECT 1");
+        verify(statement, never()).setQueryTimeout(anyInt());
+
+        RequestDeadline.start(TimeUnit.MILLISECONDS.toNanos(1500), null, watchdog);
+        bounded.execute("SELECT 1");
+        verify(statement).setQueryTimeout(2);
+    }
+
+    @Test
+    public void testStatementPastTheDeadlineIsCancelled() throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            RequestDeadline deadline = RequestDeadline.start(TimeUnit.MILLISECONDS.toNanos(300), null, watchdog);
+            long start = System.nanoTime();
+            SQLTimeoutException e = assertThrows(SQLTimeoutException.class, () -> statement.executeQuery(ENDLESS));
+            assertTrue(e.getMessage().contains("cancelled: request deadline"), e.getMessage());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+            assertTrue(deadline.remainingNanos() <= 0);
+        }
+        assertEquals(1, cancelled("deadline"));
+    }
+
+    @Test
+    public void testDisconnectCancelsTheStatementAndRefusesTheNext() throws Exception {
+        AtomicBoolean gone = new AtomicBoolean();
+        RequestDeadline.start(TimeUnit.SECONDS.toNanos(30), gone::get, watchdog);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            try (ResultSet result = statement.executeQuery("SELECT 1")) {
+                assertTrue(result.next());
+            }
+            new Thread(() -> {
+                sleep(200);
+                gone.set(true);
+            }).start();
+            SQLTimeoutException e = assertThrows(SQLTimeoutException.class, () -> statement.executeQuery(ENDLESS));
+            assertTrue(e.getMessage().contains("disconnect"), e.getMessage());
+            assertThrows(SQLTimeoutException.class, () -> statement.executeQuery("SELECT 1"));
+        }
+        assertEquals(1, cancelled("disconnect"));
+    }
+
+    @Test
+    public void testInterruptedRequestIsCancelled() throws Exception {
+        Thread request = Thread.currentThread();
+        RequestDeadline.start(0, null, watchdog);
+        new Thread(() -> {
+            sleep(200);
+            request.interrupt();
+        }).start();
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            SQLTimeoutException e = assertThrows(SQLTimeoutException.class, () -> statement.executeQuery(ENDLESS));
+            assertTrue(e.getMessage().contains("abandoned"), e.getMessage());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    // Counted by the watchdog just after the cancel it sent has woken the request thread
+    private double cancelled(String reason) {
+        for (int i = 0; i < 50 && registry.find(StatementWatchdog.CANCELLED).tag("reason", reason).counter() == null; i++) {
+            sleep(20);
+        }
+        return registry.get(StatementWatchdog.CANCELLED).tag("reason", reason).counter().count();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.may.app.rest.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedTextConverterTest {
+
+    private final CompressedTextConverter converter = new CompressedTextConverter();
+
+    @Test
+    public void testRoundTripsTextThroughTheDictionary() {
+        String body = "quia et suscipit\nsuscipit recusandae consequuntur expedita et cum\n"
+                + "reprehenderit molestiae ut ut quas totam\nnostrum rerum est autem sunt rem eveniet architecto";
+
+        byte[] stored = converter.convertToDatabaseColumn(body);
+
+        assertEquals(CompressedTextConverter.DEFLATE_DICTIONARY_V1, stored[0]);
+        assertTrue(stored.length < body.getBytes(StandardCharsets.UTF_8).length / 2);
+        assertEquals(body, converter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    public void testIncompressibleTextIsStoredRaw() {
+        String body = "Zq7";
+
+        byte[] stored = converter.convertToDatabaseColumn(body);
+
+        assertEquals(CompressedTextConverter.RAW, stored[0]);
+        assertEquals(body.length() + 1, stored.length);
+        assertEquals(body, converter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    public void testNullEmptyAndMultibyteText() {
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+        assertEquals("", converter.convertToEntityAttribute(converter.convertToDatabaseColumn("")));
+        String multibyte = "Xin chào thế giới ".repeat(50);
+        assertEquals(multibyte, converter.convertToEntityAttribute(converter.convertToDatabaseColumn(multibyte)));
+    }
+
+    @Test
+    public void testUnknownFormatIsRejected() {
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(new byte[]{9, 1, 2}));
+    }
+}
@@ -0,0 +1,57 @@
+package com.may.app.rest.jdbc;
+
+import com.may.app.rest.deadline.DeadlineDataSource;
+import com.may.app.rest.metrics.TimedDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.jdbc.JdbcStatement;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InterceptingDataSourceTest {
+
+    // Layered as ConnectionHoldMetrics and DeadlineConfig wrap the application's data source
+    private final DataSource dataSource = new TimedDataSource(
+            new DeadlineDataSource(new DriverManagerDataSource("jdbc:h2:mem:intercepting-test")), SimpleMeterRegistry::new, true);
+
+    @Test
+    public void testProxiesCompareAndHashByIdentity() throws Exception {
+        try (Connection connection = dataSource.getConnection(); Connection other = dataSource.getConnection()) {
+            assertEquals(connection, connection);
+            assertNotEquals(connection, other);
+            assertEquals(System.identityHashCode(connection), connection.hashCode());
+
+            Statement statement = connection.createStatement();
+            assertEquals(statement, statement);
+            assertNotEquals(statement, connection.createStatement());
+        }
+    }
+
+    @Test
+    public void testStatementsHandBackTheProxiedConnection() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            assertSame(connection, connection.createStatement().getConnection());
+            PreparedStatement prepared = connection.prepareStatement("SELECT 1");
+            assertSame(connection, prepared.getConnection());
+        }
+    }
+
+    @Test
+    public void testProxiesUnwrapToTheDriversObjects() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            assertSame(connection, connection.unwrap(Connection.class));
+            assertTrue(connection.isWrapperFor(JdbcConnection.class));
+            JdbcConnection driver = connection.unwrap(JdbcConnection.class);
+            assertSame(driver, DataSourceUtils.getTargetConnection(connection));
+            assertNotNull(connection.createStatement().unwrap(JdbcStatement.class));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.may.app.rest.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatementCounterTest {
+
+    private static final String BY_ID = "select p.id, p.title from post p where p.id=?";
+
+    @Test
+    public void testRepeatedSelectIsReportedOnce() {
+        StatementCounter counter = new StatementCounter(3, false);
+        StatementCounter.Counts counts = counter.begin();
+        for (int i = 0; i < 4; i++) {
+            counter.inspect(BY_ID);
+            counter.inspect("insert into change_event (entity_id) values (?)");
+        }
+        counter.end(counts);
+
+        assertEquals(8, counts.statements());
+        assertEquals(4, counts.maxRepeats());
+        assertEquals(BY_ID, counts.repeatedSql());
+    }
+
+    @Test
+    public void testStrictModeFailsTheRepeatedSelect() {
+        StatementCounter counter = new StatementCounter(2, true);
+        StatementCounter.Counts counts = counter.begin();
+        try {
+            counter.inspect(BY_ID);
+            assertThrows(IllegalStateException.class, () -> counter.inspect(BY_ID));
+        } finally {
+            counter.end(counts);
+        }
+        // Nothing is counted outside a request
+        counter.inspect(BY_ID);
+        counter.inspect(BY_ID);
+    }
+
+    @Test
+    public void testBatchPartIsCountedSeparately() {
+        StatementCounter counter = new StatementCounter(3, false);
+        StatementCounter.Counts batch = counter.begin();
+        counter.inspect(BY_ID);
+        StatementCounter.Counts part = counter.begin();
+        counter.inspect(BY_ID);
+        counter.inspect(BY_ID);
+        counter.end(part);
+        counter.inspect(BY_ID);
+        counter.end(batch);
+
+        assertEquals(2, part.statements());
+        assertEquals(2, batch.statements());
+        assertNull(batch.repeatedSql());
+    }
+
+    @Test
+    public void testInterceptorRecordsCountsPerEndpoint() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("registry", registry);
+        StatementCounter counter = new StatementCounter(2, false);
+        QueryCountInterceptor interceptor = new QueryCountInterceptor(counter, beans.getBeanProvider(MeterRegistry.class));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/posts");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/posts");
+
+        interceptor.preHandle(request, new MockHttpServletResponse(), null);
+        counter.inspect(BY_ID);
+        counter.inspect(BY_ID);
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+
+        assertEquals(2, request.getAttribute(QueryCountInterceptor.COUNT_ATTRIBUTE));
+        assertEquals(2.0, registry.get(QueryCountInterceptor.STATEMENTS).tag("uri", "/posts").summary().totalAmount());
+        assertEquals(1.0, registry.get(QueryCountInterceptor.REPEATED).tag("uri", "/posts").counter().count());
+    }
+}
@@ -0,0 +1,98 @@
+package com.may.app.rest.metrics;
+
+import com.may.app.rest.tracing.RequestTrace;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.sql.Connection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimedDataSourceTest {
+
+    private SimpleMeterRegistry registry;
+    private TimedDataSource dataSource;
+
+    @BeforeEach
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        dataSource = new TimedDataSource(new DriverManagerDataSource("jdbc:h2:mem:hold-test"), () -> registry, true);
+    }
+
+    @AfterEach
+    public void clearRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testHoldIsRecordedOnceOnClose() throws Exception {
+        Connection connection = dataSource.getConnection();
+        connection.createStatement().execute("SELECT 1");
+        Timer timer = registry.get(TimedDataSource.METRIC).tag("method", "none").tag("uri", "none").timer();
+        assertEquals(0, timer.count());
+
+        connection.close();
+        connection.close();
+
+        assertEquals(1, timer.count());
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    public void testHoldIsTaggedWithTheBorrowingEndpoint() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/7");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/users/{id}");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        dataSource.getConnection().close();
+
+        assertEquals(1, registry.get(TimedDataSource.METRIC).tag("method", "GET").tag("uri", "/users/{id}").timer().count());
+    }
+
+    @Test
+    public void testTimerIsBuiltOncePerEndpoint() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        TimedDataSource counted = new TimedDataSource(new DriverManagerDataSource("jdbc:h2:mem:hold-test"), () -> {
+            lookups.incrementAndGet();
+            return registry;
+        }, false);
+        MockHttpServletRequest request = new MockHttpServletRequest("BREW", "/users/7");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/users/{id}");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        for (int i = 0; i < 3; i++) {
+            counted.getConnection().close();
+        }
+
+        assertEquals(1, lookups.get());
+        assertEquals(3, registry.get(TimedDataSource.METRIC).tag("method", "OTHER").tag("uri", "/users/{id}").timer().count());
+    }
+
+    @Test
+    public void testStatementsOfATracedRequestAreCountedAsDb() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().execute("SELECT 1");
+        }
+        RequestTrace trace = RequestTrace.start("GET /users/filter", 100);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement().execute("SELECT 1");
+            var statement = connection.prepareStatement("SELECT ?");
+            statement.setInt(1, 2);
+            statement.executeQuery().close();
+        } finally {
+            trace.finish();
+        }
+
+        assertTrue(trace.serverTiming().contains("db;dur="));
+        assertTrue(trace.serverTiming().contains("desc=\"2 statements\""), trace.serverTiming());
+    }
+}
@@ -0,0 +1,135 @@
+package com.may.app.rest.migration;
+
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.CompressedTextConverter;
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.flywaydb.core.Flyway;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchemaMigrationTest {
+
+    @Test
+    public void testMigratedSchemaValidatesAgainstTheEntities() {
+        String url = "jdbc:h2:mem:migration-fresh;DB_CLOSE_DELAY=-1";
+        migrate(url);
+
+        try (SessionFactory ignored = validatingSessionFactory(url)) {
+            JdbcTemplate jdbcTemplate = jdbcTemplate(url);
+            assertTrue(explain(jdbcTemplate, "SELECT id, title FROM post WHERE title = 'a'").contains("IDX_POST_TITLE"));
+            assertTrue(explain(jdbcTemplate, "SELECT id, title FROM post WHERE user_id = 1").contains("IDX_POST_USER_TIMELINE"));
+            assertTrue(explain(jdbcTemplate, "SELECT id FROM users WHERE username = 'Bret'").contains("IDX_USERS_USERNAME"));
+            assertTrue(explain(jdbcTemplate, "SELECT id FROM users WHERE email = 'a@b.c'").contains("IDX_USERS_EMAIL"));
+        }
+    }
+
+    @Test
+    public void testSchemaLeftByDdlAutoUpdateIsCompletedAndItsDataMoved() {
+        String url = "jdbc:h2:mem:migration-legacy;DB_CLOSE_DELAY=-1";
+        JdbcTemplate jdbcTemplate = jdbcTemplate(url);
+        // As ddl-auto=update left it before the content split, counters and geo doubles
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), username VARCHAR(255), "
+                + "email VARCHAR(255), street VARCHAR(255), suite VARCHAR(255), city VARCHAR(255), zipcode VARCHAR(255), "
+                + "lat VARCHAR(255), lng VARCHAR(255), phone VARCHAR(255), website VARCHAR(255), company_name VARCHAR(255), "
+                + "catch_phrase VARCHAR(255), bs VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE post (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), content CLOB, user_id BIGINT)");
+        jdbcTemplate.update("INSERT INTO users (name, lat, lng) VALUES ('Leanne', '-37.3159', 'n/a')");
+        jdbcTemplate.update("INSERT INTO post (title, content, user_id) VALUES ('First', 'quia et suscipit', 1), ('Empty', NULL, 1)");
+
+        migrate(url);
+
+        try (SessionFactory ignored = validatingSessionFactory(url)) {
+            byte[] body = jdbcTemplate.queryForObject(
+                    "SELECT c.body FROM post p JOIN post_content c ON c.id = p.content_id WHERE p.title = 'First'", byte[].class);
+            assertEquals("quia et suscipit", new CompressedTextConverter().convertToEntityAttribute(body));
+            assertArrayEquals(PostContent.hash("quia et suscipit"), jdbcTemplate.queryForObject("SELECT hash FROM post_content", byte[].class));
+            assertNull(jdbcTemplate.queryForObject("SELECT content_id FROM post WHERE title = 'Empty'", String.class));
+            assertEquals(-37.3159, jdbcTemplate.queryForObject("SELECT lat FROM users", Double.class));
+            assertNull(jdbcTemplate.queryForObject("SELECT lng FROM users", Double.class));
+            assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns "
+                    + "WHERE table_name = 'POST' AND column_name = 'CONTENT'", Integer.class));
+        }
+    }
+
+    @Test
+    public void testSchemaUpdatedAfterTheContentSplitKeepsNewPostsAndMovesOldOnes() {
+        String url = "jdbc:h2:mem:migration-interim;DB_CLOSE_DELAY=-1";
+        JdbcTemplate jdbcTemplate = jdbcTemplate(url);
+        // As ddl-auto=update left it when run with the split mappings: old rows still inline, new ones in
+        // post_content, and doubles written through the text lat/lng columns by implicit conversion
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), username VARCHAR(255), "
+                + "email VARCHAR(255), street VARCHAR(255), suite VARCHAR(255), city VARCHAR(255), zipcode VARCHAR(255), "
+                + "lat VARCHAR(255), lng VARCHAR(255), phone VARCHAR(255), website VARCHAR(255), company_name VARCHAR(255), "
+                + "catch_phrase VARCHAR(255), bs VARCHAR(255), post_count BIGINT, last_post_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE post_content (id VARCHAR(36) NOT NULL PRIMARY KEY, body BLOB, hash BINARY(32))");
+        jdbcTemplate.execute("CREATE TABLE post (id BIGINT AUTO_INCREMENT PRIMARY KEY, title VARCHAR(255), content CLOB, "
+                + "content_id VARCHAR(36), user_id BIGINT)");
+        PostContent written = new PostContent("written after the split");
+        jdbcTemplate.update("INSERT INTO users (name, lat, lng) VALUES ('Leanne', '1.25e+001', '-37.3159')");
+        jdbcTemplate.update("INSERT INTO post_content (id, body, hash) VALUES (?, ?, ?)", written.getId(),
+                new CompressedTextConverter().convertToDatabaseColumn(written.getText()), written.getHash());
+        jdbcTemplate.update("INSERT INTO post (title, content, content_id, user_id) VALUES ('Old', 'written before the split', NULL, 1)");
+        jdbcTemplate.update("INSERT INTO post (title, content, content_id, user_id) VALUES ('New', NULL, ?, 1)", written.getId());
+
+        migrate(url);
+
+        try (SessionFactory ignored = validatingSessionFactory(url)) {
+            assertEquals(written.getId(), jdbcTemplate.queryForObject("SELECT content_id FROM post WHERE title = 'New'", String.class));
+            assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM post_content", Integer.class));
+            byte[] body = jdbcTemplate.queryForObject(
+                    "SELECT c.body FROM post p JOIN post_content c ON c.id = p.content_id WHERE p.title = 'Old'", byte[].class);
+            assertEquals("written before the split", new CompressedTextConverter().convertToEntityAttribute(body));
+            assertEquals(12.5, jdbcTemplate.queryForObject("SELECT lat FROM users", Double.class));
+            assertEquals(-37.3159, jdbcTemplate.queryForObject("SELECT lng FROM users", Double.class));
+        }
+    }
+
+    private static void migrate(String url) {
+        Flyway.configure()
+                .dataSource(url, "sa", "")
+                .locations("classpath:db/migration/h2")
+                .javaMigrations(new V3__MoveLegacyColumns())
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+    }
+
+    // Fails to build if a table or column the entities map is missing or of the wrong type
+    private static SessionFactory validatingSessionFactory(String url) {
+        Configuration configuration = new Configuration();
+        configuration.setPhysicalNamingStrategy(new SpringPhysicalNamingStrategy());
+        configuration.setImplicitNamingStrategy(new SpringImplicitNamingStrategy());
+        return configuration
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .addAnnotatedClass(ChangeEvent.class)
+                .setProperty("hibernate.connection.url", url)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "validate")
+                .setProperty("javax.persistence.sharedCache.mode", "NONE")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+    }
+
+    private static JdbcTemplate jdbcTemplate(String url) {
+        return new JdbcTemplate(new DriverManagerDataSource(url, "sa", ""));
+    }
+
+    private static String explain(JdbcTemplate jdbcTemplate, String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+    }
+}
@@ -0,0 +1,177 @@
+package com.may.app.rest.ratelimit;
+
+import com.may.app.rest.repository.UserRepository;
+import com.may.app.rest.service.ResultPageCacheTest;
+import com.may.app.rest.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static ConcurrencyLimiter limiter(int initial, int min, int max, MeterRegistry registry) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        if (registry != null) {
+            beans.addBean("meterRegistry", registry);
+        }
+        ObjectProvider<MeterRegistry> provider = beans.getBeanProvider(MeterRegistry.class);
+        return new ConcurrencyLimiter(initial, min, max, 1.5, 0.2, 10, provider);
+    }
+
+    // A window of samples from callers keeping the limit busy
+    private static void window(ConcurrencyLimiter limiter, long rttNanos) {
+        for (int i = 0; i < 10; i++) {
+            limiter.sample(rttNanos, limiter.limit(), false);
+        }
+    }
+
+    @AfterEach
+    public void clearRequest() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void testRejectsOverTheLimitUntilAPermitIsReleased() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConcurrencyLimiter limiter = limiter(2, 1, 10, registry);
+
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(limiter.tryAcquire());
+        assertNull(limiter.tryAcquire());
+        assertEquals(2, limiter.inFlight());
+
+        first.release();
+        assertNotNull(limiter.tryAcquire());
+        assertEquals(2, registry.get("db.concurrency.limit").gauge().value());
+        assertEquals(2, registry.get("db.concurrency.in_flight").gauge().value());
+        assertEquals(1, registry.get("db.concurrency.rejected").functionCounter().count());
+    }
+
+    @Test
+    public void testSteadyLatencyUnderLoadGrowsTheLimit() {
+        ConcurrencyLimiter limiter = limiter(10, 4, 40, null);
+
+        for (int i = 0; i < 100; i++) {
+            window(limiter, 20 * MILLI);
+        }
+
+        assertEquals(40, limiter.limit());
+    }
+
+    @Test
+    public void testRisingLatencyShrinksTheLimit() {
+        ConcurrencyLimiter limiter = limiter(40, 4, 40, null);
+        for (int i = 0; i < 10; i++) {
+            window(limiter, 20 * MILLI);
+        }
+
+        int previous = limiter.limit();
+        for (int i = 0; i < 5; i++) {
+            window(limiter, 2000 * MILLI);
+            assertTrue(limiter.limit() < previous, "limit " + limiter.limit() + " after " + previous);
+            previous = limiter.limit();
+        }
+        for (int i = 0; i < 50; i++) {
+            window(limiter, 2000 * MILLI);
+        }
+        assertTrue(limiter.limit() < 10, "limit " + limiter.limit());
+    }
+
+    @Test
+    public void testIdleCallersLeaveTheLimitAlone() {
+        ConcurrencyLimiter limiter = limiter(20, 4, 40, null);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.sample(20 * MILLI, 2, false);
+        }
+
+        assertEquals(20, limiter.limit());
+    }
+
+    @Test
+    public void testDroppedCallsBackOff() {
+        ConcurrencyLimiter limiter = limiter(20, 4, 40, null);
+
+        limiter.tryAcquire().drop();
+        assertEquals(18, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+        for (int i = 0; i < 30; i++) {
+            limiter.tryAcquire().drop();
+        }
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    public void testServiceCallsOverTheLimitAreRefusedWith503() throws Exception {
+        ConcurrencyLimiter limiter = limiter(1, 1, 1, null);
+        UserRepository userRepository = mock(UserRepository.class);
+        UserService userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(userService, "pages", ResultPageCacheTest.cache(0, 0, 0));
+        ConcurrencyLimitAspect aspect = new ConcurrencyLimitAspect();
+        ReflectionTestUtils.setField(aspect, "limiter", limiter);
+        AspectJProxyFactory factory = new AspectJProxyFactory(userService);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        UserService proxy = factory.getProxy();
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        when(userRepository.findAll()).thenAnswer(invocation -> {
+            entered.countDown();
+            proceed.await();
+            return List.of();
+        });
+        CompletableFuture<Object> slow = CompletableFuture.supplyAsync(() -> {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+            return proxy.getAllUsers();
+        });
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), response));
+        ResponseStatusException refused = assertThrows(ResponseStatusException.class, proxy::getAllUsers);
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, refused.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+
+        proceed.countDown();
+        assertEquals(List.of(), slow.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.inFlight());
+        assertEquals(List.of(), proxy.getAllUsers());
+
+        // Outside a request nothing is limited, and a failed call still frees its permit
+        RequestContextHolder.resetRequestAttributes();
+        when(userRepository.findAll()).thenThrow(new QueryTimeoutException("timeout"));
+        assertThrows(QueryTimeoutException.class, proxy::getAllUsers);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        assertThrows(QueryTimeoutException.class, proxy::getAllUsers);
+        assertEquals(0, limiter.inFlight());
+        assertEquals(1, limiter.rejected());
+    }
+}
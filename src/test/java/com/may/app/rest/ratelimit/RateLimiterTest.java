@@ -0,0 +1,101 @@
+package com.may.app.rest.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private static RateLimiter rateLimiter(int maxTrackedClients) {
+        return new RateLimiter(10, 3, 1, 1, "GET /users/filter,GET /posts/filter", 0.1, 1, "POST /users/import", maxTrackedClients);
+    }
+
+    @Test
+    public void testClassifyRoutes() {
+        RateLimiter rateLimiter = rateLimiter(100);
+
+        assertEquals(RateLimiter.Budget.FILTER, rateLimiter.classify("GET", "/users/filter"));
+        assertEquals(RateLimiter.Budget.FILTER, rateLimiter.classify("GET", "/posts/filter"));
+        assertEquals(RateLimiter.Budget.BULK, rateLimiter.classify("POST", "/users/import"));
+        assertEquals(RateLimiter.Budget.DEFAULT, rateLimiter.classify("GET", "/users/1"));
+        assertEquals(RateLimiter.Budget.DEFAULT, rateLimiter.classify("POST", "/users/filter"));
+    }
+
+    @Test
+    public void testBurstThenReject() {
+        RateLimiter rateLimiter = rateLimiter(100);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("jane", RateLimiter.Budget.DEFAULT));
+        }
+        assertTrue(rateLimiter.tryAcquire("jane", RateLimiter.Budget.DEFAULT) > 0);
+    }
+
+    @Test
+    public void testBudgetsAndClientsAreIndependent() {
+        RateLimiter rateLimiter = rateLimiter(100);
+
+        assertEquals(0, rateLimiter.tryAcquire("jane", RateLimiter.Budget.FILTER));
+        assertTrue(rateLimiter.tryAcquire("jane", RateLimiter.Budget.FILTER) > 0);
+
+        assertEquals(0, rateLimiter.tryAcquire("jane", RateLimiter.Budget.DEFAULT));
+        assertEquals(0, rateLimiter.tryAcquire("john", RateLimiter.Budget.FILTER));
+    }
+
+    @Test
+    public void testIdleBucketsAreSwept() throws InterruptedException {
+        RateLimiter rateLimiter = rateLimiter(2);
+        rateLimiter.tryAcquire("a", RateLimiter.Budget.DEFAULT);
+        rateLimiter.tryAcquire("b", RateLimiter.Budget.DEFAULT);
+        rateLimiter.tryAcquire("c", RateLimiter.Budget.DEFAULT);
+        Thread.sleep(150);
+
+        rateLimiter.tryAcquire("d", RateLimiter.Budget.DEFAULT);
+
+        assertEquals(1, rateLimiter.trackedBuckets());
+    }
+
+    @Test
+    public void testSweepThatFreesLittleIsNotRepeatedUntilTheMapDoubles() throws InterruptedException {
+        RateLimiter rateLimiter = rateLimiter(2);
+        for (String client : new String[]{"a", "b", "c", "d"}) {
+            rateLimiter.tryAcquire(client, RateLimiter.Budget.DEFAULT);
+        }
+        Thread.sleep(150);
+
+        for (String client : new String[]{"e", "f", "g"}) {
+            rateLimiter.tryAcquire(client, RateLimiter.Budget.DEFAULT);
+        }
+        assertEquals(7, rateLimiter.trackedBuckets());
+
+        // Only the idle first four are dropped
+        rateLimiter.tryAcquire("h", RateLimiter.Budget.DEFAULT);
+        assertEquals(4, rateLimiter.trackedBuckets());
+    }
+
+    @Test
+    public void testRateAndBurstMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 3, 1, 1, "", 0.1, 1, "", 100));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(10, 3, 1, 1, "", Double.NaN, 1, "", 100));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(10, 3, 1, 0, "", 0.1, 1, "", 100));
+    }
+
+    @Test
+    public void testFilterRejectsWithRetryAfter() throws Exception {
+        RateLimitFilter filter = new RateLimitFilter();
+        ReflectionTestUtils.setField(filter, "rateLimiter", rateLimiter(100));
+
+        MockHttpServletResponse admitted = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/users/filter"), admitted, new MockFilterChain());
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/users/filter"), rejected, new MockFilterChain());
+
+        assertEquals(200, admitted.getStatus());
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+    }
+}
@@ -0,0 +1,185 @@
+package com.may.app.rest.security;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingJwtDecoderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path jwksFile;
+    private CachedJwkSetSource jwkSetSource;
+    private JwtDecoder decoder;
+
+    private static RSAKey generateKey(String keyId) throws JOSEException {
+        return new RSAKeyGenerator(2048).keyID(keyId).generate();
+    }
+
+    private static String sign(RSAKey key, String subject, Date expiresAt) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(subject)
+                .issueTime(new Date())
+                .expirationTime(expiresAt)
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    private void publish(RSAKey... keys) throws Exception {
+        JWKSet jwkSet = new JWKSet(List.<JWK>of(keys));
+        Files.write(jwksFile, jwkSet.toPublicJWKSet().toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Date inMinutes(int minutes) {
+        return new Date(System.currentTimeMillis() + minutes * 60_000L);
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        jwksFile = tempDir.resolve("jwks.json");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (jwkSetSource != null) {
+            jwkSetSource.close();
+        }
+    }
+
+    private void createDecoder(Duration minReloadInterval) {
+        jwkSetSource = new CachedJwkSetSource(jwksFile.toUri().toString(), Duration.ofMinutes(5), minReloadInterval);
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSetSource));
+        NimbusJwtDecoder nimbus = new NimbusJwtDecoder(processor);
+        nimbus.setJwtValidator(JwtValidators.createDefault());
+        decoder = new CachingJwtDecoder(nimbus, 100, Duration.ofMinutes(5));
+    }
+
+    @Test
+    public void testDecodeAgainstLocalKeySet() throws Exception {
+        RSAKey key = generateKey("local-1");
+        publish(key);
+        createDecoder(Duration.ZERO);
+
+        Jwt jwt = decoder.decode(sign(key, "auth0|jane", inMinutes(10)));
+
+        assertEquals("auth0|jane", jwt.getSubject());
+    }
+
+    @Test
+    public void testVerifiedTokenIsMemoized() throws Exception {
+        RSAKey key = generateKey("local-1");
+        publish(key);
+        createDecoder(Duration.ZERO);
+        String token = sign(key, "auth0|jane", inMinutes(10));
+
+        Jwt first = decoder.decode(token);
+        Jwt second = decoder.decode(token);
+
+        assertSame(first, second);
+        assertEquals(1, ((CachingJwtDecoder) decoder).size());
+    }
+
+    @Test
+    public void testFullCacheDropsTheLeastRecentlyUsedToken() {
+        AtomicInteger decodes = new AtomicInteger();
+        CachingJwtDecoder caching = new CachingJwtDecoder(token -> {
+            decodes.incrementAndGet();
+            return Jwt.withTokenValue(token).header("alg", "RS256").subject(token)
+                    .expiresAt(Instant.now().plusSeconds(600)).build();
+        }, 2, Duration.ofMinutes(5));
+        caching.decode("a");
+        caching.decode("b");
+        caching.decode("a");
+        caching.decode("c");
+
+        assertEquals(2, caching.size());
+        caching.decode("a");
+        assertEquals(3, decodes.get());
+        caching.decode("b");
+        assertEquals(4, decodes.get());
+    }
+
+    @Test
+    public void testTokenSignedByUnknownKeyIsRejected() throws Exception {
+        publish(generateKey("local-1"));
+        createDecoder(Duration.ZERO);
+
+        String token = sign(generateKey("local-1"), "auth0|mallory", inMinutes(10));
+
+        assertThrows(JwtException.class, () -> decoder.decode(token));
+        assertEquals(0, ((CachingJwtDecoder) decoder).size());
+    }
+
+    @Test
+    public void testExpiredTokenIsRejected() throws Exception {
+        RSAKey key = generateKey("local-1");
+        publish(key);
+        createDecoder(Duration.ZERO);
+
+        String token = sign(key, "auth0|jane", inMinutes(-10));
+
+        assertThrows(JwtException.class, () -> decoder.decode(token));
+    }
+
+    @Test
+    public void testRotatedKeyIsPickedUpOnUnknownKeyId() throws Exception {
+        RSAKey oldKey = generateKey("local-1");
+        publish(oldKey);
+        createDecoder(Duration.ZERO);
+        decoder.decode(sign(oldKey, "auth0|jane", inMinutes(10)));
+
+        RSAKey newKey = generateKey("local-2");
+        publish(oldKey, newKey);
+
+        Jwt jwt = decoder.decode(sign(newKey, "auth0|john", inMinutes(10)));
+
+        assertEquals("auth0|john", jwt.getSubject());
+    }
+
+    @Test
+    public void testUnknownKeyIdReloadIsRateLimited() throws Exception {
+        RSAKey oldKey = generateKey("local-1");
+        publish(oldKey);
+        createDecoder(Duration.ofHours(1));
+
+        RSAKey newKey = generateKey("local-2");
+        publish(oldKey, newKey);
+
+        String token = sign(newKey, "auth0|john", inMinutes(10));
+        assertThrows(JwtException.class, () -> decoder.decode(token));
+    }
+}
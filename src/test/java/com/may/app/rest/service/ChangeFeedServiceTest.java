@@ -0,0 +1,142 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.repository.ChangeEventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ChangeFeedServiceTest {
+
+    @Mock
+    private ChangeEventRepository changeEventRepository;
+
+    @InjectMocks
+    private ChangeFeedService changeFeedService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    private static ChangeEvent event(long seq, long entityId, ChangeEvent.Op op) {
+        ChangeEvent event = new ChangeEvent(ChangeEvent.EntityType.USER, entityId, op, Instant.EPOCH);
+        event.setId(seq);
+        return event;
+    }
+
+    @Test
+    public void testPageCollapsesToLatestChangePerRow() {
+        when(changeEventRepository.findOldestRetained()).thenReturn(1L);
+        when(changeEventRepository.findSince(eq(ChangeEvent.EntityType.USER), eq(10L), any(Instant.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(
+                        event(11, 1, ChangeEvent.Op.UPSERT),
+                        event(12, 2, ChangeEvent.Op.UPSERT),
+                        event(13, 1, ChangeEvent.Op.UPSERT),
+                        event(14, 2, ChangeEvent.Op.DELETE)));
+        Map<Long, String> rows = new HashMap<>();
+        rows.put(1L, "user-1");
+
+        ChangePage<String> page = changeFeedService.changesSince(ChangeEvent.EntityType.USER, 10L, 10, ids -> {
+            assertEquals(Arrays.asList(1L), ids);
+            return rows;
+        });
+
+        List<ChangePage.Change<String>> changes = page.getChanges();
+        assertEquals(2, changes.size());
+        assertEquals(13L, changes.get(0).getSeq());
+        assertEquals("user-1", changes.get(0).getData());
+        assertEquals(ChangeEvent.Op.DELETE, changes.get(1).getOp());
+        assertNull(changes.get(1).getData());
+        assertEquals(14L, page.getCursor());
+        assertFalse(page.isHasMore());
+    }
+
+    @Test
+    public void testUpsertOfAMissingRowIsServedAsADelete() {
+        when(changeEventRepository.findSince(eq(ChangeEvent.EntityType.USER), eq(10L), any(Instant.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(event(11, 1, ChangeEvent.Op.DELETE), event(12, 1, ChangeEvent.Op.UPSERT)));
+
+        ChangePage<String> page = changeFeedService.changesSince(ChangeEvent.EntityType.USER, 10L, 10, ids -> new HashMap<>());
+
+        assertEquals(1, page.getChanges().size());
+        assertEquals(ChangeEvent.Op.DELETE, page.getChanges().get(0).getOp());
+        assertEquals(12L, page.getChanges().get(0).getSeq());
+    }
+
+    @Test
+    public void testTransactionCommittingLongAfterItsChangesIsRejected() throws InterruptedException {
+        ReflectionTestUtils.setField(changeFeedService, "maxWriteMillis", 10L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            changeFeedService.record(ChangeEvent.EntityType.USER, 1L, ChangeEvent.Op.UPSERT);
+            changeFeedService.record(ChangeEvent.EntityType.USER, 2L, ChangeEvent.Op.UPSERT);
+            Thread.sleep(50);
+
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            assertEquals(1, synchronizations.size());
+            assertThrows(TransactionTimedOutException.class, () -> synchronizations.get(0).beforeCommit(false));
+            synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testSettleWindowMustOutlastTheLongestWrite() {
+        ReflectionTestUtils.setField(changeFeedService, "settleMillis", 10000L);
+        ReflectionTestUtils.setField(changeFeedService, "maxWriteMillis", 10000L);
+
+        assertThrows(IllegalStateException.class, () -> changeFeedService.checkSettleWindow());
+    }
+
+    @Test
+    public void testHasMoreWhenPageIsFull() {
+        when(changeEventRepository.findSince(any(), eq(0L), any(Instant.class), any(Pageable.class)))
+                .thenReturn(Arrays.asList(event(1, 1, ChangeEvent.Op.DELETE), event(2, 2, ChangeEvent.Op.DELETE)));
+
+        ChangePage<String> page = changeFeedService.changesSince(ChangeEvent.EntityType.USER, 0L, 1, ids -> new HashMap<>());
+
+        assertEquals(1, page.getChanges().size());
+        assertEquals(1L, page.getCursor());
+        assertTrue(page.isHasMore());
+    }
+
+    @Test
+    public void testPrunedCursorIsGone() {
+        when(changeEventRepository.findOldestRetained()).thenReturn(50L);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> changeFeedService.changesSince(ChangeEvent.EntityType.USER, 10L, 10, ids -> new HashMap<>()));
+
+        assertEquals(410, e.getStatus().value());
+    }
+
+    @Test
+    public void testNoCursorStartsAtHead() {
+        when(changeEventRepository.findHead(any(Instant.class))).thenReturn(42L);
+
+        ChangePage<String> page = changeFeedService.changesSince(ChangeEvent.EntityType.USER, null, 10, ids -> new HashMap<>());
+
+        assertTrue(page.getChanges().isEmpty());
+        assertEquals(42L, page.getCursor());
+    }
+}
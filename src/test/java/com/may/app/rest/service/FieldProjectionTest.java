@@ -0,0 +1,120 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FieldProjectionTest {
+
+    private static SessionFactory sessionFactory;
+    private Session session;
+    private FieldProjection fieldProjection;
+
+    @BeforeAll
+    public static void createSchema() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .addAnnotatedClass(ChangeEvent.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:projection-test;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("javax.persistence.sharedCache.mode", "NONE")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        User user = new User(null, "Leanne Graham", "Bret", "Sincere@april.biz",
+                new User.Address("Kulas Light", "Apt. 556", "Gwenborough", "92998-3874", new User.Geo(-37.3159, 81.1496)),
+                "1-770-736-8031", "hildegard.org", new User.Company("Romaguera-Crona", "Multi-layered", "harness"));
+        session.persist(user);
+        Post post = new Post();
+        post.setTitle("sunt aut facere");
+        post.setContent("quia et suscipit");
+        post.setUser(user);
+        session.persist(post);
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterAll
+    public static void close() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        session = sessionFactory.openSession();
+        fieldProjection = new FieldProjection();
+        ReflectionTestUtils.setField(fieldProjection, "entityManager", session);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSelectsOnlyRequestedFieldsAsNestedMaps() {
+        List<Map<String, Object>> rows = fieldProjection.select(User.class, "name,company.name,address.geo.lat", (b, q, r) -> { });
+
+        Map<String, Object> row = rows.get(0);
+        assertEquals(Arrays.asList("name", "company", "address"), Arrays.asList(row.keySet().toArray()));
+        assertEquals("Romaguera-Crona", ((Map<String, Object>) row.get("company")).get("name"));
+        assertEquals(1, ((Map<String, Object>) row.get("company")).size());
+        assertEquals(-37.3159, ((Map<String, Object>) ((Map<String, Object>) row.get("address")).get("geo")).get("lat"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEmbeddedNameExpandsAndAssociationsExposeId() {
+        Map<String, Object> user = fieldProjection.select(User.class, "company", (b, q, r) -> { }).get(0);
+        assertEquals(3, ((Map<String, Object>) user.get("company")).size());
+
+        Map<String, Object> post = fieldProjection.select(Post.class, "title,user.id",
+                (b, q, r) -> q.where(b.equal(r.get("title"), "sunt aut facere"))).get(0);
+        assertEquals("sunt aut facere", post.get("title"));
+        assertNotNull(((Map<String, Object>) post.get("user")).get("id"));
+        assertFalse(post.containsKey("content"));
+    }
+
+    @Test
+    public void testContentIsJoinedAndDecompressed() {
+        Map<String, Object> post = fieldProjection.select(Post.class, "id,content", (b, q, r) -> { }).get(0);
+
+        assertEquals("quia et suscipit", post.get("content"));
+        assertThrows(ResponseStatusException.class, () -> fieldProjection.resolve(Post.class, "body"));
+    }
+
+    @Test
+    public void testSelectByIdsKeysRowsByIdAndKeepsIdOnlyWhenRequested() {
+        Long id = (Long) fieldProjection.select(User.class, "id", (b, q, r) -> { }).get(0).get("id");
+
+        Map<Long, Map<String, Object>> rows = fieldProjection.selectByIds(User.class, Arrays.asList(id, 999L), "name");
+        assertEquals(Map.of(id, Map.of("name", "Leanne Graham")), rows);
+        assertEquals(id, fieldProjection.selectByIds(User.class, List.of(id), "name,id").get(id).get("id"));
+        assertThrows(ResponseStatusException.class, () -> fieldProjection.selectByIds(User.class, List.of(), "password"));
+    }
+
+    @Test
+    public void testUnknownAndCollectionFieldsAreRejected() {
+        assertThrows(ResponseStatusException.class, () -> fieldProjection.resolve(User.class, "name,password"));
+        assertThrows(ResponseStatusException.class, () -> fieldProjection.resolve(User.class, "posts"));
+        assertThrows(ResponseStatusException.class, () -> fieldProjection.resolve(Post.class, " , "));
+    }
+}
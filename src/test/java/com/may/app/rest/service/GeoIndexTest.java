@@ -0,0 +1,85 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GeoIndexTest {
+
+    @Test
+    public void testNearReturnsUsersWithinRadiusNearestFirst() {
+        GeoIndex index = new GeoIndex(0.5);
+        index.put(1L, 52.5200, 13.4050);   // Berlin
+        index.put(2L, 52.3906, 13.0645);   // Potsdam, ~27 km
+        index.put(3L, 48.1351, 11.5820);   // Munich, ~500 km
+
+        assertEquals(Arrays.asList(1L, 2L), index.near(52.52, 13.40, 50, 10));
+        assertEquals(Arrays.asList(1L), index.near(52.52, 13.40, 50, 1));
+        assertEquals(Arrays.asList(1L, 2L, 3L), index.near(52.52, 13.40, 600, 10));
+    }
+
+    @Test
+    public void testNearCrossesAntimeridian() {
+        GeoIndex index = new GeoIndex(0.5);
+        index.put(1L, 0.0, 179.9);
+        index.put(2L, 0.0, -179.9);
+
+        assertEquals(Arrays.asList(1L, 2L), index.near(0.0, 179.95, 50, 10));
+    }
+
+    @Test
+    public void testMovesAndRemovalsAreReflected() {
+        GeoIndex index = new GeoIndex(0.5);
+        index.put(1L, 10.0, 10.0);
+        index.put(1L, -10.0, -10.0);
+
+        assertTrue(index.near(10.0, 10.0, 10, 10).isEmpty());
+        assertEquals(Arrays.asList(1L), index.near(-10.0, -10.0, 10, 10));
+
+        index.remove(1L);
+        assertTrue(index.near(-10.0, -10.0, 10, 10).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testIndexWithoutTransactionAppliesImmediately() {
+        GeoIndex index = new GeoIndex(0.5);
+        User user = new User(7L, "Jane", "jane", "jane@mail.com",
+                new User.Address("Street", "Suite", "City", "12345", new User.Geo(1.0, 1.0)), null, null, null);
+
+        index.index(user);
+        assertEquals(Arrays.asList(7L), index.near(1.0, 1.0, 1, 10));
+
+        user.getAddress().setGeo(null);
+        index.index(user);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        GeoIndex index = new GeoIndex(1.0);
+        Random random = new Random(42);
+        List<double[]> points = new ArrayList<>();
+        for (long id = 0; id < 2000; id++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lng = random.nextDouble() * 360 - 180;
+            points.add(new double[]{lat, lng});
+            index.put(id, lat, lng);
+        }
+        for (int q = 0; q < 50; q++) {
+            double lat = random.nextDouble() * 170 - 85;
+            double lng = random.nextDouble() * 360 - 180;
+            double radius = 100 + random.nextDouble() * 900;
+            long expected = points.stream()
+                    .filter(p -> GeoIndex.distanceKm(lat, lng, p[0], p[1]) <= radius)
+                    .count();
+            assertEquals(expected, index.near(lat, lng, radius, Integer.MAX_VALUE).size());
+        }
+    }
+}
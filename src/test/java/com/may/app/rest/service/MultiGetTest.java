@@ -0,0 +1,141 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiGetTest {
+
+    private static SessionFactory sessionFactory;
+    private static final List<Long> postIds = new ArrayList<>();
+    private Session session;
+    private MultiGet multiGet;
+
+    @BeforeAll
+    public static void createSchema() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .addAnnotatedClass(ChangeEvent.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:multiget-test;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("hibernate.generate_statistics", "true")
+                .setProperty("javax.persistence.sharedCache.mode", "ENABLE_SELECTIVE")
+                .setProperty("hibernate.cache.use_second_level_cache", "true")
+                .setProperty("hibernate.cache.region.factory_class", "jcache")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        for (int i = 1; i <= 5; i++) {
+            Post post = new Post();
+            post.setTitle("Title " + i);
+            post.setContent("Content " + i);
+            session.persist(post);
+            postIds.add(post.getId());
+        }
+        session.getTransaction().commit();
+        session.close();
+    }
+
+    @AfterAll
+    public static void close() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    public void setUp() {
+        sessionFactory.getCache().evictAllRegions();
+        wire(sessionFactory.openSession());
+        sessionFactory.getStatistics().clear();
+    }
+
+    private void wire(Session session) {
+        this.session = session;
+        multiGet = new MultiGet();
+        ReflectionTestUtils.setField(multiGet, "entityManager", session);
+        ReflectionTestUtils.setField(multiGet, "entityManagerFactory", sessionFactory);
+        FieldProjection fieldProjection = new FieldProjection();
+        ReflectionTestUtils.setField(fieldProjection, "entityManager", session);
+        ReflectionTestUtils.setField(multiGet, "fieldProjection", fieldProjection);
+        ReflectionTestUtils.setField(multiGet, "maxIds", 10);
+        ReflectionTestUtils.setField(multiGet, "chunkSize", 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        session.close();
+    }
+
+    @Test
+    public void testReturnsRowsInRequestOrderWithOneQueryPerChunk() {
+        List<Long> ids = List.of(postIds.get(4), 999L, postIds.get(0), postIds.get(2), postIds.get(4), postIds.get(1));
+
+        MultiGetResult<Post> result = multiGet.load(Post.class, ids);
+
+        assertEquals(List.of(postIds.get(4), postIds.get(0), postIds.get(2), postIds.get(1)),
+                result.getItems().stream().map(Post::getId).collect(Collectors.toList()));
+        assertEquals(List.of(999L), result.getMissing());
+        // Five distinct ids in chunks of two
+        assertEquals(3, sessionFactory.getStatistics().getPrepareStatementCount());
+    }
+
+    @Test
+    public void testCachedEntitiesAreNotQueried() {
+        multiGet.load(Post.class, postIds.subList(0, 3));
+        // Read-write cache entries are visible to sessions opened after they were stored
+        session.close();
+        wire(sessionFactory.openSession());
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+
+        MultiGetResult<Post> result = multiGet.load(Post.class, postIds);
+
+        assertEquals(5, result.getItems().size());
+        assertEquals(3, statistics.getSecondLevelCacheHitCount());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void testFieldsAreProjectedAndIdOnlyKeptWhenRequested() {
+        MultiGetResult<Map<String, Object>> result = multiGet.loadFields(Post.class, List.of(postIds.get(3), 999L, postIds.get(0)), "title");
+
+        assertEquals(List.of(Map.of("title", "Title 4"), Map.of("title", "Title 1")), result.getItems());
+        assertEquals(List.of(999L), result.getMissing());
+        assertEquals(postIds.get(3), multiGet.loadFields(Post.class, List.of(postIds.get(3)), "id,content").getItems().get(0).get("id"));
+    }
+
+    @Test
+    public void testEmptyOrOversizedIdListIsRejected() {
+        assertThrows(ResponseStatusException.class, () -> multiGet.load(Post.class, Collections.emptyList()));
+        List<Long> tooMany = new ArrayList<>();
+        for (long id = 1; id <= 11; id++) {
+            tooMany.add(id);
+        }
+        assertThrows(ResponseStatusException.class, () -> multiGet.load(Post.class, tooMany));
+    }
+}
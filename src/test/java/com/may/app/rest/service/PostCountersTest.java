@@ -0,0 +1,151 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class PostCountersTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private EntityManagerFactory entityManagerFactory;
+
+    @Mock
+    private Cache secondLevelCache;
+
+    @Mock
+    private SerializedEntityCache responseCache;
+
+    @Mock
+    private UserRanking ranking;
+
+    @Mock
+    private ChangeFeedService changeFeed;
+
+    @InjectMocks
+    private PostCounters postCounters;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(postCounters, "hotThreshold", 2L);
+        when(entityManagerFactory.getCache()).thenReturn(secondLevelCache);
+        when(jdbcTemplate.update(eq(PostCounters.INCREMENT_SQL), any(), any(), any(), any(), any())).thenReturn(1);
+    }
+
+    @Test
+    public void testColdUserIsUpdatedInPlace() {
+        postCounters.record(1L, 1, Instant.now());
+
+        verify(jdbcTemplate).update(eq(PostCounters.INCREMENT_SQL), eq(1L), any(), any(), any(), eq(1L));
+        verify(secondLevelCache).evict(User.class, 1L);
+        verify(responseCache).evict(User.class, 1L);
+        verify(ranking).onPostCountChanged(1L, 1L);
+        assertEquals(0, postCounters.pendingDelta(1L));
+    }
+
+    @Test
+    public void testDeletedUserGetsNoChangeEvent() {
+        when(jdbcTemplate.update(eq(PostCounters.INCREMENT_SQL), any(), any(), any(), any(), eq(1L))).thenReturn(0);
+
+        postCounters.record(1L, 1, Instant.now());
+
+        verify(changeFeed, never()).record(any(), any(), any());
+        verify(ranking, never()).onPostCountChanged(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testForgottenUserLosesBufferedCounts() {
+        for (int i = 0; i < 5; i++) {
+            postCounters.record(1L, 1, Instant.now());
+        }
+
+        postCounters.forget(1L);
+        postCounters.flush();
+
+        assertEquals(0, postCounters.pendingDelta(1L));
+        verify(jdbcTemplate, never()).update(eq(PostCounters.INCREMENT_SQL), eq(3L), any(), any(), any(), eq(1L));
+        verify(ranking).remove(1L);
+    }
+
+    @Test
+    public void testUserIsForgottenOnlyOnceTheDeleteCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            postCounters.forget(1L);
+            verify(ranking, never()).remove(1L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(ranking).remove(1L);
+    }
+
+    @Test
+    public void testHotUserIsBufferedUntilFlush() {
+        for (int i = 0; i < 5; i++) {
+            postCounters.record(1L, 1, Instant.now());
+        }
+
+        verify(jdbcTemplate, times(2)).update(eq(PostCounters.INCREMENT_SQL), eq(1L), any(), any(), any(), eq(1L));
+        assertEquals(3, postCounters.pendingDelta(1L));
+
+        postCounters.flush();
+
+        verify(jdbcTemplate).update(eq(PostCounters.INCREMENT_SQL), eq(3L), any(), any(), any(), eq(1L));
+        verify(ranking).onPostCountChanged(1L, 3L);
+        assertEquals(0, postCounters.pendingDelta(1L));
+    }
+
+    @Test
+    public void testHotWriteIsBufferedOnlyOnceItsTransactionCommits() {
+        postCounters.record(1L, 1, Instant.now());
+        postCounters.record(1L, 1, Instant.now());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            postCounters.record(1L, 1, Instant.now());
+            assertEquals(0, postCounters.pendingDelta(1L));
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(0, postCounters.pendingDelta(1L));
+
+        postCounters.flush();
+        verify(jdbcTemplate, never()).update(eq(PostCounters.INCREMENT_SQL), eq(0L), any(), any(), any(), eq(1L));
+        verify(jdbcTemplate, times(2)).update(eq(PostCounters.INCREMENT_SQL), anyLong(), any(), any(), any(), eq(1L));
+    }
+
+    @Test
+    public void testIdleCountersAreDroppedOnFlush() {
+        postCounters.record(1L, 1, Instant.now());
+
+        postCounters.flush();
+        postCounters.flush();
+
+        verify(jdbcTemplate, times(1)).update(eq(PostCounters.INCREMENT_SQL), any(), any(), any(), any(), any());
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(postCounters, "pending")).isEmpty());
+    }
+}
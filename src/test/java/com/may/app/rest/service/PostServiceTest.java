@@ -1,5 +1,7 @@
 package com.may.app.rest.service;
 
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.ChangeEvent;
 import com.may.app.rest.entity.Post;
 import com.may.app.rest.entity.User;
 import com.may.app.rest.repository.PostRepository;
@@ -8,6 +10,10 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,6 +30,21 @@ public class PostServiceTest {
     @Mock
     private PostRepository postRepository;
 
+    @Mock
+    private SerializedEntityCache responseCache;
+
+    @Mock
+    private PostCounters postCounters;
+
+    @Mock
+    private ChangeFeedService changeFeed;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ResultPageCache pages = ResultPageCacheTest.cache(60000, 60000, 10);
+
     @InjectMocks
     private PostService postService;
 
@@ -99,6 +120,7 @@ public class PostServiceTest {
     @Test
     public void testCreatePost() {
         User user = new User();
+        user.setId(5L);
         Post newPost = new Post();
         newPost.setTitle("New Title");
         newPost.setContent("New Content");
@@ -119,6 +141,7 @@ public class PostServiceTest {
         assertEquals("New Content", returnedPost.getContent());
 
         verify(postRepository, times(1)).save(newPost);
+        verify(postCounters).record(eq(5L), eq(1L), any());
     }
 
     @Test
@@ -142,6 +165,44 @@ public class PostServiceTest {
         verify(postRepository, times(1)).save(updatedPost);
     }
 
+    @Test
+    public void testUpdatePostMovedToAnotherUserUpdatesBothOwners() {
+        User previousOwner = new User();
+        previousOwner.setId(7L);
+        User newOwner = new User();
+        newOwner.setId(8L);
+        Post existing = new Post();
+        existing.setId(1L);
+        existing.setUser(previousOwner);
+        Post moved = new Post();
+        moved.setTitle("Moved");
+        moved.setUser(newOwner);
+        when(postRepository.findById(1L)).thenReturn(Optional.of(existing));
+        when(postRepository.save(moved)).thenReturn(moved);
+
+        postService.updatePost(moved, 1L);
+
+        verify(responseCache).evict(Post.class, 1L);
+        verify(responseCache).evict(User.class, 7L);
+        verify(responseCache).evict(User.class, 8L);
+        verify(postCounters).record(7L, -1, null);
+        verify(postCounters).record(8L, 1, null);
+    }
+
+    @Test
+    public void testUpdateOfMissingPostIsRecordedUnderTheSavedId() {
+        Post newPost = new Post();
+        Post saved = new Post();
+        saved.setId(9L);
+        when(postRepository.findById(1L)).thenReturn(Optional.empty());
+        when(postRepository.save(newPost)).thenReturn(saved);
+
+        postService.updatePost(newPost, 1L);
+
+        verify(responseCache).evict(Post.class, 9L);
+        verify(changeFeed).record(ChangeEvent.EntityType.POST, 9L, ChangeEvent.Op.UPSERT);
+    }
+
     @Test
     public void testPatchPostPostExists() {
         Long postId = 1L;
@@ -192,6 +253,21 @@ public class PostServiceTest {
         postService.deletePost(1L);
 
         verify(postRepository, times(1)).deleteById(1L);
+        verify(responseCache, times(1)).evict(Post.class, 1L);
+    }
+
+    @Test
+    public void testDeletePostDecrementsOwnerCount() {
+        User user = new User();
+        user.setId(5L);
+        Post post = new Post();
+        post.setId(1L);
+        post.setUser(user);
+        when(postRepository.findById(1L)).thenReturn(Optional.of(post));
+
+        postService.deletePost(1L);
+
+        verify(postCounters).record(5L, -1L, null);
     }
 
     @Test
@@ -384,4 +460,25 @@ public class PostServiceTest {
         verify(postRepository, times(1)).findByUserId(userId);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testTimelinePagesNewestFirst() {
+        Post newest = new Post();
+        newest.setId(9L);
+        when(postRepository.findByUserIdOrderByIdDesc(eq(5L), any())).thenReturn(List.of(newest));
+        when(postRepository.findByUserIdAndIdLessThanOrderByIdDesc(eq(5L), eq(9L), any())).thenReturn(List.of());
+
+        assertEquals(List.of(newest), postService.getTimeline(5L, null, 1));
+        assertTrue(postService.getTimeline(5L, 9L, 1).isEmpty());
+
+        verify(postRepository).findByUserIdOrderByIdDesc(5L, PageRequest.of(0, 1));
+        verify(postRepository, never()).findByUserId(anyLong());
+    }
+
+    @Test
+    public void testTimelineLimitIsBounded() {
+        assertThrows(ResponseStatusException.class, () -> postService.getTimeline(5L, null, 0));
+        assertThrows(ResponseStatusException.class, () -> postService.getTimeline(5L, null, PostService.TIMELINE_MAX_LIMIT + 1));
+        verifyNoInteractions(postRepository);
+    }
+}
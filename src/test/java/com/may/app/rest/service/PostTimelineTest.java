@@ -0,0 +1,99 @@
+package com.may.app.rest.service;
+
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostTimelineTest {
+
+    private static SessionFactory sessionFactory;
+    private static Long authorId;
+
+    @BeforeAll
+    public static void createSchema() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:timeline-test;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("javax.persistence.sharedCache.mode", "NONE")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        User author = new User();
+        User other = new User();
+        session.persist(author);
+        session.persist(other);
+        for (int i = 1; i <= 10; i++) {
+            Post post = new Post();
+            post.setTitle("Post " + i);
+            post.setUser(i % 3 == 0 ? other : author);
+            session.persist(post);
+        }
+        session.getTransaction().commit();
+        session.close();
+        authorId = author.getId();
+    }
+
+    @AfterAll
+    public static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testTimelineIsServedFromTheUserIndex() {
+        try (Session session = sessionFactory.openSession()) {
+            String plan = session.doReturningWork(connection -> {
+                try (var statement = connection.prepareStatement(
+                        "EXPLAIN SELECT id, title, content_id FROM post WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT 3")) {
+                    statement.setLong(1, authorId);
+                    statement.setLong(2, 100);
+                    try (var rs = statement.executeQuery()) {
+                        rs.next();
+                        return rs.getString(1);
+                    }
+                }
+            });
+            assertTrue(plan.contains("IDX_POST_USER_TIMELINE"), plan);
+        }
+    }
+
+    @Test
+    public void testTimelineFieldsPageNewestFirst() {
+        try (Session session = sessionFactory.openSession()) {
+            PostService postService = new PostService();
+            FieldProjection fieldProjection = new FieldProjection();
+            ReflectionTestUtils.setField(fieldProjection, "entityManager", session);
+            ReflectionTestUtils.setField(postService, "fieldProjection", fieldProjection);
+
+            List<Map<String, Object>> first = postService.getTimelineFields(authorId, null, 3, "id,title");
+            Long cursor = (Long) first.get(first.size() - 1).get("id");
+            List<Map<String, Object>> second = postService.getTimelineFields(authorId, cursor, 3, "title");
+
+            assertEquals(List.of("Post 10", "Post 8", "Post 7"), titles(first));
+            assertEquals(List.of("Post 5", "Post 4", "Post 2"), titles(second));
+        }
+    }
+
+    private static List<Object> titles(List<Map<String, Object>> rows) {
+        return rows.stream().map(row -> row.get("title")).collect(Collectors.toList());
+    }
+}
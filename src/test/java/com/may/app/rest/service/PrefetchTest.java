@@ -0,0 +1,112 @@
+package com.may.app.rest.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.may.app.rest.config.JacksonConfig;
+import com.may.app.rest.entity.Post;
+import com.may.app.rest.entity.PostContent;
+import com.may.app.rest.entity.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Entities are written after their session has closed, as open-session-in-view is off: what the
+ * services prefetch must be in the JSON, and unloaded associations must neither fail nor recurse.
+ */
+public class PrefetchTest {
+
+    private static SessionFactory sessionFactory;
+    private static Long authorId;
+    private static Long postId;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JacksonConfig().hibernate5Module());
+
+    @BeforeAll
+    public static void createSchema() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(Post.class)
+                .addAnnotatedClass(PostContent.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:prefetch-test;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .setProperty("javax.persistence.sharedCache.mode", "NONE")
+                .setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider")
+                .setProperty("hibernate.javax.cache.uri", "ehcache.xml")
+                .setProperty("hibernate.javax.cache.missing_cache_strategy", "fail")
+                .buildSessionFactory();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            User author = new User();
+            author.setName("Author");
+            session.persist(author);
+            for (int i = 1; i <= 2; i++) {
+                Post post = new Post();
+                post.setTitle("Post " + i);
+                post.setContent("Content " + i);
+                post.setUser(author);
+                session.persist(post);
+                postId = post.getId();
+            }
+            session.getTransaction().commit();
+            authorId = author.getId();
+        }
+    }
+
+    @AfterAll
+    public static void close() {
+        sessionFactory.close();
+    }
+
+    @Test
+    public void testPrefetchedPostIsWrittenWithContentAndAuthor() throws Exception {
+        Post post;
+        try (Session session = sessionFactory.openSession()) {
+            post = Prefetch.post(session.get(Post.class, postId));
+        }
+
+        JsonNode json = mapper.valueToTree(post);
+
+        assertEquals("Content 2", json.get("content").asText());
+        assertEquals("Author", json.get("user").get("name").asText());
+        assertFalse(json.get("user").has("posts"));
+    }
+
+    @Test
+    public void testPrefetchedUserIsWrittenWithPostsButNotBackReferences() throws Exception {
+        User user;
+        try (Session session = sessionFactory.openSession()) {
+            user = Prefetch.user(session.get(User.class, authorId));
+        }
+
+        JsonNode json = mapper.valueToTree(user);
+
+        assertEquals(2, json.get("posts").size());
+        for (JsonNode post : json.get("posts")) {
+            assertTrue(post.get("content").asText().startsWith("Content "));
+            assertFalse(post.has("user"));
+        }
+    }
+
+    @Test
+    public void testUnloadedAssociationsAreWrittenWithoutTheSession() throws Exception {
+        Post post;
+        User user;
+        try (Session session = sessionFactory.openSession()) {
+            post = session.get(Post.class, postId);
+            post.getContent();
+        }
+        try (Session session = sessionFactory.openSession()) {
+            user = session.get(User.class, authorId);
+        }
+
+        assertEquals(authorId.longValue(), mapper.valueToTree(post).get("user").get("id").asLong());
+        assertTrue(mapper.valueToTree(user).get("posts").isNull());
+    }
+}
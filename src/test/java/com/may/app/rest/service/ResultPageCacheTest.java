@@ -0,0 +1,143 @@
+package com.may.app.rest.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultPageCacheTest {
+
+    public static ResultPageCache cache(long softTtlMillis, long hardTtlMillis, int maxEntries) {
+        return new ResultPageCache(softTtlMillis, hardTtlMillis, maxEntries, 1, new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    @Test
+    public void testFreshPageIsServedWithoutLoading() {
+        ResultPageCache cache = cache(60000, 60000, 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, (int) cache.get("users", "all", loads::incrementAndGet));
+        assertEquals(1, (int) cache.get("users", "all", loads::incrementAndGet));
+        assertEquals(2, (int) cache.get("posts", "all", loads::incrementAndGet));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testStalePageIsServedWhileItIsRefreshed() throws Exception {
+        ResultPageCache cache = cache(1000, 60000, 10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        IntSupplier loader = () -> {
+            if (loads.get() > 0) {
+                await(release);
+            }
+            return loads.incrementAndGet();
+        };
+        cache.get("users", "all", loader::getAsInt);
+        long pastSoftTtl = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+
+        // Served at once, not after the blocked refresh; one refresh however many stale reads
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1, (int) cache.get("users", "all", loader::getAsInt, pastSoftTtl));
+        }
+        release.countDown();
+        assertEquals(2, awaitRefresh(cache, 2));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testRefreshSlowerThanTheSoftTtlIsFreshOnceStored() throws Exception {
+        ResultPageCache cache = cache(200, 60000, 10);
+        AtomicInteger loads = new AtomicInteger();
+        IntSupplier slowLoader = () -> {
+            sleep(300);
+            return loads.incrementAndGet();
+        };
+        cache.get("users", "all", slowLoader::getAsInt);
+
+        assertEquals(1, (int) cache.get("users", "all", slowLoader::getAsInt));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testWriteMarksPagesDirty() throws Exception {
+        ResultPageCache cache = cache(60000, 60000, 10);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("users", "all", loads::incrementAndGet);
+
+        cache.markDirty();
+        assertEquals(1, (int) cache.get("users", "all", loads::incrementAndGet));
+        assertEquals(2, awaitRefresh(cache, 2));
+        assertEquals(2, (int) cache.get("users", "all", loads::incrementAndGet));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testPagePastItsHardTtlIsLoadedOnTheRequest() {
+        ResultPageCache cache = cache(10, 50, 10);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("users", "all", loads::incrementAndGet);
+
+        assertEquals(2, (int) cache.get("users", "all", loads::incrementAndGet, System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPagesAreDropped() {
+        ResultPageCache cache = cache(60000, 60000, 2);
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("users", "a", loads::incrementAndGet);
+        cache.get("users", "b", loads::incrementAndGet);
+        cache.get("users", "a", loads::incrementAndGet);
+        cache.get("users", "c", loads::incrementAndGet);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, (int) cache.get("users", "a", loads::incrementAndGet));
+        assertEquals(4, (int) cache.get("users", "b", loads::incrementAndGet));
+    }
+
+    @Test
+    public void testFailedLoadKeepsNothing() {
+        ResultPageCache cache = cache(60000, 60000, 10);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("users", "all", () -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertEquals(0, cache.size());
+        assertEquals(7, (int) cache.get("users", "all", () -> 7));
+    }
+
+    // Refreshes land on a background thread; the page is fresh meanwhile, so polling never loads it
+    private static int awaitRefresh(ResultPageCache cache, int expected) throws InterruptedException {
+        int value = 0;
+        for (int i = 0; i < 250 && (value = cache.get("users", "all", ResultPageCacheTest::unexpectedLoad)) != expected; i++) {
+            Thread.sleep(20);
+        }
+        return value;
+    }
+
+    private static int unexpectedLoad() {
+        throw new AssertionError("Page loaded while polling for a refresh");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
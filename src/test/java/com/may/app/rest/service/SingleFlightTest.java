@@ -0,0 +1,116 @@
+package com.may.app.rest.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentLoadsShareOneCall() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test-shared");
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.load(1L, () -> {
+                calls.incrementAndGet();
+                loaderStarted.countDown();
+                await(release);
+                return "user-1";
+            }));
+            loaderStarted.await(5, TimeUnit.SECONDS);
+
+            List<Future<String>> followers = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                followers.add(executor.submit(() -> singleFlight.load(1L, () -> {
+                    calls.incrementAndGet();
+                    return "unexpected";
+                })));
+            }
+            while (singleFlight.deduplicatedCount() < 7) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertEquals("user-1", leader.get(5, TimeUnit.SECONDS));
+            for (Future<String> follower : followers) {
+                assertEquals("user-1", follower.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+            assertEquals(7, singleFlight.deduplicatedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCallerInATransactionDoesNotShareTheLoad() throws Exception {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test-transaction");
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.load(1L, () -> {
+                loaderStarted.countDown();
+                await(release);
+                return "detached";
+            }));
+            loaderStarted.await(5, TimeUnit.SECONDS);
+
+            TransactionSynchronizationManager.setActualTransactionActive(true);
+            try {
+                assertEquals("attached", singleFlight.load(1L, () -> "attached"));
+            } finally {
+                TransactionSynchronizationManager.setActualTransactionActive(false);
+            }
+            release.countDown();
+            assertEquals("detached", leader.get(5, TimeUnit.SECONDS));
+            assertEquals(0, singleFlight.deduplicatedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSequentialLoadsAreNotCached() {
+        SingleFlight<Long, Integer> singleFlight = new SingleFlight<>("test-sequential");
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.load(1L, calls::incrementAndGet);
+        singleFlight.load(1L, calls::incrementAndGet);
+
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.deduplicatedCount());
+    }
+
+    @Test
+    public void testFailureIsPropagatedAndNotRemembered() {
+        SingleFlight<Long, String> singleFlight = new SingleFlight<>("test-failure");
+
+        assertThrows(IllegalStateException.class, () -> singleFlight.load(1L, () -> {
+            throw new IllegalStateException("database down");
+        }));
+
+        assertEquals("ok", singleFlight.load(1L, () -> "ok"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
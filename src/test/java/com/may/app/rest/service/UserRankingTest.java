@@ -0,0 +1,80 @@
+package com.may.app.rest.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserRankingTest {
+
+    private static List<Object[]> rows(long... idAndCount) {
+        Object[][] rows = new Object[idAndCount.length / 2][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{idAndCount[2 * i], idAndCount[2 * i + 1]};
+        }
+        return Arrays.asList(rows);
+    }
+
+    @Test
+    public void testReloadKeepsOnlyTopK() {
+        UserRanking ranking = new UserRanking(2);
+
+        ranking.reload(rows(1, 5, 2, 9, 3, 7));
+
+        assertEquals(Arrays.asList(2L, 3L), ranking.top(10));
+        assertFalse(ranking.isStale());
+    }
+
+    @Test
+    public void testMemberCountChangesReorder() {
+        UserRanking ranking = new UserRanking(3);
+        ranking.reload(rows(1, 5, 2, 9, 3, 7));
+
+        ranking.onPostCountChanged(1L, 10);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), ranking.top(3));
+        assertFalse(ranking.isStale());
+    }
+
+    @Test
+    public void testMemberLosingPostsMarksStale() {
+        UserRanking ranking = new UserRanking(2);
+        ranking.reload(rows(1, 5, 2, 9));
+
+        ranking.onPostCountChanged(4L, -1);
+        assertFalse(ranking.isStale());
+
+        ranking.onPostCountChanged(1L, -1);
+        assertTrue(ranking.isStale());
+    }
+
+    @Test
+    public void testOutsiderIsAdmittedOnlyAboveTheLastEntry() {
+        UserRanking ranking = new UserRanking(2);
+        ranking.reload(rows(1, 5, 2, 9));
+
+        ranking.onPostCountChanged(3L, 1);
+        ranking.onPostCountChanged(4L, 1);
+        assertFalse(ranking.isStale());
+        assertEquals(new HashSet<>(Arrays.asList(3L, 4L)), ranking.takeCandidates());
+        assertTrue(ranking.takeCandidates().isEmpty());
+
+        ranking.admit(rows(3, 4, 4, 6));
+
+        assertEquals(Arrays.asList(2L, 4L), ranking.top(2));
+    }
+
+    @Test
+    public void testRemoveDropsMember() {
+        UserRanking ranking = new UserRanking(2);
+        ranking.reload(rows(1, 5, 2, 9));
+
+        ranking.remove(2L);
+
+        assertEquals(Arrays.asList(1L), ranking.top(2));
+        assertTrue(ranking.isStale());
+    }
+}
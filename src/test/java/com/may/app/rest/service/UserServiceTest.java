@@ -1,6 +1,10 @@
 package com.may.app.rest.service;
 
+import com.may.app.rest.cache.SerializedEntityCache;
+import com.may.app.rest.entity.ChangeEvent;
+import com.may.app.rest.entity.Post;
 import com.may.app.rest.entity.User;
+import com.may.app.rest.repository.PostRepository;
 import com.may.app.rest.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -8,9 +12,11 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.ReflectionUtils;
 
 import javax.persistence.EntityManager;
@@ -31,9 +37,36 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private PostRepository postRepository;
+
     @Mock
     private EntityManager entityManager;
 
+    @Mock
+    private SerializedEntityCache responseCache;
+
+    @Mock
+    private UserRanking ranking;
+
+    @Mock
+    private PostCounters postCounters;
+
+    @Mock
+    private ChangeFeedService changeFeed;
+
+    @Mock
+    private GeoIndex geoIndex;
+
+    @Mock
+    private FieldProjection fieldProjection;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ResultPageCache pages = ResultPageCacheTest.cache(60000, 60000, 10);
+
     @InjectMocks
     private UserService userService;
 
@@ -130,6 +163,35 @@ public class UserServiceTest {
         assertEquals(newUser.getEmail(), updatedUser.getEmail());
     }
 
+    @Test
+    public void testUpdateUserEvictsTheirPostsToo() {
+        User newUser = new User();
+        newUser.setName("Jane");
+        when(userRepository.save(newUser)).thenReturn(newUser);
+        when(postRepository.findIdsByUserId(1L)).thenReturn(List.of(5L, 6L));
+
+        userService.updateUser(newUser, 1L);
+
+        verify(responseCache).evict(User.class, 1L);
+        verify(responseCache).evict(Post.class, 5L);
+        verify(responseCache).evict(Post.class, 6L);
+    }
+
+    @Test
+    public void testUpdateOfMissingUserIsRecordedUnderTheSavedId() {
+        User newUser = new User();
+        User saved = new User();
+        saved.setId(9L);
+        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+        when(userRepository.save(newUser)).thenReturn(saved);
+
+        userService.updateUser(newUser, 1L);
+
+        verify(responseCache).evict(User.class, 9L);
+        verify(changeFeed).record(ChangeEvent.EntityType.USER, 9L, ChangeEvent.Op.UPSERT);
+        verify(geoIndex).index(saved);
+    }
+
     @Test
     public void testPatchUserUserFoundAndUpdated() {
         User existingUser = new User(1L, "John Doe", "johndoe", "john.doe@mail.com", null, "1234567890", "example.com", null);
@@ -181,9 +243,55 @@ public class UserServiceTest {
 
     @Test
     public void testDeleteUser() {
+        Post post = new Post();
+        post.setId(5L);
+        User user = new User();
+        user.setPosts(new ArrayList<>(List.of(post)));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+
         userService.deleteUser(1L);
 
         verify(userRepository).deleteById(1L);
+        verify(responseCache).evict(User.class, 1L);
+        verify(responseCache).evict(Post.class, 5L);
+        verify(postCounters).forget(1L);
+        verify(geoIndex).unindex(1L);
+    }
+
+    @Test
+    public void testGetTopPostersKeepsRankingOrder() {
+        User first = new User();
+        first.setId(7L);
+        User second = new User();
+        second.setId(3L);
+        when(ranking.top(2)).thenReturn(Arrays.asList(7L, 3L));
+        when(userRepository.findAllById(Arrays.asList(7L, 3L))).thenReturn(Arrays.asList(second, first));
+
+        List<User> top = userService.getTopPosters(2);
+
+        assertEquals(Arrays.asList(7L, 3L), Arrays.asList(top.get(0).getId(), top.get(1).getId()));
+    }
+
+    @Test
+    public void testGetTopPosterFieldsKeepsRankingOrder() {
+        when(ranking.top(3)).thenReturn(Arrays.asList(7L, 5L, 3L));
+        Map<Long, Map<String, Object>> rows = new HashMap<>();
+        rows.put(3L, Map.of("name", "Third"));
+        rows.put(7L, Map.of("name", "First"));
+        when(fieldProjection.selectByIds(User.class, Arrays.asList(7L, 5L, 3L), "name")).thenReturn(rows);
+
+        assertEquals(Arrays.asList(Map.of("name", "First"), Map.of("name", "Third")), userService.getTopPosterFields(3, "name"));
+    }
+
+    @Test
+    public void testPatchRejectsPostCount() {
+        when(userRepository.findById(1L)).thenReturn(Optional.of(new User()));
+
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("postCount", 100L);
+
+        assertThrows(RuntimeException.class, () -> userService.patchUser(updates, 1L));
+        verify(userRepository, never()).save(any(User.class));
     }
 
     @Test
@@ -0,0 +1,105 @@
+package com.may.app.rest.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTraceTest {
+
+    @AfterEach
+    public void detach() {
+        RequestTrace trace = RequestTrace.current();
+        if (trace != null) {
+            trace.finish();
+        }
+    }
+
+    @Test
+    public void testPhasesReportOwnTimeAndAddUpToTheTotal() {
+        RequestTrace trace = RequestTrace.start("GET /users/filter", 100);
+        Span service = trace.open(Phase.SERVICE, "UserService.filterUsers");
+        for (int i = 0; i < 3; i++) {
+            Span statement = trace.open(Phase.DB, "executeQuery");
+            pause(5);
+            trace.close(statement);
+        }
+        trace.close(service);
+
+        Map<String, String> timing = parse(trace.serverTiming());
+
+        assertEquals("\"3 statements\"", timing.get("db;desc"));
+        assertTrue(millis(timing, "db") >= 15, timing.toString());
+        assertTrue(millis(timing, "service") < millis(timing, "db"), timing.toString());
+        double sum = millis(timing, "service") + millis(timing, "db") + millis(timing, "other");
+        assertEquals(millis(timing, "total"), sum, 0.05);
+    }
+
+    @Test
+    public void testOpenSpansAreCountedUpToNow() {
+        RequestTrace trace = RequestTrace.start("GET /users/export.csv", 100);
+        trace.open(Phase.CONTROLLER, "UserController.exportUsers");
+        pause(5);
+
+        Map<String, String> timing = parse(trace.serverTiming());
+
+        assertTrue(millis(timing, "controller") >= 5, timing.toString());
+        assertFalse(timing.containsKey("db"));
+    }
+
+    @Test
+    public void testClosingASpanClosesWhatWasLeftOpenAboveIt() {
+        RequestTrace trace = RequestTrace.start("GET /posts", 100);
+        Span controller = trace.open(Phase.CONTROLLER, "PostController.getAllPosts");
+        Span service = trace.open(Phase.SERVICE, "PostService.getAllPosts");
+        trace.close(controller);
+        trace.close(Phase.SERVICE);
+
+        assertTrue(service.endNanos > 0);
+        assertEquals(controller.endNanos, service.endNanos);
+        assertTrue(controller.childNanos >= service.durationNanos());
+    }
+
+    @Test
+    public void testSpansBeyondTheLimitAreTimedButNotKept() {
+        RequestTrace trace = RequestTrace.start("GET /posts", 2);
+        for (int i = 0; i < 3; i++) {
+            trace.close(trace.open(Phase.DB, "executeQuery"));
+        }
+        trace.finish();
+
+        assertEquals(2, trace.spans().size());
+        assertEquals(2, trace.droppedSpans());
+        assertTrue(trace.serverTiming().contains("desc=\"3 statements\""));
+        assertNull(RequestTrace.current());
+    }
+
+    // "db;dur=1.50;desc=\"2 statements\", total;dur=3.00" -> {db=1.50, db;desc="2 statements", total=3.00}
+    static Map<String, String> parse(String header) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (String entry : header.split(", ")) {
+            String[] parts = entry.split(";");
+            for (int i = 1; i < parts.length; i++) {
+                String[] param = parts[i].split("=", 2);
+                entries.put(param[0].equals("dur") ? parts[0] : parts[0] + ";" + param[0], param[1]);
+            }
+        }
+        return entries;
+    }
+
+    static double millis(Map<String, String> timing, String metric) {
+        assertTrue(timing.containsKey(metric), metric + " missing from " + timing);
+        return Double.parseDouble(timing.get(metric));
+    }
+
+    private static void pause(long millis) {
+        long until = System.nanoTime() + millis * 1_000_000;
+        while (System.nanoTime() < until) {
+            LockSupport.parkNanos(until - System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.may.app.rest.tracing;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+public class ServerTimingFilterTest {
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private OtlpFileExporter exporter;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setup() {
+        file = dir.resolve("traces.json");
+        exporter = new OtlpFileExporter(file, "rest", 10);
+        GreetingController controller = proxy(new GreetingController(proxy(new GreetingService())));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller)
+                .setMessageConverters(new TracedJsonConverter(new ObjectMapper()))
+                .addFilters(new ServerTimingFilter(true, 100, exporter, 0), ServerTimingFilter.securityDone())
+                .build();
+    }
+
+    @AfterEach
+    public void close() throws Exception {
+        exporter.close();
+    }
+
+    @Test
+    public void testResponseCarriesThePhaseBreakdown() throws Exception {
+        String header = mockMvc.perform(get("/greetings/7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.greeting").value("hello 7"))
+                .andReturn().getResponse().getHeader(ServerTimingFilter.HEADER);
+
+        Map<String, String> timing = RequestTraceTest.parse(header);
+        for (String metric : List.of("security", "controller", "service", "json", "other", "total")) {
+            RequestTraceTest.millis(timing, metric);
+        }
+        assertTrue(timing.get("trace;desc").matches("\"[0-9a-f]{32}\""), header);
+    }
+
+    @Test
+    public void testSpansAreExportedAsOtlpJson() throws Exception {
+        mockMvc.perform(get("/greetings/7")).andExpect(status().isOk());
+        exporter.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(1, lines.size());
+        JsonNode request = new ObjectMapper().readTree(lines.get(0)).get("resourceSpans").get(0);
+        assertEquals("rest", request.at("/resource/attributes/0/value/stringValue").asText());
+
+        Map<String, JsonNode> spans = new HashMap<>();
+        request.at("/scopeSpans/0/spans").forEach(span -> spans.put(span.get("name").asText(), span));
+        JsonNode root = spans.get("GET /greetings/7");
+        JsonNode controller = spans.get("GreetingController.greet");
+        JsonNode service = spans.get("GreetingService.greeting");
+        JsonNode json = spans.get("json HashMap");
+        assertNotNull(spans.get("security"));
+        assertFalse(root.has("parentSpanId"));
+        assertEquals(2, root.get("kind").asInt());
+        assertEquals(root.get("spanId"), controller.get("parentSpanId"));
+        assertEquals(controller.get("spanId"), service.get("parentSpanId"));
+        assertEquals(root.get("spanId"), json.get("parentSpanId"));
+        assertTrue(Long.parseLong(root.get("endTimeUnixNano").asText()) >= Long.parseLong(json.get("endTimeUnixNano").asText()));
+        assertTrue(root.get("attributes").toString().contains("\"/greetings/{id}\""));
+    }
+
+    @Test
+    public void testWithoutServerTimingTheBodyIsStreamedAndStillTimed() throws Exception {
+        MockMvc quiet = MockMvcBuilders.standaloneSetup(proxy(new GreetingController(proxy(new GreetingService()))))
+                .setMessageConverters(new TracedJsonConverter(new ObjectMapper()))
+                .addFilters(new ServerTimingFilter(false, 100, exporter, 0), ServerTimingFilter.securityDone())
+                .build();
+
+        quiet.perform(get("/greetings/7"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.greeting").value("hello 7"))
+                .andExpect(header().doesNotExist(ServerTimingFilter.HEADER));
+        exporter.close();
+
+        String exported = Files.readString(file);
+        assertTrue(exported.contains("\"json HashMap\""), exported);
+        assertFalse(exported.contains("\"bytes\""), exported);
+    }
+
+    @Test
+    public void testNoTraceOutlivesTheRequest() throws Exception {
+        mockMvc.perform(get("/greetings/7")).andExpect(status().isOk());
+
+        assertNull(RequestTrace.current());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(T target) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(TracingAspect.class);
+        return (T) factory.getProxy();
+    }
+
+    @RestController
+    public static class GreetingController {
+
+        private final GreetingService service;
+
+        public GreetingController(GreetingService service) {
+            this.service = service;
+        }
+
+        @GetMapping("/greetings/{id}")
+        public Map<String, String> greet(@PathVariable long id) {
+            Map<String, String> body = new HashMap<>();
+            body.put("greeting", service.greeting(id));
+            return body;
+        }
+    }
+
+    @Service
+    public static class GreetingService {
+
+        public String greeting(long id) {
+            return "hello " + id;
+        }
+    }
+}